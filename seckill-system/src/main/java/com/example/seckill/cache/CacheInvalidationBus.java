@@ -0,0 +1,368 @@
+package com.example.seckill.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * L1 本地缓存失效广播
+ *
+ * MultiLevelCacheService.invalidate 只能删除本节点的 Caffeine，其他节点的 L1 要等过期才会更新。
+ * 失效的 key 通过 Redis Pub/Sub 广播，所有节点在毫秒级内删除本地 L1：
+ *
+ * - 合并：失效的 key 先放入去重集合，flusher 每 flushIntervalMs 打包发送一次，
+ *   同一窗口内重复失效的 key 只发一次；积压超过 maxPending 时改为广播一次全量清空
+ * - 版本号：每批消息携带 Redis INCR 分配的全局序号。消息只表示"删除"、不携带值，
+ *   乱序或重复到达时照常删除也不会把旧数据写回 L1；序号只用于发现丢失的消息
+ * - 丢消息：序号出现空洞且 gapTimeoutMs 内没有补齐（断线、订阅缓冲溢出等），
+ *   或者断线重连重新订阅时，直接清空本节点 L1。重新订阅的回调运行在共享的 redis-listener 线程上，
+ *   读取当前序号交给 flusher 线程执行
+ *
+ * 消息格式（按行分隔）：序号、发送节点、key 列表（"*" 表示全量清空）。
+ */
+@Component
+public class CacheInvalidationBus implements MessageListener, SubscriptionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    public static final String CHANNEL = "ml:cache:invalidate";
+
+    // 全局批次序号
+    private static final String SEQ_KEY = "ml:cache:invalidate:seq";
+
+    private static final String FLUSH_ALL = "*";
+
+    /**
+     * 收到失效消息时的本地处理
+     */
+    public interface Listener {
+
+        void evict(Collection<String> cacheKeys);
+
+        void evictAll();
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final long gapTimeoutNanos;
+
+    // 本节点标识（忽略自己发出的消息，本地已在 invalidate 时删除）
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 等待广播的 key（自动去重）
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean flushAllPending = false;
+
+    private volatile Listener listener;
+    private volatile boolean closed = false;
+    private final Thread flusher;
+
+    // 序号追踪：appliedSeq 之前的序号都已收到，received 为乱序提前到达的序号
+    private long appliedSeq = 0;
+    private final TreeSet<Long> received = new TreeSet<>();
+    private long gapSince = 0;
+    // 已重新订阅、等待 flusher 读取当前序号
+    private volatile boolean resubscribed = false;
+
+    // 统计
+    private final AtomicLong publishedBatches = new AtomicLong(0);
+    private final AtomicLong publishedKeys = new AtomicLong(0);
+    private final AtomicLong publishFailures = new AtomicLong(0);
+    private final AtomicLong receivedBatches = new AtomicLong(0);
+    private final AtomicLong evictedKeys = new AtomicLong(0);
+    private final AtomicLong duplicateBatches = new AtomicLong(0);
+    private final AtomicLong fullFlushes = new AtomicLong(0);
+
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            @Value("${seckill.cache.invalidation.enabled:true}") boolean enabled,
+            @Value("${seckill.cache.invalidation.flush-interval-ms:10}") long flushIntervalMs,
+            @Value("${seckill.cache.invalidation.max-batch-size:500}") int maxBatchSize,
+            @Value("${seckill.cache.invalidation.max-pending:10000}") int maxPending,
+            @Value("${seckill.cache.invalidation.gap-timeout-ms:1000}") long gapTimeoutMs) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxPending = Math.max(this.maxBatchSize, maxPending);
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, gapTimeoutMs));
+
+        if (enabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+            this.flusher = new Thread(this::flushLoop, "ml-cache-invalidation-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 登记一个已失效的 key，下一个合并窗口广播给其他节点
+     */
+    public void publish(String cacheKey) {
+        if (!enabled || closed) {
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            // 积压过多：不再逐个记录，改为广播全量清空
+            flushAllPending = true;
+            return;
+        }
+        pending.add(cacheKey);
+    }
+
+    /**
+     * 广播全量清空
+     */
+    public void publishFlushAll() {
+        if (enabled && !closed) {
+            flushAllPending = true;
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(flushIntervalMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                if (resubscribed) {
+                    resubscribed = false;
+                    resetSeq();
+                }
+                flush();
+                checkGap();
+            } catch (Exception e) {
+                log.error("缓存失效广播异常", e);
+            }
+        }
+    }
+
+    /**
+     * 发送积压的失效消息（按 maxBatchSize 分批，每批一个序号）
+     */
+    private void flush() {
+        if (flushAllPending) {
+            flushAllPending = false;
+            pending.clear();
+            send(List.of(FLUSH_ALL));
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        Iterator<String> it = pending.iterator();
+        while (it.hasNext()) {
+            batch.add(it.next());
+            it.remove();
+            if (batch.size() == maxBatchSize) {
+                send(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<String> keys) {
+        try {
+            Long seq = redisTemplate.opsForValue().increment(SEQ_KEY);
+            StringBuilder body = new StringBuilder(64 + keys.size() * 32)
+                    .append(seq).append('\n').append(nodeId);
+            for (String key : keys) {
+                body.append('\n').append(key);
+            }
+            redisTemplate.convertAndSend(CHANNEL, body.toString());
+            publishedBatches.incrementAndGet();
+            publishedKeys.addAndGet(keys.size());
+        } catch (Exception e) {
+            // 广播失败不重试，其他节点的 L1 最迟在过期时更新
+            publishFailures.incrementAndGet();
+            log.warn("缓存失效广播发送失败: keys={}", keys.size(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        long seq;
+        try {
+            seq = Long.parseLong(lines[0]);
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的缓存失效广播: {}", lines[0]);
+            return;
+        }
+        if (lines.length < 3) {
+            log.warn("无法识别的缓存失效广播: seq={}", seq);
+            return;
+        }
+        receivedBatches.incrementAndGet();
+        track(seq);
+
+        if (nodeId.equals(lines[1])) {
+            return;
+        }
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        // 删除是幂等的，重复或乱序到达的批次照常处理
+        if (lines.length == 3 && FLUSH_ALL.equals(lines[2])) {
+            current.evictAll();
+            fullFlushes.incrementAndGet();
+            log.info("收到缓存全量清空广播: seq={}", seq);
+            return;
+        }
+        List<String> keys = Arrays.asList(lines).subList(2, lines.length);
+        current.evict(keys);
+        evictedKeys.addAndGet(keys.size());
+        log.debug("收到缓存失效广播: seq={}, keys={}", seq, keys.size());
+    }
+
+    /**
+     * 记录收到的序号（监听容器可能并发投递，需要加锁）
+     */
+    private synchronized void track(long seq) {
+        if (seq <= appliedSeq || !received.add(seq)) {
+            duplicateBatches.incrementAndGet();
+            return;
+        }
+        while (!received.isEmpty() && received.first() == appliedSeq + 1) {
+            appliedSeq = received.pollFirst();
+        }
+        if (received.isEmpty()) {
+            gapSince = 0;
+        } else if (gapSince == 0) {
+            gapSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * 序号空洞超时未补齐，判定丢失消息，清空本节点 L1
+     */
+    private void checkGap() {
+        synchronized (this) {
+            if (gapSince == 0 || System.nanoTime() - gapSince < gapTimeoutNanos) {
+                return;
+            }
+            log.warn("缓存失效广播丢失: 序号 {} 之后出现空洞，清空本地 L1", appliedSeq);
+            appliedSeq = received.last();
+            received.clear();
+            gapSince = 0;
+        }
+        evictAllLocal();
+    }
+
+    /**
+     * 订阅成功（启动或断线重连后）：断线期间的消息已丢失，由 flusher 线程重置序号并清空本地 L1，
+     * 不在 redis-listener 线程上访问 Redis
+     */
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        resubscribed = true;
+    }
+
+    /**
+     * 以当前序号为起点并清空本地 L1；订阅后、重置前已收到的更新序号保留
+     */
+    private void resetSeq() {
+        long current = 0;
+        try {
+            String seq = redisTemplate.opsForValue().get(SEQ_KEY);
+            current = seq == null ? 0 : Long.parseLong(seq);
+        } catch (Exception e) {
+            log.warn("读取缓存失效广播序号失败", e);
+        }
+        synchronized (this) {
+            appliedSeq = current;
+            received.headSet(appliedSeq, true).clear();
+            while (!received.isEmpty() && received.first() == appliedSeq + 1) {
+                appliedSeq = received.pollFirst();
+            }
+            gapSince = received.isEmpty() ? 0 : System.nanoTime();
+        }
+        log.info("缓存失效广播频道已订阅: seq={}，清空本地 L1", current);
+        evictAllLocal();
+    }
+
+    private void evictAllLocal() {
+        Listener current = listener;
+        if (current != null) {
+            current.evictAll();
+            fullFlushes.incrementAndGet();
+        }
+    }
+
+    /**
+     * 关闭前发送剩余的失效消息
+     */
+    @PreDestroy
+    public void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        flusher.interrupt();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("关闭时发送缓存失效广播失败", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new ConcurrentHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pending", pending.size());
+        stats.put("publishedBatches", publishedBatches.get());
+        stats.put("publishedKeys", publishedKeys.get());
+        stats.put("publishFailures", publishFailures.get());
+        stats.put("receivedBatches", receivedBatches.get());
+        stats.put("evictedKeys", evictedKeys.get());
+        stats.put("duplicateBatches", duplicateBatches.get());
+        stats.put("fullFlushes", fullFlushes.get());
+        synchronized (this) {
+            stats.put("appliedSeq", appliedSeq);
+        }
+        return stats;
+    }
+}
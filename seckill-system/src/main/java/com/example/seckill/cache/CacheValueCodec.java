@@ -0,0 +1,159 @@
+package com.example.seckill.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 多级缓存 L2 值编码
+ *
+ * 布局：
+ * <pre>
+ * magic(1) | 格式版本(1) | 标志(1) | 查库耗时 ms(4) | 过期时间戳 ms(8) | [原始长度(4)，压缩时] | 数据
+ * </pre>
+ *
+ * 标志位：0x01 数据经过 LZ4 压缩，0x02 数据为 UTF-8 字符串（String 值不经过 Smile）。
+ * 对象使用 Jackson Smile（二进制 JSON，字段名和短字符串值去重为反向引用）编码，
+ * 数据超过 compressThreshold 字节时再用 LZ4 压缩，压缩后没有明显变小则保留原始数据。
+ *
+ * 不以 magic 开头的值（旧格式或其他写入方）、类型不符或数据损坏时返回 null，由调用方按未命中重新加载。
+ * 原始长度来自存储的数据，不可信：超出 [0, MAX_RAW_LENGTH] 时按损坏处理，不会按它分配内存。
+ */
+public class CacheValueCodec {
+
+    // UTF-8 编码中不会出现的字节，不以它开头的值一律不解码
+    private static final int MAGIC = 0xFE;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_LZ4 = 0x01;
+    private static final int FLAG_STRING = 0x02;
+    private static final int HEADER_SIZE = 15;
+    // 解压后长度上限，远大于任何合理的缓存值
+    private static final int MAX_RAW_LENGTH = 16 * 1024 * 1024;
+
+    private final ObjectMapper smileMapper;
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold 数据超过该字节数时 LZ4 压缩，0 表示不压缩
+     */
+    public CacheValueCodec(int compressThreshold) {
+        this.smileMapper = SmileMapper.builder()
+                .addModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+        this.compressThreshold = Math.max(0, compressThreshold);
+    }
+
+    /**
+     * 解码结果：值、查库耗时、过期时间戳
+     */
+    public record Envelope<T>(T value, long deltaMs, long expireAtMs) {
+    }
+
+    public byte[] encode(Object value, long deltaMs, long expireAtMs) {
+        int flags;
+        byte[] data;
+        if (value instanceof String string) {
+            flags = FLAG_STRING;
+            data = string.getBytes(StandardCharsets.UTF_8);
+        } else {
+            flags = 0;
+            try {
+                data = smileMapper.writeValueAsBytes(value);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException("缓存值编码失败: " + value.getClass().getName(), e);
+            }
+        }
+
+        int rawLength = data.length;
+        if (compressThreshold > 0 && rawLength >= compressThreshold) {
+            byte[] compressed = compressor.compress(data);
+            // 压缩后至少省下原始长度字段的 4 字节才值得
+            if (compressed.length + 4 < rawLength) {
+                data = compressed;
+                flags |= FLAG_LZ4;
+            }
+        }
+
+        boolean lz4 = (flags & FLAG_LZ4) != 0;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (lz4 ? 4 : 0) + data.length)
+                .put((byte) MAGIC)
+                .put((byte) FORMAT_VERSION)
+                .put((byte) flags)
+                .putInt((int) Math.min(Math.max(0, deltaMs), Integer.MAX_VALUE))
+                .putLong(expireAtMs);
+        if (lz4) {
+            buffer.putInt(rawLength);
+        }
+        return buffer.put(data).array();
+    }
+
+    /**
+     * 按 type 解码
+     *
+     * @return 无法按 type 解码（没有 magic、类型不符、数据损坏）时返回 null
+     */
+    public <T> Envelope<T> decode(byte[] raw, Class<T> type) {
+        if (raw.length < HEADER_SIZE || (raw[0] & 0xFF) != MAGIC) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        buffer.get(); // magic
+        if (buffer.get() > FORMAT_VERSION) {
+            return null;
+        }
+        int flags = buffer.get();
+        long deltaMs = buffer.getInt();
+        long expireAtMs = buffer.getLong();
+
+        boolean string = (flags & FLAG_STRING) != 0;
+        if (string != (type == String.class)) {
+            return null;
+        }
+
+        try {
+            byte[] data = raw;
+            int offset;
+            int length;
+            if ((flags & FLAG_LZ4) != 0) {
+                if (buffer.remaining() < 4) {
+                    return null;
+                }
+                int rawLength = buffer.getInt();
+                if (rawLength < 0 || rawLength > MAX_RAW_LENGTH) {
+                    return null;
+                }
+                data = decompressor.decompress(raw, buffer.position(), raw.length - buffer.position(), rawLength);
+                offset = 0;
+                length = data.length;
+            } else {
+                offset = buffer.position();
+                length = raw.length - offset;
+            }
+
+            T value = string
+                    ? type.cast(new String(data, offset, length, StandardCharsets.UTF_8))
+                    : smileMapper.readValue(data, offset, length, type);
+            return new Envelope<>(value, deltaMs, expireAtMs);
+        } catch (IOException | LZ4Exception e) {
+            return null;
+        }
+    }
+}
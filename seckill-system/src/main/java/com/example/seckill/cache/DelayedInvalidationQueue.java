@@ -0,0 +1,268 @@
+package com.example.seckill.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 延迟双删队列
+ *
+ * 原来每次延迟双删都起一个线程 sleep，写入高峰时会堆出成千上万个休眠线程。
+ * 改为一个 DelayQueue + 单个工作线程：
+ *
+ * - 合并：同一 key 在队列中只有一项，按最早的删除时间执行；期间又有写入时，删除后再为最晚的写入排一次删除。
+ *   持续写入的热点 key 每 delay 至少删一次，不会因为删除时间被不断推迟而一直删不掉，
+ *   最后一次删除距最后一次写入仍至少 delay
+ * - 批量：到期的 key 一次取出最多 maxBatchSize 个，用 Redis pipeline 批量 DEL，再回调删除各节点 L1
+ * - 有界：排队的 key 超过 maxPending 时不再入队，立即执行第二次删除（提前删除只会多一次回源，不会读到脏数据）
+ *
+ * 指标：seckill.cache.delayed.depth（排队 key 数）、seckill.cache.delayed.lag（实际删除时间相对到期时间的延迟）、
+ * seckill.cache.delayed.keys{result=scheduled|coalesced|deleted|overflow|failed}
+ */
+@Component
+public class DelayedInvalidationQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(DelayedInvalidationQueue.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final int maxPending;
+    private final int maxBatchSize;
+
+    private final DelayQueue<Item> queue = new DelayQueue<>();
+    // key -> 排队中的登记（合并重复 key）
+    private final Map<String, Entry> scheduled = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    // 删除完成后的回调（删除 L1 并广播）
+    private volatile Consumer<List<String>> afterDelete = keys -> {
+    };
+
+    private final AtomicLong scheduledKeys = new AtomicLong(0);
+    private final AtomicLong coalescedKeys = new AtomicLong(0);
+    private final AtomicLong deletedKeys = new AtomicLong(0);
+    private final AtomicLong overflowKeys = new AtomicLong(0);
+    private final AtomicLong failedKeys = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong maxLagMs = new AtomicLong(0);
+    private final Timer lag;
+
+    public DelayedInvalidationQueue(StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${seckill.cache.delayed-delete.max-pending:100000}") int maxPending,
+            @Value("${seckill.cache.delayed-delete.max-batch-size:200}") int maxBatchSize) {
+        this.redisTemplate = redisTemplate;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+
+        Gauge.builder("seckill.cache.delayed.depth", scheduled, Map::size)
+                .description("排队中的延迟删除 key 数").register(meterRegistry);
+        this.lag = Timer.builder("seckill.cache.delayed.lag")
+                .description("延迟删除实际执行时间相对到期时间的延迟")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        counter(meterRegistry, "scheduled", scheduledKeys);
+        counter(meterRegistry, "coalesced", coalescedKeys);
+        counter(meterRegistry, "deleted", deletedKeys);
+        counter(meterRegistry, "overflow", overflowKeys);
+        counter(meterRegistry, "failed", failedKeys);
+
+        this.worker = new Thread(this::workLoop, "ml-cache-delayed-delete");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    private static void counter(MeterRegistry meterRegistry, String result, AtomicLong value) {
+        FunctionCounter.builder("seckill.cache.delayed.keys", value, AtomicLong::get)
+                .tag("result", result).description("延迟删除的 key 数").register(meterRegistry);
+    }
+
+    public void setAfterDelete(Consumer<List<String>> afterDelete) {
+        this.afterDelete = afterDelete;
+    }
+
+    /**
+     * 登记 delayMs 后删除 cacheKey（已在队列中时仍按原时间删除，并记下最晚的删除时间）
+     */
+    public void schedule(String cacheKey, long delayMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        if (closed || (scheduled.size() >= maxPending && !scheduled.containsKey(cacheKey))) {
+            // 队列已满：立即执行第二次删除
+            overflowKeys.incrementAndGet();
+            log.debug("[延迟双删] 队列已满，立即删除 key={}", cacheKey);
+            delete(List.of(cacheKey));
+            return;
+        }
+
+        scheduled.compute(cacheKey, (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry(deadline);
+                queue.offer(new Item(key, deadline, entry));
+                scheduledKeys.incrementAndGet();
+            } else {
+                entry.latestDeadline = Math.max(entry.latestDeadline, deadline);
+                coalescedKeys.incrementAndGet();
+            }
+            return entry;
+        });
+    }
+
+    private void workLoop() {
+        List<Item> expired = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                Item first = queue.take();
+                expired.add(first);
+                queue.drainTo(expired, maxBatchSize - 1);
+                process(expired);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("[延迟双删] 处理失败", e);
+            } finally {
+                expired.clear();
+            }
+        }
+    }
+
+    /**
+     * 处理到期项：批量删除；排队期间又有写入的，删除后按最晚的写入再入队一次
+     */
+    private void process(List<Item> expired) {
+        long now = System.nanoTime();
+        List<String> keys = new ArrayList<>(expired.size());
+        for (Item item : expired) {
+            scheduled.computeIfPresent(item.key, (key, entry) -> {
+                if (entry != item.entry) {
+                    return entry;
+                }
+                keys.add(key);
+                recordLag(now - item.deadline);
+                if (entry.latestDeadline - item.deadline > 0) {
+                    queue.offer(new Item(key, entry.latestDeadline, entry));
+                    return entry;
+                }
+                return null;
+            });
+        }
+        if (!keys.isEmpty()) {
+            delete(keys);
+        }
+    }
+
+    private void recordLag(long lagNanos) {
+        lag.record(lagNanos, TimeUnit.NANOSECONDS);
+        long lagMs = TimeUnit.NANOSECONDS.toMillis(lagNanos);
+        maxLagMs.accumulateAndGet(lagMs, Math::max);
+    }
+
+    /**
+     * pipeline 批量删除 L2，再回调删除 L1
+     */
+    private void delete(List<String> keys) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String key : keys) {
+                    conn.del(key);
+                }
+                return null;
+            });
+            deletedKeys.addAndGet(keys.size());
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            failedKeys.addAndGet(keys.size());
+            log.error("[延迟双删] Redis 批量删除失败: count={}", keys.size(), e);
+        }
+        try {
+            afterDelete.accept(keys);
+        } catch (Exception e) {
+            log.error("[延迟双删] 删除本地缓存失败: count={}", keys.size(), e);
+        }
+        log.info("[延迟双删] 批量删除 {} 个 key", keys.size());
+    }
+
+    /**
+     * 关闭时提前执行剩余的删除，避免丢失第二次删除
+     */
+    @PreDestroy
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        List<String> remaining = new ArrayList<>(scheduled.keySet());
+        scheduled.clear();
+        queue.clear();
+        for (int i = 0; i < remaining.size(); i += maxBatchSize) {
+            delete(remaining.subList(i, Math.min(remaining.size(), i + maxBatchSize)));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new ConcurrentHashMap<>();
+        stats.put("depth", scheduled.size());
+        stats.put("scheduled", scheduledKeys.get());
+        stats.put("coalesced", coalescedKeys.get());
+        stats.put("deleted", deletedKeys.get());
+        stats.put("overflow", overflowKeys.get());
+        stats.put("failed", failedKeys.get());
+        stats.put("batches", batches.get());
+        stats.put("maxLagMs", maxLagMs.get());
+        stats.put("meanLagMs", lag.mean(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+
+    /**
+     * 排队中的登记，latestDeadline 为合并的登记中最晚的删除时间
+     */
+    private static final class Entry {
+        volatile long latestDeadline;
+
+        Entry(long deadline) {
+            this.latestDeadline = deadline;
+        }
+    }
+
+    /**
+     * 队列元素（不可变，需要再删一次时重新入队一个新元素）
+     */
+    private static final class Item implements Delayed {
+        final String key;
+        final long deadline;
+        final Entry entry;
+
+        Item(String key, long deadline, Entry entry) {
+            this.key = key;
+            this.deadline = deadline;
+            this.entry = entry;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadline, ((Item) other).deadline);
+        }
+    }
+}
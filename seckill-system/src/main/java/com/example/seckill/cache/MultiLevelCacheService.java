@@ -1,16 +1,40 @@
 package com.example.seckill.cache;
 
+import com.example.seckill.monitor.ThreadPoolMonitor;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
@@ -32,6 +56,32 @@ import java.util.function.Function;
  * 2. 删除 L2 Redis
  * 3. 删除 L1 Caffeine
  * 4. （可选）延迟双删保证一致性
+ *
+ * 防击穿（single-flight）:
+ * - 节点内：L1 是 Caffeine AsyncCache，第一个未命中的线程放入加载中的 future，
+ *   同一 key 的并发请求等待这个 future，只有它继续查 L2 / 数据库
+ * - 跨节点：查数据库前先抢 Redis 租约 (SET NX PX)，抢到的节点加载并回填 L2；
+ *   其他节点轮询 L2 等待结果，租约到期仍没有结果时自行查库（加载方卡死时不会一直等）
+ *
+ * 跨节点 L1 失效：invalidate 删除本地 L1 后经 CacheInvalidationBus 广播，其他节点毫秒级删除各自的 L1
+ *
+ * 提前刷新（热点 key 在过期前后台重新加载，读路径不会撞上过期回源）:
+ * - L1：refreshAfterWrite，写入超过刷新间隔后再被访问时立即返回旧值，后台线程从 L2 重新读取
+ *   （L2 没有时查库），冷 key 不访问就不刷新，照常在 L1_EXPIRE 后过期
+ * - L2：XFetch 概率提前重算。L2 值附带上次查库耗时 delta 和过期时间，
+ *   读到时若 now - delta * beta * ln(rand) >= 过期时间，就在后台（持有加载租约的一个节点）查库重写 L2；
+ *   越接近过期、查库越慢，提前重算的概率越高，重算分散在过期前而不是集中在过期那一刻
+ *
+ * 类型化读取 get(key, type, loader)：L1 保存反序列化后的对象，命中时没有任何解码开销；
+ * L2 使用 CacheValueCodec 二进制编码（Smile + 超过阈值时 LZ4 压缩）。
+ * L1 中的对象被所有调用方共享，调用方不要修改；同一个 key 只能以一种类型读取。
+ *
+ * L2 格式版本：二进制编码的 key 使用 ml:cache:v2: 前缀，与旧版本节点的字符串格式（ml:cache:）分开，
+ * 滚动发布期间新旧节点互不读取对方格式的值。新节点失效时同时删除并广播旧前缀的 key，
+ * 收到旧前缀的广播时删除对应的 v2 L1，旧节点的 L1 / L2 也能及时失效。
+ * 旧节点处理的写只删除旧前缀的 L2，v2 的 L2 要到过期（30 分钟）才更新。发布顺序：
+ * 先升级一批节点并把写接口（商品更新等）只路由到新节点，再升级其余节点；
+ * 全部节点升级后的下一个版本删除旧前缀的兼容代码。
  */
 @Service
 public class MultiLevelCacheService {
@@ -39,34 +89,142 @@ public class MultiLevelCacheService {
     private static final Logger log = LoggerFactory.getLogger(MultiLevelCacheService.class);
 
     private final StringRedisTemplate redisTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final DelayedInvalidationQueue delayedInvalidation;
 
-    // L1: Caffeine 本地缓存
-    private final Cache<String, String> localCache;
+    // L1: Caffeine 本地缓存（value 为 future，加载中的 key 也在其中，供并发请求合并等待）
+    private final AsyncCache<String, Object> localCache;
+    // L2 值编码
+    private final CacheValueCodec codec;
 
     // 缓存统计
     private final AtomicLong l1Hits = new AtomicLong(0);
     private final AtomicLong l2Hits = new AtomicLong(0);
     private final AtomicLong dbHits = new AtomicLong(0);
     private final AtomicLong totalRequests = new AtomicLong(0);
-
-    // Redis 缓存前缀
-    private static final String CACHE_PREFIX = "ml:cache:";
+    private final AtomicLong dbLoads = new AtomicLong(0);
+    private final AtomicLong localCoalesced = new AtomicLong(0);
+    private final AtomicLong remoteCoalesced = new AtomicLong(0);
+    private final AtomicLong leaseTimeouts = new AtomicLong(0);
+    private final AtomicLong l1Refreshes = new AtomicLong(0);
+    private final AtomicLong earlyRecomputes = new AtomicLong(0);
+    private final AtomicLong l2Writes = new AtomicLong(0);
+    private final AtomicLong l2WriteBytes = new AtomicLong(0);
+
+    // Redis 缓存前缀（带 L2 格式版本）
+    private static final String CACHE_PREFIX = "ml:cache:v2:";
+    // 旧版本节点使用的缓存前缀（字符串格式），滚动发布期间一并失效
+    private static final String LEGACY_CACHE_PREFIX = "ml:cache:";
+    // 跨节点加载租约前缀（与缓存前缀同版本，不会等待旧节点回填旧格式的 L2）
+    private static final String LEASE_PREFIX = "ml:lease:v2:";
+
+    private static final DefaultRedisScript<Long> LEASE_RELEASE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        LEASE_RELEASE_SCRIPT.setScriptSource(
+                new ResourceScriptSource(new ClassPathResource("lua/cache_lease_release.lua")));
+        LEASE_RELEASE_SCRIPT.setResultType(Long.class);
+    }
 
     // 默认过期时间
     private static final Duration L1_EXPIRE = Duration.ofMinutes(5);
     private static final Duration L2_EXPIRE = Duration.ofMinutes(30);
 
-    public MultiLevelCacheService(StringRedisTemplate redisTemplate) {
+    // 刷新 L1 时使用的类型和加载函数（首次加载时登记，长时间不访问自动清理）
+    private final Cache<String, Loader<?>> loaders;
+    // 后台刷新线程（L1 刷新和 L2 提前重算共用）
+    private final ThreadPoolExecutor refreshExecutor;
+    // XFetch 系数，越大越早重算，0 表示关闭
+    private final double xfetchBeta;
+
+    // 跨节点加载租约时长（也是等待其他线程 / 节点加载的最长时间）
+    private final long leaseMs;
+    // 等待其他节点加载时轮询 L2 的间隔
+    private final long leasePollMs;
+
+    public MultiLevelCacheService(StringRedisTemplate redisTemplate,
+            CacheInvalidationBus invalidationBus,
+            DelayedInvalidationQueue delayedInvalidation,
+            @Value("${seckill.cache.single-flight.lease-ms:3000}") long leaseMs,
+            @Value("${seckill.cache.single-flight.poll-interval-ms:20}") long leasePollMs,
+            @Value("${seckill.cache.refresh.l1-refresh-after-ms:60000}") long l1RefreshAfterMs,
+            @Value("${seckill.cache.refresh.xfetch-beta:1.0}") double xfetchBeta,
+            @Value("${seckill.cache.refresh.threads:2}") int refreshThreads,
+            @Value("${seckill.cache.refresh.queue-capacity:1000}") int refreshQueueCapacity,
+            @Value("${seckill.cache.codec.compress-threshold:1024}") int compressThreshold,
+            ThreadPoolMonitor threadPoolMonitor) {
         this.redisTemplate = redisTemplate;
+        this.invalidationBus = invalidationBus;
+        this.delayedInvalidation = delayedInvalidation;
+        this.leaseMs = Math.max(1, leaseMs);
+        this.leasePollMs = Math.max(1, leasePollMs);
+        this.xfetchBeta = Math.max(0, xfetchBeta);
+        this.codec = new CacheValueCodec(compressThreshold);
+
+        AtomicInteger index = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshQueueCapacity), r -> {
+                    Thread t = new Thread(r, "ml-cache-refresh-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        threadPoolMonitor.registerThreadPool("ml-cache-refresh", refreshExecutor);
+
+        this.loaders = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(L1_EXPIRE)
+                .build();
 
-        // 初始化 Caffeine 本地缓存
-        this.localCache = Caffeine.newBuilder()
+        // 初始化 Caffeine 本地缓存（加载中的 future 不会过期，完成后才开始计时；结果为 null 时自动移除）
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
                 .maximumSize(10_000) // 最大条目数
                 .expireAfterWrite(L1_EXPIRE) // 写入后 5 分钟过期
-                .recordStats() // 记录统计信息
-                .build();
+                .recordStats(); // 记录统计信息
+        if (l1RefreshAfterMs > 0) {
+            // 写入超过刷新间隔后再次访问时后台刷新，刷新期间仍返回旧值
+            builder.refreshAfterWrite(Duration.ofMillis(l1RefreshAfterMs));
+        }
+        this.localCache = builder.buildAsync(new CacheLoader<String, Object>() {
+            @Override
+            public Object load(String cacheKey) {
+                return refresh(cacheKey, null);
+            }
+
+            @Override
+            public CompletableFuture<Object> asyncReload(String cacheKey, Object oldValue, Executor executor) {
+                try {
+                    return CompletableFuture.supplyAsync(() -> refresh(cacheKey, oldValue), refreshExecutor);
+                } catch (RejectedExecutionException e) {
+                    // 刷新线程忙：放弃本次刷新（取消不会被 Caffeine 记为刷新失败），下次访问再试
+                    CompletableFuture<Object> skipped = new CompletableFuture<>();
+                    skipped.cancel(false);
+                    return skipped;
+                }
+            }
+        });
+
+        // 其他节点的失效广播：删除本地 L1（加载中的 future 一并移除，加载结果不会再写回）
+        invalidationBus.setListener(new CacheInvalidationBus.Listener() {
+            @Override
+            public void evict(Collection<String> cacheKeys) {
+                localCache.synchronous().invalidateAll(currentKeys(cacheKeys));
+            }
 
-        log.info("多级缓存服务初始化完成 - L1: Caffeine(5分钟), L2: Redis(30分钟)");
+            @Override
+            public void evictAll() {
+                localCache.synchronous().invalidateAll();
+            }
+        });
+
+        // 延迟双删的第二次删除：L2 已批量删除，这里删除本地 L1 并广播
+        delayedInvalidation.setAfterDelete(cacheKeys -> {
+            localCache.synchronous().invalidateAll(currentKeys(cacheKeys));
+            cacheKeys.forEach(invalidationBus::publish);
+        });
+
+        log.info("多级缓存服务初始化完成 - L1: Caffeine(5分钟, {}ms 后刷新), L2: Redis(30分钟, XFetch beta={}), 加载租约 {}ms",
+                l1RefreshAfterMs, this.xfetchBeta, this.leaseMs);
     }
 
     /**
@@ -77,40 +235,324 @@ public class MultiLevelCacheService {
      * @return 缓存值或数据库值
      */
     public String get(String key, Function<String, String> dbLoader) {
+        return get(key, String.class, dbLoader);
+    }
+
+    /**
+     * 多级缓存类型化读取：L1 直接保存对象，L2 二进制编码
+     *
+     * @param key      缓存键
+     * @param type     值类型
+     * @param dbLoader 数据库加载函数
+     * @return 缓存值或数据库值（L1 中的共享对象，不要修改）
+     */
+    public <T> T get(String key, Class<T> type, Function<String, ? extends T> dbLoader) {
         totalRequests.incrementAndGet();
         String cacheKey = CACHE_PREFIX + key;
 
-        // Step 1: 查询 L1 Caffeine
-        String value = localCache.getIfPresent(cacheKey);
-        if (value != null) {
-            l1Hits.incrementAndGet();
-            log.debug("[L1 命中] key={}", key);
+        // Step 1: 查询 L1 Caffeine，未命中时放入自己的 future 成为加载方
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> future = localCache.get(cacheKey, (k, executor) -> loading);
+        if (future != loading) {
+            if (future.isDone()) {
+                l1Hits.incrementAndGet();
+                log.debug("[L1 命中] key={}", key);
+            } else {
+                localCoalesced.incrementAndGet();
+                log.debug("[合并加载] key={}, 等待同节点的加载结果", key);
+            }
+            return await(key, type, future, dbLoader);
+        }
+
+        try {
+            loaders.put(cacheKey, new Loader<>(type, dbLoader));
+            T value = load(key, cacheKey, type, dbLoader);
+            // 完成后即为 L1 中的值；null 不缓存
+            loading.complete(value);
             return value;
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+            throw e;
         }
+    }
 
-        // Step 2: 查询 L2 Redis
-        value = redisTemplate.opsForValue().get(cacheKey);
-        if (value != null) {
+    /**
+     * 等待同节点其他线程的加载结果，超时后自行查库
+     *
+     * 加载方最多等待一个租约周期再查库，这里等两个周期。
+     * L1 中的值与请求的类型不符（同一个 key 被以不同类型读取）时与 L2 一样按未命中处理，直接查库
+     */
+    private <T> T await(String key, Class<T> type, CompletableFuture<Object> future,
+            Function<String, ? extends T> dbLoader) {
+        long timeoutMs = 2 * leaseMs;
+        try {
+            Object value = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            if (value == null || type.isInstance(value)) {
+                return type.cast(value);
+            }
+            log.warn("[类型不符] key={}, L1 中为 {}，请求 {}，按未命中查库",
+                    key, value.getClass().getName(), type.getName());
+            dbLoads.incrementAndGet();
+            return dbLoader.apply(key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            leaseTimeouts.incrementAndGet();
+            log.warn("[合并加载超时] key={}, 等待 {}ms 未完成，直接查库", key, timeoutMs);
+            dbLoads.incrementAndGet();
+            return dbLoader.apply(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待缓存加载被中断: " + key, e);
+        }
+    }
+
+    /**
+     * L1 未命中后的加载：L2 → 跨节点租约 → 数据库
+     */
+    private <T> T load(String key, String cacheKey, Class<T> type, Function<String, ? extends T> dbLoader) {
+        // Step 2: 查询 L2 Redis，临近过期时按 XFetch 概率在后台提前重算
+        CacheValueCodec.Envelope<T> entry = readL2(cacheKey, type);
+        if (entry != null) {
             l2Hits.incrementAndGet();
-            // 回填 L1
-            localCache.put(cacheKey, value);
             log.debug("[L2 命中] key={}, 回填 L1", key);
+            if (shouldRecomputeEarly(entry)) {
+                scheduleRecompute(key, cacheKey, dbLoader);
+            }
+            return entry.value();
+        }
+
+        // Step 3: 抢加载租约，没抢到则等待持有租约的节点回填 L2
+        String leaseKey = LEASE_PREFIX + key;
+        String token = tryAcquireLease(leaseKey);
+        if (token == null) {
+            T value = awaitRemoteLoad(cacheKey, leaseKey, type);
+            if (value != null) {
+                remoteCoalesced.incrementAndGet();
+                log.debug("[合并加载] key={}, 使用其他节点加载的结果", key);
+                return value;
+            }
+        }
+
+        // Step 4: 查询数据库
+        try {
+            dbLoads.incrementAndGet();
+            T value = loadFromDb(key, cacheKey, dbLoader);
+            if (value != null) {
+                dbHits.incrementAndGet();
+                log.debug("[DB 命中] key={}, 回填 L1 和 L2", key);
+            }
             return value;
+        } finally {
+            if (token != null) {
+                releaseLease(leaseKey, token);
+            }
         }
+    }
 
-        // Step 3: 查询数据库
-        value = dbLoader.apply(key);
+    /**
+     * 查库并回填 L2（L1 由调用方回填），记录查库耗时供 XFetch 使用
+     */
+    private <T> T loadFromDb(String key, String cacheKey, Function<String, ? extends T> dbLoader) {
+        long start = System.nanoTime();
+        T value = dbLoader.apply(key);
         if (value != null) {
-            dbHits.incrementAndGet();
-            // 回填 L2 和 L1
-            redisTemplate.opsForValue().set(cacheKey, value, L2_EXPIRE);
-            localCache.put(cacheKey, value);
-            log.debug("[DB 命中] key={}, 回填 L1 和 L2", key);
+            long deltaMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            writeL2(cacheKey, value, deltaMs);
         }
-
         return value;
     }
 
+    /**
+     * L1 后台刷新：从 L2 重新读取（XFetch 判定需要提前重算时直接查库），L2 没有时抢租约查库回填
+     *
+     * put 写入的 key 没有加载函数，只从 L2 读取；登记已被清理的 key 返回 null 移出 L1，下次访问正常加载。
+     * 刷新线程只有几个，不等待其他节点：租约在其他节点手里时保留旧值，下次刷新再取
+     *
+     * @param oldValue L1 中的旧值，同步加载时为 null
+     */
+    private Object refresh(String cacheKey, Object oldValue) {
+        Loader<?> loader = loaders.getIfPresent(cacheKey);
+        if (loader == null) {
+            return null;
+        }
+        l1Refreshes.incrementAndGet();
+        return refresh(cacheKey, loader, oldValue);
+    }
+
+    private <T> Object refresh(String cacheKey, Loader<T> loader, Object oldValue) {
+        String key = cacheKey.substring(CACHE_PREFIX.length());
+        CacheValueCodec.Envelope<T> entry = readL2(cacheKey, loader.type());
+        if (loader.dbLoader() == null) {
+            return entry == null ? null : entry.value();
+        }
+        if (entry == null) {
+            String leaseKey = LEASE_PREFIX + key;
+            String token = tryAcquireLease(leaseKey);
+            if (token == null) {
+                log.debug("[后台刷新] 其他节点正在加载，保留旧值 key={}", key);
+                return oldValue;
+            }
+            try {
+                dbLoads.incrementAndGet();
+                return loadFromDb(key, cacheKey, loader.dbLoader());
+            } finally {
+                releaseLease(leaseKey, token);
+            }
+        }
+        if (shouldRecomputeEarly(entry)) {
+            T value = recompute(key, cacheKey, loader.dbLoader());
+            if (value != null) {
+                return value;
+            }
+        }
+        return entry.value();
+    }
+
+    /**
+     * XFetch：now - delta * beta * ln(rand) >= expireAt 时提前重算
+     */
+    private boolean shouldRecomputeEarly(CacheValueCodec.Envelope<?> entry) {
+        if (xfetchBeta <= 0 || entry.deltaMs() <= 0) {
+            return false;
+        }
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        double gapMs = -entry.deltaMs() * xfetchBeta * Math.log(rand);
+        return System.currentTimeMillis() + gapMs >= entry.expireAtMs();
+    }
+
+    private void scheduleRecompute(String key, String cacheKey, Function<String, ?> dbLoader) {
+        try {
+            refreshExecutor.execute(() -> recompute(key, cacheKey, dbLoader));
+        } catch (RejectedExecutionException e) {
+            // 刷新线程忙：不提前重算，L2 照常过期
+            log.debug("[提前重算] 刷新线程忙，跳过 key={}", key);
+        }
+    }
+
+    /**
+     * 提前重算 L2：只有抢到加载租约的节点查库，其他节点继续使用当前值
+     *
+     * @return 新值；没抢到租约或数据已不存在返回 null
+     */
+    private <T> T recompute(String key, String cacheKey, Function<String, ? extends T> dbLoader) {
+        String leaseKey = LEASE_PREFIX + key;
+        String token = tryAcquireLease(leaseKey);
+        if (token == null) {
+            return null;
+        }
+        try {
+            earlyRecomputes.incrementAndGet();
+            log.debug("[提前重算] key={}", key);
+            return loadFromDb(key, cacheKey, dbLoader);
+        } catch (Exception e) {
+            log.warn("[提前重算] 失败 key={}: {}", key, e.getMessage());
+            return null;
+        } finally {
+            releaseLease(leaseKey, token);
+        }
+    }
+
+    private void writeL2(String cacheKey, Object value, long deltaMs) {
+        long expireAtMs = System.currentTimeMillis() + L2_EXPIRE.toMillis();
+        byte[] bytes = codec.encode(value, deltaMs, expireAtMs);
+        byte[] rawKey = cacheKey.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().pSetEx(rawKey, L2_EXPIRE.toMillis(), bytes));
+        l2Writes.incrementAndGet();
+        l2WriteBytes.addAndGet(bytes.length);
+    }
+
+    private <T> CacheValueCodec.Envelope<T> readL2(String cacheKey, Class<T> type) {
+        byte[] rawKey = cacheKey.getBytes(StandardCharsets.UTF_8);
+        byte[] raw = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey));
+        return raw == null ? null : codec.decode(raw, type);
+    }
+
+    /**
+     * 旧版本节点广播的旧前缀 key 换成当前前缀，删除对应的 L1
+     */
+    private static Collection<String> currentKeys(Collection<String> cacheKeys) {
+        List<String> keys = new ArrayList<>(cacheKeys.size());
+        for (String cacheKey : cacheKeys) {
+            keys.add(cacheKey.startsWith(LEGACY_CACHE_PREFIX) && !cacheKey.startsWith(CACHE_PREFIX)
+                    ? CACHE_PREFIX + cacheKey.substring(LEGACY_CACHE_PREFIX.length())
+                    : cacheKey);
+        }
+        return keys;
+    }
+
+    /**
+     * 刷新 L1 时使用的类型和加载函数（put 写入的 key 没有加载函数）
+     */
+    private record Loader<T>(Class<T> type, Function<String, ? extends T> dbLoader) {
+    }
+
+    /**
+     * 抢跨节点加载租约
+     *
+     * @return 持有者 token，未抢到返回 null；Redis 异常时返回空串（视为抢到，直接查库）
+     */
+    private String tryAcquireLease(String leaseKey) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue()
+                    .setIfAbsent(leaseKey, token, Duration.ofMillis(leaseMs));
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            log.warn("[加载租约] 获取失败，直接查库: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    private void releaseLease(String leaseKey, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.execute(LEASE_RELEASE_SCRIPT, Collections.singletonList(leaseKey), token);
+        } catch (RuntimeException e) {
+            // 释放失败不影响结果，租约到期自动失效
+            log.debug("[加载租约] 释放失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 等待持有租约的节点回填 L2
+     *
+     * @return L2 中的值；租约释放 / 到期后仍没有值（数据不存在或加载失败）返回 null
+     */
+    private <T> T awaitRemoteLoad(String cacheKey, String leaseKey, Class<T> type) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMs);
+        try {
+            while (System.nanoTime() - deadline < 0) {
+                Thread.sleep(leasePollMs);
+                CacheValueCodec.Envelope<T> entry = readL2(cacheKey, type);
+                if (entry != null) {
+                    return entry.value();
+                }
+                if (!Boolean.TRUE.equals(redisTemplate.hasKey(leaseKey))) {
+                    // 租约已释放：再查一次，避免错过释放前刚写入的值
+                    entry = readL2(cacheKey, type);
+                    return entry == null ? null : entry.value();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        leaseTimeouts.incrementAndGet();
+        return null;
+    }
+
     /**
      * 缓存写入并失效 (Cache-Aside 写模式)
      * 
@@ -122,12 +564,15 @@ public class MultiLevelCacheService {
      */
     public void invalidate(String key) {
         String cacheKey = CACHE_PREFIX + key;
+        String legacyKey = LEGACY_CACHE_PREFIX + key;
 
-        // 删除 L2 Redis
-        redisTemplate.delete(cacheKey);
+        // 删除 L2 Redis（连同旧版本节点使用的旧前缀 key）
+        redisTemplate.delete(List.of(cacheKey, legacyKey));
 
-        // 删除 L1 Caffeine
-        localCache.invalidate(cacheKey);
+        // 删除 L1 Caffeine，并通知其他节点删除各自的 L1（旧版本节点按旧前缀删除）
+        localCache.synchronous().invalidate(cacheKey);
+        invalidationBus.publish(cacheKey);
+        invalidationBus.publish(legacyKey);
 
         log.info("[缓存失效] key={}", key);
     }
@@ -147,29 +592,26 @@ public class MultiLevelCacheService {
         // 第一次删除
         invalidate(key);
 
-        // 延迟双删
-        new Thread(() -> {
-            try {
-                Thread.sleep(delayMs);
-                redisTemplate.delete(cacheKey);
-                localCache.invalidate(cacheKey);
-                log.info("[延迟双删] key={}, delay={}ms", key, delayMs);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+        // 延迟双删：登记到共享的延迟队列，到期后批量删除 L2 和各节点 L1
+        delayedInvalidation.schedule(cacheKey, delayMs);
+        delayedInvalidation.schedule(LEGACY_CACHE_PREFIX + key, delayMs);
     }
 
     /**
      * 直接写入缓存 (Write-Through 模式的缓存写入部分)
      */
-    public void put(String key, String value) {
+    public void put(String key, Object value) {
         String cacheKey = CACHE_PREFIX + key;
-        redisTemplate.opsForValue().set(cacheKey, value, L2_EXPIRE);
-        localCache.put(cacheKey, value);
+        writeL2(cacheKey, value, 0);
+        loaders.put(cacheKey, readOnlyLoader(value.getClass()));
+        localCache.put(cacheKey, CompletableFuture.completedFuture(value));
         log.debug("[缓存写入] key={}", key);
     }
 
+    private static <T> Loader<T> readOnlyLoader(Class<T> type) {
+        return new Loader<>(type, null);
+    }
+
     /**
      * 获取缓存统计信息
      */
@@ -186,6 +628,28 @@ public class MultiLevelCacheService {
         stats.put("l2Hits", l2);
         stats.put("dbHits", db);
 
+        // 防击穿：hits 为 L1 + L2 命中，misses 为实际查库次数，coalesced 为等待他人加载结果的请求数
+        long local = localCoalesced.get();
+        long remote = remoteCoalesced.get();
+        stats.put("hits", l1 + l2);
+        stats.put("misses", dbLoads.get());
+        stats.put("coalesced", local + remote);
+        stats.put("localCoalesced", local);
+        stats.put("remoteCoalesced", remote);
+        stats.put("leaseTimeouts", leaseTimeouts.get());
+
+        // 提前刷新：L1 后台刷新次数、L2 XFetch 提前重算次数
+        stats.put("l1Refreshes", l1Refreshes.get());
+        stats.put("earlyRecomputes", earlyRecomputes.get());
+
+        // L2 编码：写入次数与平均字节数
+        long writes = l2Writes.get();
+        stats.put("l2Writes", writes);
+        stats.put("l2WriteBytes", l2WriteBytes.get());
+        if (writes > 0) {
+            stats.put("l2AvgValueBytes", l2WriteBytes.get() / writes);
+        }
+
         if (total > 0) {
             stats.put("l1HitRate", String.format("%.2f%%", l1 * 100.0 / total));
             stats.put("l2HitRate", String.format("%.2f%%", l2 * 100.0 / total));
@@ -193,23 +657,30 @@ public class MultiLevelCacheService {
         }
 
         // Caffeine 内部统计
-        var caffeineStats = localCache.stats();
+        var caffeineStats = localCache.synchronous().stats();
         stats.put("caffeine", Map.of(
                 "hitCount", caffeineStats.hitCount(),
                 "missCount", caffeineStats.missCount(),
                 "evictionCount", caffeineStats.evictionCount(),
                 "hitRate", String.format("%.2f%%", caffeineStats.hitRate() * 100)));
 
-        stats.put("localCacheSize", localCache.estimatedSize());
+        stats.put("localCacheSize", localCache.synchronous().estimatedSize());
+        stats.put("invalidation", invalidationBus.getStats());
+        stats.put("delayedInvalidation", delayedInvalidation.getStats());
 
         return stats;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
     /**
      * 清空所有缓存
      */
     public void clearAll() {
-        localCache.invalidateAll();
+        localCache.synchronous().invalidateAll();
         log.info("[缓存清空] L1 本地缓存已清空");
     }
 }
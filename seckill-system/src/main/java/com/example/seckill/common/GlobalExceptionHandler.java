@@ -1,8 +1,12 @@
 package com.example.seckill.common;
 
+import com.example.seckill.ratelimit.BulkheadTimeoutException;
+import com.example.seckill.ratelimit.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 /**
@@ -19,6 +23,20 @@ public class GlobalExceptionHandler {
         return Result.fail(e.getMessage());
     }
 
+    @ExceptionHandler(CallNotPermittedException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public Result<Void> handleCallNotPermitted(CallNotPermittedException e) {
+        log.warn("调用被拒绝 [{}]: {}", e.getPolicy(), e.getMessage());
+        return Result.fail(429, e.getMessage());
+    }
+
+    @ExceptionHandler(BulkheadTimeoutException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Result<Void> handleBulkheadTimeout(BulkheadTimeoutException e) {
+        log.warn("调用超时 [{}]: {}", e.getPolicy(), e.getMessage());
+        return Result.fail(503, "服务响应超时，请稍后再试");
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public Result<Void> handleIllegalArgumentException(IllegalArgumentException e) {
         log.warn("参数异常: {}", e.getMessage());
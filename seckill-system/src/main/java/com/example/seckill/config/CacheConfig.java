@@ -1,12 +1,14 @@
 package com.example.seckill.config;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,16 +18,39 @@ import java.util.concurrent.TimeUnit;
 @EnableCaching
 public class CacheConfig {
 
+    private static final long EXPIRE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
     /**
      * 配置 Spring Cache 使用 Caffeine
      * 用于 @Cacheable 注解的默认缓存
+     *
+     * @Cacheable 的加载逻辑在各个方法里，缓存管理器拿不到统一的 loader，无法 refreshAfterWrite；
+     * 过期时间在 10 分钟上随机浮动 ±10%，同一批写入的条目不会在同一时刻集中过期回源
      */
     @Bean
     public CacheManager cacheManager() {
         CaffeineCacheManager cacheManager = new CaffeineCacheManager();
         cacheManager.setCaffeine(Caffeine.newBuilder()
                 .maximumSize(5000)
-                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .expireAfter(new Expiry<Object, Object>() {
+                    @Override
+                    public long expireAfterCreate(Object key, Object value, long currentTime) {
+                        long jitter = EXPIRE_NANOS / 10;
+                        return EXPIRE_NANOS + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Object key, Object value, long currentTime,
+                            long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Object key, Object value, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
                 .recordStats());
         return cacheManager;
     }
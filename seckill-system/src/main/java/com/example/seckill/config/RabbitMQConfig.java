@@ -1,13 +1,17 @@
 package com.example.seckill.config;
 
+import com.example.seckill.mq.BinaryMessageConverter;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * RabbitMQ 配置
@@ -24,6 +28,9 @@ public class RabbitMQConfig {
     public static final String SECKILL_DLQ = "seckill.order.dlq";
     public static final String SECKILL_DLX = "seckill.order.dlx";
 
+    // 领域事件交换机
+    public static final String DOMAIN_EVENT_EXCHANGE = "domain.events";
+
     /**
      * JSON 消息转换器
      */
@@ -32,23 +39,89 @@ public class RabbitMQConfig {
         return new Jackson2JsonMessageConverter();
     }
 
+    /**
+     * 二进制消息转换器（不支持的类型回退到 JSON）
+     */
+    @Bean
+    public MessageConverter binaryMessageConverter() {
+        return new BinaryMessageConverter(jsonMessageConverter());
+    }
+
+    /**
+     * 消费端转换器：按 content-type 选择，二进制和旧的 JSON 消息都能解码
+     */
+    @Bean
+    @Primary
+    public MessageConverter messageConverter() {
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(jsonMessageConverter());
+        converter.addDelegate(BinaryMessageConverter.CONTENT_TYPE, binaryMessageConverter());
+        return converter;
+    }
+
+    /**
+     * 秒杀订单交换机使用的模板
+     * seckill.mq.wire-format.seckill: json | binary
+     */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    @Primary
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory,
+            @Value("${seckill.mq.wire-format.seckill:json}") String wireFormat) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(jsonMessageConverter());
+        template.setMessageConverter(wireConverter(wireFormat));
+        // 无法路由的消息退回给生产者，配合 publisher confirm 判断是否投递成功
+        template.setMandatory(true);
         return template;
     }
 
+    /**
+     * 领域事件交换机使用的模板
+     * seckill.mq.wire-format.domain-events: json | binary
+     */
+    @Bean
+    public RabbitTemplate domainEventRabbitTemplate(ConnectionFactory connectionFactory,
+            @Value("${seckill.mq.wire-format.domain-events:json}") String wireFormat) {
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(wireConverter(wireFormat));
+        return template;
+    }
+
+    private MessageConverter wireConverter(String wireFormat) {
+        return switch (wireFormat) {
+            case "binary" -> binaryMessageConverter();
+            case "json" -> jsonMessageConverter();
+            default -> throw new IllegalArgumentException("未知的消息格式: " + wireFormat);
+        };
+    }
+
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter());
+        factory.setMessageConverter(messageConverter());
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         factory.setPrefetchCount(1);
         return factory;
     }
 
+    /**
+     * 批量消费容器：一次投递最多 batchSize 条消息，等待 receiveTimeout 仍未凑满时直接投递
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+            @Value("${seckill.consumer.batch.size:100}") int batchSize,
+            @Value("${seckill.consumer.batch.receive-timeout-ms:50}") long receiveTimeoutMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        // prefetch 不小于批大小，否则凑不满一批
+        factory.setPrefetchCount(batchSize);
+        return factory;
+    }
+
     // ============ 秒杀队列配置 ============
 
     @Bean
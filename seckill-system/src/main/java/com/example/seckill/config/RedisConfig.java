@@ -1,5 +1,11 @@
 package com.example.seckill.config;
 
+import com.example.seckill.dedup.BitmapDedupStore;
+import com.example.seckill.dedup.PurchaseDedupStore;
+import com.example.seckill.dedup.SetDedupStore;
+import com.example.seckill.dedup.ShardedSetDedupStore;
+import com.example.seckill.monitor.ThreadPoolMonitor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -7,10 +13,16 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.scripting.support.ResourceScriptSource;
 
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Redis 配置
  */
@@ -35,6 +47,50 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Redis Pub/Sub 监听容器
+     * 断线后自动重连并重新订阅
+     *
+     * 消息分发使用有界线程池（默认 SimpleAsyncTaskExecutor 每条消息新建一个线程）。
+     * 默认单线程，同一频道的消息按到达顺序处理；队列满时由订阅线程自己执行，形成背压。
+     * 监听器只做内存操作，需要访问 Redis / 数据库的工作交给各自的线程池。
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory,
+            ThreadPoolMonitor threadPoolMonitor,
+            @Value("${seckill.redis.listener.threads:1}") int threads,
+            @Value("${seckill.redis.listener.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "redis-listener");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        threadPoolMonitor.registerThreadPool("redis-listener", executor);
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.setRecoveryInterval(3000L);
+        container.setTaskExecutor(executor);
+        return container;
+    }
+
+    /**
+     * 已购买用户存储（重复购买判断）
+     * seckill.dedup.type: set | bitmap | sharded
+     */
+    @Bean
+    public PurchaseDedupStore purchaseDedupStore(StringRedisTemplate stringRedisTemplate,
+            @Value("${seckill.dedup.type:set}") String type,
+            @Value("${seckill.dedup.shards:16}") int shards) {
+        return switch (type) {
+            case "bitmap" -> new BitmapDedupStore(stringRedisTemplate);
+            case "sharded" -> new ShardedSetDedupStore(stringRedisTemplate, shards);
+            case "set" -> new SetDedupStore(stringRedisTemplate);
+            default -> throw new IllegalArgumentException("未知的 seckill.dedup.type: " + type);
+        };
+    }
+
     /**
      * 秒杀 Lua 脚本
      * 原子操作：检查库存 + 检查重复购买 + 扣减库存 + 记录购买
@@ -47,4 +103,29 @@ public class RedisConfig {
         return script;
     }
 
+    /**
+     * 批量秒杀 Lua 脚本
+     * 一次执行处理同一商品的多个用户，返回与用户一一对应的结果数组
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public DefaultRedisScript<List> seckillBatchScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/seckill_batch.lua")));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    /**
+     * 库存租约 Lua 脚本
+     * 原子操作：从 Redis 库存中领取一块库存到节点本地
+     */
+    @Bean
+    public DefaultRedisScript<Long> stockLeaseScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/stock_lease.lua")));
+        script.setResultType(Long.class);
+        return script;
+    }
+
 }
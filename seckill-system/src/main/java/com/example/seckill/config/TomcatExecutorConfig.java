@@ -0,0 +1,110 @@
+package com.example.seckill.config;
+
+import com.example.seckill.ratelimit.LoadShedder;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.apache.tomcat.util.threads.TaskQueue;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tomcat 请求执行器配置
+ *
+ * 接入 LoadShedder，测量每个请求的排队延迟（CoDel 过载信号）。
+ * - 平台线程：按 Tomcat 默认方式（TaskQueue，先扩线程再排队）创建执行器，线程数取 server.tomcat.threads.*。
+ *   执行器是 Tomcat ThreadPoolExecutor 的子类，Tomcat 自身的线程池指标（tomcat.threads.*、JMX ThreadPool）照常可用
+ * - 虚拟线程（spring.threads.virtual.enabled）：包装 Spring Boot 设置的虚拟线程执行器
+ *
+ * 在连接器定制阶段执行（晚于 Spring Boot 设置线程数和虚拟线程），拿到的是最终配置。
+ */
+@Configuration
+public class TomcatExecutorConfig implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>,
+        Ordered, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TomcatExecutorConfig.class);
+
+    private final LoadShedder loadShedder;
+
+    /**
+     * 自行创建的执行器（需要在关闭时释放）
+     */
+    private volatile ThreadPoolExecutor ownedExecutor;
+
+    public TomcatExecutorConfig(LoadShedder loadShedder) {
+        this.loadShedder = loadShedder;
+    }
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        if (!loadShedder.isEnabled()) {
+            return;
+        }
+        factory.addConnectorCustomizers(connector -> {
+            ProtocolHandler handler = connector.getProtocolHandler();
+            Executor delegate = handler.getExecutor();
+            if (delegate == null && handler instanceof AbstractProtocol<?> protocol) {
+                handler.setExecutor(createExecutor(protocol, connector.getPort()));
+                log.info("🚦 Tomcat 执行器已接入过载丢弃: {}", QueueDelayThreadPoolExecutor.class.getSimpleName());
+            } else if (delegate != null) {
+                handler.setExecutor(loadShedder.wrap(delegate));
+                log.info("🚦 Tomcat 执行器已接入过载丢弃: {}", delegate.getClass().getSimpleName());
+            }
+        });
+    }
+
+    /**
+     * 与 AbstractEndpoint.createExecutor() 相同的默认执行器
+     */
+    private Executor createExecutor(AbstractProtocol<?> protocol, int port) {
+        TaskQueue queue = new TaskQueue();
+        TaskThreadFactory threadFactory = new TaskThreadFactory("http-nio-" + port + "-exec-", true,
+                protocol.getThreadPriority());
+        ThreadPoolExecutor executor = new QueueDelayThreadPoolExecutor(protocol.getMinSpareThreads(),
+                protocol.getMaxThreads(), queue, threadFactory, loadShedder);
+        queue.setParent(executor);
+        ownedExecutor = executor;
+        return executor;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public void destroy() {
+        ThreadPoolExecutor executor = ownedExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 提交时记录排队延迟的 Tomcat 线程池
+     */
+    private static final class QueueDelayThreadPoolExecutor extends ThreadPoolExecutor {
+
+        private final LoadShedder loadShedder;
+
+        QueueDelayThreadPoolExecutor(int corePoolSize, int maximumPoolSize, TaskQueue queue,
+                TaskThreadFactory threadFactory, LoadShedder loadShedder) {
+            super(corePoolSize, maximumPoolSize, 60, TimeUnit.SECONDS, queue, threadFactory);
+            this.loadShedder = loadShedder;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            loadShedder.execute(super::execute, command);
+        }
+    }
+}
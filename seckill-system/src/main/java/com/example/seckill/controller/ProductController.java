@@ -3,6 +3,8 @@ package com.example.seckill.controller;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.example.seckill.common.Result;
 import com.example.seckill.entity.Product;
+import com.example.seckill.ratelimit.LoadShedPriority;
+import com.example.seckill.ratelimit.RateLimit;
 import com.example.seckill.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -26,18 +28,21 @@ public class ProductController {
 
     @GetMapping("/{id}")
     @Operation(summary = "获取商品详情")
+    @LoadShedPriority(RateLimit.Priority.SHEDDABLE)
     public Result<Product> getProduct(@PathVariable Long id) {
         return Result.success(productService.findById(id));
     }
 
     @GetMapping
     @Operation(summary = "获取上架商品列表")
+    @LoadShedPriority(RateLimit.Priority.SHEDDABLE)
     public Result<List<Product>> getOnSaleProducts() {
         return Result.success(productService.findOnSale());
     }
 
     @GetMapping("/page")
     @Operation(summary = "分页查询商品")
+    @LoadShedPriority(RateLimit.Priority.SHEDDABLE)
     public Result<Page<Product>> getProductPage(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize) {
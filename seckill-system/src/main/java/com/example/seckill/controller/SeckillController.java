@@ -1,5 +1,100 @@
 package com.example.seckill.controller;
 
+import com.example.seckill.common.Result;
+import com.example.seckill.entity.SeckillGoods;
+import com.example.seckill.mq.SeckillPartitionManager;
+import com.example.seckill.ratelimit.LoadShedPriority;
+import com.example.seckill.ratelimit.RateLimit;
+import com.example.seckill.service.SeckillResultNotifier;
+import com.example.seckill.service.SeckillService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 秒杀接口
+ */
+@RestController
+@RequestMapping("/api/seckill")
+@Tag(name = "秒杀", description = "秒杀下单与结果查询")
 public class SeckillController {
 
+    private final SeckillService seckillService;
+    private final SeckillResultNotifier resultNotifier;
+    private final SeckillPartitionManager partitionManager;
+
+    public SeckillController(SeckillService seckillService, SeckillResultNotifier resultNotifier,
+            SeckillPartitionManager partitionManager) {
+        this.seckillService = seckillService;
+        this.resultNotifier = resultNotifier;
+        this.partitionManager = partitionManager;
+    }
+
+    @GetMapping("/goods")
+    @Operation(summary = "获取秒杀商品列表")
+    @LoadShedPriority(RateLimit.Priority.SHEDDABLE)
+    public Result<List<SeckillGoods>> listGoods() {
+        return Result.success(seckillService.listSeckillGoods());
+    }
+
+    @GetMapping("/goods/{goodsId}")
+    @Operation(summary = "获取秒杀商品详情（实时库存）")
+    @LoadShedPriority(RateLimit.Priority.SHEDDABLE)
+    public Result<SeckillGoods> getGoods(@PathVariable Long goodsId) {
+        return Result.success(seckillService.getSeckillGoods(goodsId));
+    }
+
+    @PostMapping("/do")
+    @Operation(summary = "执行秒杀")
+    @RateLimit(name = "seckill", qps = 5000, key = "#userId", keyQps = 5, message = "操作太频繁，请稍后再试",
+            priority = RateLimit.Priority.CRITICAL)
+    public Result<String> doSeckill(@RequestParam Long userId, @RequestParam Long goodsId) {
+        return seckillService.doSeckill(userId, goodsId);
+    }
+
+    @GetMapping("/result")
+    @Operation(summary = "查询秒杀结果（轮询）")
+    @LoadShedPriority(RateLimit.Priority.CRITICAL)
+    public Result<Object> getResult(@RequestParam Long userId, @RequestParam Long goodsId) {
+        return seckillService.getSeckillResult(userId, goodsId);
+    }
+
+    @GetMapping("/result/wait")
+    @Operation(summary = "等待秒杀结果（长轮询，超时返回当前状态）")
+    @LoadShedPriority(RateLimit.Priority.CRITICAL)
+    public DeferredResult<Result<Object>> waitResult(@RequestParam Long userId,
+            @RequestParam Long goodsId,
+            @RequestParam(required = false) Long timeoutMs) {
+        return resultNotifier.await(userId, goodsId, timeoutMs,
+                () -> seckillService.getSeckillResult(userId, goodsId));
+    }
+
+    @PostMapping("/reset/{goodsId}")
+    @Operation(summary = "重置秒杀（测试用）")
+    public Result<Void> reset(@PathVariable Long goodsId) {
+        seckillService.resetSeckill(goodsId);
+        return Result.success();
+    }
+
+    @GetMapping("/partitions")
+    @Operation(summary = "查询订单分区状态")
+    public Result<Map<String, Object>> partitions() {
+        return Result.success(partitionManager.getStatus());
+    }
+
+    @PostMapping("/partitions")
+    @Operation(summary = "调整订单分区数（在线迁移，保持同一商品的顺序）")
+    public Result<Map<String, Object>> resizePartitions(@RequestParam int count) {
+        try {
+            partitionManager.resize(count);
+        } catch (IllegalStateException e) {
+            // 未开启分区模式、上一次调整尚未完成
+            return Result.fail(e.getMessage());
+        }
+        return Result.success(partitionManager.getStatus());
+    }
 }
@@ -0,0 +1,64 @@
+package com.example.seckill.dedup;
+
+import java.util.List;
+
+/**
+ * 秒杀已购买用户存储（重复购买判断）
+ *
+ * 可选实现：
+ * - set:     每个商品一个 SET，存用户ID字符串（默认，兼容旧数据）
+ * - bitmap:  每个商品一个位图，以数字 userId 为偏移量 (SETBIT/GETBIT)
+ * - sharded: 按 userId 哈希拆分为 N 个 SET，避免单个大 key
+ *
+ * Lua 脚本通过 {@link #key} / {@link #member} / {@link #mode} 获得参数，
+ * 与具体实现解耦。
+ */
+public interface PurchaseDedupStore {
+
+    /**
+     * Lua 脚本中使用的判重方式："set" (SISMEMBER/SADD) 或 "bit" (GETBIT/SETBIT)
+     */
+    String mode();
+
+    /**
+     * 记录该用户的 key
+     */
+    String key(Long goodsId, Long userId);
+
+    /**
+     * 该用户在 key 中的成员值（SET 成员或位图偏移量）
+     */
+    String member(Long userId);
+
+    /**
+     * 是否已购买
+     */
+    boolean contains(Long goodsId, Long userId);
+
+    /**
+     * 原子地记录购买
+     *
+     * @return true 新增成功，false 已存在（重复购买），null 执行失败
+     */
+    Boolean addIfAbsent(Long goodsId, Long userId);
+
+    /**
+     * 移除购买记录（回滚时）
+     */
+    void remove(Long goodsId, Long userId);
+
+    /**
+     * 该商品使用的所有 key
+     */
+    List<String> keys(Long goodsId);
+
+    /**
+     * 清空该商品的购买记录
+     */
+    void clear(Long goodsId);
+
+    /**
+     * 存储名称
+     */
+    String getName();
+}
@@ -0,0 +1,68 @@
+package com.example.seckill.dedup;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个 SET 存储已购买用户
+ *
+ * key: seckill:bought:{goodsId}，成员为用户ID字符串
+ * 简单直观，但百万级用户时单 key 内存大，删除耗时长
+ */
+public class SetDedupStore implements PurchaseDedupStore {
+
+    private final StringRedisTemplate redisTemplate;
+
+    public SetDedupStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String mode() {
+        return "set";
+    }
+
+    @Override
+    public String key(Long goodsId, Long userId) {
+        return "seckill:bought:" + goodsId;
+    }
+
+    @Override
+    public String member(Long userId) {
+        return userId.toString();
+    }
+
+    @Override
+    public boolean contains(Long goodsId, Long userId) {
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(key(goodsId, userId), member(userId)));
+    }
+
+    @Override
+    public Boolean addIfAbsent(Long goodsId, Long userId) {
+        Long added = redisTemplate.opsForSet().add(key(goodsId, userId), member(userId));
+        return added == null ? null : added > 0;
+    }
+
+    @Override
+    public void remove(Long goodsId, Long userId) {
+        redisTemplate.opsForSet().remove(key(goodsId, userId), member(userId));
+    }
+
+    @Override
+    public List<String> keys(Long goodsId) {
+        return Collections.singletonList("seckill:bought:" + goodsId);
+    }
+
+    @Override
+    public void clear(Long goodsId) {
+        // UNLINK 异步释放内存，不阻塞 Redis
+        redisTemplate.unlink(keys(goodsId));
+    }
+
+    @Override
+    public String getName() {
+        return "set";
+    }
+}
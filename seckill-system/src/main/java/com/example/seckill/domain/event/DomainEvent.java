@@ -15,12 +15,12 @@ public abstract class DomainEvent {
     /**
      * 事件唯一标识
      */
-    private final String eventId;
+    private String eventId;
 
     /**
      * 事件发生时间
      */
-    private final LocalDateTime occurredAt;
+    private LocalDateTime occurredAt;
 
     /**
      * 聚合根ID
@@ -30,7 +30,7 @@ public abstract class DomainEvent {
     /**
      * 事件版本（用于事件溯源）
      */
-    private final int version;
+    private int version;
 
     protected DomainEvent(String aggregateId) {
         this.eventId = UUID.randomUUID().toString();
@@ -46,6 +46,15 @@ public abstract class DomainEvent {
         this.version = version;
     }
 
+    /**
+     * 反序列化时恢复通用属性（由 {@link DomainEventCodec} 调用）
+     */
+    void restoreMetadata(String eventId, LocalDateTime occurredAt, int version) {
+        this.eventId = eventId;
+        this.occurredAt = occurredAt;
+        this.version = version;
+    }
+
     /**
      * 获取事件类型名称
      */
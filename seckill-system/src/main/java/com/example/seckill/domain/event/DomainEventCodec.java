@@ -0,0 +1,324 @@
+package com.example.seckill.domain.event;
+
+import com.example.seckill.domain.event.OrderEvents.OrderCancelledEvent;
+import com.example.seckill.domain.event.OrderEvents.OrderCompletedEvent;
+import com.example.seckill.domain.event.OrderEvents.OrderCreatedEvent;
+import com.example.seckill.domain.event.OrderEvents.OrderPaidEvent;
+import com.example.seckill.domain.event.OrderEvents.OrderShippedEvent;
+import com.example.seckill.domain.event.SeckillEvents.SeckillFailedEvent;
+import com.example.seckill.domain.event.SeckillEvents.SeckillRequestedEvent;
+import com.example.seckill.domain.event.SeckillEvents.SeckillStartedEvent;
+import com.example.seckill.domain.event.SeckillEvents.SeckillSucceededEvent;
+import com.example.seckill.domain.event.SeckillEvents.StockChangedEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 领域事件紧凑二进制编码
+ *
+ * 布局：
+ * <pre>
+ * magic(1) | 格式版本(1) | 事件类型ID(2) | 类型 schema 版本(1)
+ * | eventId (UUID 16 字节，非 UUID 时为字符串) | occurredAt (秒 varint + 纳秒 varint)
+ * | aggregateId | version | 事件字段...
+ * </pre>
+ *
+ * 整数使用 ZigZag varint，字符串为 长度+1 (0 表示 null) + UTF-8。
+ * 每种事件注册固定的类型ID和 schema 版本，新增字段时提升 schema 版本并追加到末尾，
+ * 读取端按版本判断字段是否存在，旧消息仍可解码。
+ */
+public final class DomainEventCodec {
+
+    private static final int MAGIC = 0xDE;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<Class<?>, Registration<?>> BY_CLASS = new HashMap<>();
+    private static final Map<Integer, Registration<?>> BY_TYPE = new HashMap<>();
+
+    static {
+        // ========== 秒杀事件 1xx ==========
+        register(101, SeckillStartedEvent.class, 1,
+                (e, out) -> {
+                    writeLong(out, e.getGoodsId());
+                    writeInt(out, e.getStock());
+                    writeDecimal(out, e.getSeckillPrice());
+                },
+                (id, v, in) -> new SeckillStartedEvent(id, readLong(in), readInt(in), readDecimal(in)));
+        register(102, SeckillRequestedEvent.class, 1,
+                (e, out) -> {
+                    writeLong(out, e.getUserId());
+                    writeLong(out, e.getGoodsId());
+                },
+                (id, v, in) -> new SeckillRequestedEvent(id, readLong(in), readLong(in)));
+        register(103, SeckillSucceededEvent.class, 1,
+                (e, out) -> {
+                    writeLong(out, e.getUserId());
+                    writeLong(out, e.getGoodsId());
+                    writeLong(out, e.getOrderId());
+                },
+                (id, v, in) -> new SeckillSucceededEvent(id, readLong(in), readLong(in), readLong(in)));
+        register(104, SeckillFailedEvent.class, 1,
+                (e, out) -> {
+                    writeLong(out, e.getUserId());
+                    writeLong(out, e.getGoodsId());
+                    writeString(out, e.getReason());
+                },
+                (id, v, in) -> new SeckillFailedEvent(id, readLong(in), readLong(in), readString(in)));
+        register(105, StockChangedEvent.class, 1,
+                (e, out) -> {
+                    writeInt(out, e.getPreviousStock());
+                    writeInt(out, e.getCurrentStock());
+                    writeString(out, e.getChangeType());
+                },
+                // goodsId 即 aggregateId
+                (id, v, in) -> new StockChangedEvent(id, readInt(in), readInt(in), readString(in)));
+
+        // ========== 订单事件 2xx ==========
+        register(201, OrderCreatedEvent.class, 1,
+                (e, out) -> {
+                    writeLong(out, e.getUserId());
+                    writeLong(out, e.getProductId());
+                    writeInt(out, e.getQuantity());
+                    writeDecimal(out, e.getTotalAmount());
+                },
+                (id, v, in) -> new OrderCreatedEvent(id, readLong(in), readLong(in), readInt(in), readDecimal(in)));
+        register(202, OrderPaidEvent.class, 1,
+                (e, out) -> {
+                    writeDecimal(out, e.getPaidAmount());
+                    writeString(out, e.getPaymentMethod());
+                },
+                (id, v, in) -> new OrderPaidEvent(id, readDecimal(in), readString(in)));
+        register(203, OrderCancelledEvent.class, 1,
+                (e, out) -> writeString(out, e.getReason()),
+                (id, v, in) -> new OrderCancelledEvent(id, readString(in)));
+        register(204, OrderShippedEvent.class, 1,
+                (e, out) -> {
+                    writeString(out, e.getTrackingNumber());
+                    writeString(out, e.getCarrier());
+                },
+                (id, v, in) -> new OrderShippedEvent(id, readString(in), readString(in)));
+        register(205, OrderCompletedEvent.class, 1,
+                (e, out) -> {
+                },
+                (id, v, in) -> new OrderCompletedEvent(id));
+    }
+
+    private DomainEventCodec() {
+    }
+
+    /**
+     * 是否支持该事件类型（未注册的事件由调用方回退到 JSON）
+     */
+    public static boolean supports(Class<?> type) {
+        return BY_CLASS.containsKey(type);
+    }
+
+    /**
+     * 编码
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] encode(DomainEvent event) throws IOException {
+        Registration<DomainEvent> registration = (Registration<DomainEvent>) BY_CLASS.get(event.getClass());
+        if (registration == null) {
+            throw new IOException("未注册的领域事件类型: " + event.getClass().getName());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeShort(registration.typeId());
+        out.writeByte(registration.schemaVersion());
+
+        writeEventId(out, event.getEventId());
+        LocalDateTime occurredAt = event.getOccurredAt();
+        writeVarLong(out, occurredAt.toEpochSecond(ZoneOffset.UTC));
+        writeVarLong(out, occurredAt.getNano());
+        writeString(out, event.getAggregateId());
+        writeVarLong(out, event.getVersion());
+
+        registration.writer().write(event, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解码
+     */
+    public static DomainEvent decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if (in.readUnsignedByte() != MAGIC) {
+            throw new IOException("不是领域事件二进制格式");
+        }
+        int formatVersion = in.readUnsignedByte();
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IOException("不支持的领域事件格式版本: " + formatVersion);
+        }
+
+        int typeId = in.readUnsignedShort();
+        int schemaVersion = in.readUnsignedByte();
+        Registration<?> registration = BY_TYPE.get(typeId);
+        if (registration == null) {
+            throw new IOException("未知的领域事件类型ID: " + typeId);
+        }
+        if (schemaVersion > registration.schemaVersion()) {
+            throw new IOException("领域事件 schema 版本过新: type=" + typeId + ", version=" + schemaVersion);
+        }
+
+        String eventId = readEventId(in);
+        LocalDateTime occurredAt = LocalDateTime.ofEpochSecond(readVarLong(in), (int) readVarLong(in), ZoneOffset.UTC);
+        String aggregateId = readString(in);
+        int version = (int) readVarLong(in);
+
+        DomainEvent event = registration.reader().read(aggregateId, schemaVersion, in);
+        event.restoreMetadata(eventId, occurredAt, version);
+        return event;
+    }
+
+    private static <E extends DomainEvent> void register(int typeId, Class<E> type, int schemaVersion,
+            FieldWriter<E> writer, FieldReader reader) {
+        Registration<E> registration = new Registration<>(typeId, schemaVersion, writer, reader);
+        BY_CLASS.put(type, registration);
+        BY_TYPE.put(typeId, registration);
+    }
+
+    // ==================== 基础类型编码 ====================
+
+    private static void writeEventId(DataOutputStream out, String eventId) throws IOException {
+        UUID uuid = null;
+        if (eventId != null && eventId.length() == 36) {
+            try {
+                uuid = UUID.fromString(eventId);
+            } catch (IllegalArgumentException ignored) {
+                // 非 UUID 格式按字符串写入
+            }
+        }
+        if (uuid != null) {
+            out.writeByte(1);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(0);
+            writeString(out, eventId);
+        }
+    }
+
+    private static String readEventId(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() == 1) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        return readString(in);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63); // ZigZag
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new IOException("varint 过长");
+            }
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeVarLong(out, value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readVarLong(in) : null;
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        writeLong(out, value == null ? null : value.longValue());
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        Long value = readLong(in);
+        return value == null ? null : value.intValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            writeVarLong(out, value.scale());
+            writeVarLong(out, unscaled.length);
+            out.write(unscaled);
+        }
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int scale = (int) readVarLong(in);
+        byte[] unscaled = new byte[(int) readVarLong(in)];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // ==================== 注册信息 ====================
+
+    @FunctionalInterface
+    private interface FieldWriter<E extends DomainEvent> {
+        void write(E event, DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface FieldReader {
+        DomainEvent read(String aggregateId, int schemaVersion, DataInputStream in) throws IOException;
+    }
+
+    private record Registration<E extends DomainEvent>(int typeId, int schemaVersion,
+            FieldWriter<E> writer, FieldReader reader) {
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.seckill.domain.event;
 
+import com.example.seckill.config.RabbitMQConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
@@ -25,11 +27,8 @@ public class DomainEventPublisher {
     private final ApplicationEventPublisher applicationEventPublisher;
     private final RabbitTemplate rabbitTemplate;
 
-    // 事件交换机名称
-    private static final String DOMAIN_EVENT_EXCHANGE = "domain.events";
-
     public DomainEventPublisher(ApplicationEventPublisher applicationEventPublisher,
-            RabbitTemplate rabbitTemplate) {
+            @Qualifier("domainEventRabbitTemplate") RabbitTemplate rabbitTemplate) {
         this.applicationEventPublisher = applicationEventPublisher;
         this.rabbitTemplate = rabbitTemplate;
     }
@@ -62,7 +61,7 @@ public class DomainEventPublisher {
             log.info("📤 发布 MQ 事件: {} -> {}", event.getEventType(), routingKey);
 
             rabbitTemplate.convertAndSend(
-                    DOMAIN_EVENT_EXCHANGE,
+                    RabbitMQConfig.DOMAIN_EVENT_EXCHANGE,
                     routingKey,
                     event);
         } catch (Exception e) {
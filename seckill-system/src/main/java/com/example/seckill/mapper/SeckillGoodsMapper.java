@@ -32,6 +32,17 @@ public interface SeckillGoodsMapper extends BaseMapper<SeckillGoods> {
             "WHERE id = #{goodsId} AND stock_count > 0")
     int deductStock(@Param("goodsId") Long goodsId);
 
+    /**
+     * 批量扣减库存（批量消费时整批一次扣减）
+     *
+     * @param goodsId 商品ID
+     * @param count   扣减数量
+     * @return 影响行数，0表示库存不足以整批扣减
+     */
+    @Update("UPDATE seckill_goods SET stock_count = stock_count - #{count} " +
+            "WHERE id = #{goodsId} AND stock_count >= #{count}")
+    int deductStockBatch(@Param("goodsId") Long goodsId, @Param("count") int count);
+
     /**
      * 恢复库存（订单失败时）
      */
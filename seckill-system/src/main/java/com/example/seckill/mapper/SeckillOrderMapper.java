@@ -2,6 +2,7 @@ package com.example.seckill.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.seckill.entity.SeckillOrder;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
@@ -21,6 +22,27 @@ public interface SeckillOrderMapper extends BaseMapper<SeckillOrder> {
                 .eq(SeckillOrder::getGoodsId, goodsId));
     }
 
+    /**
+     * 批量查询用户是否已购买该商品（一次 IN 查询）
+     */
+    default java.util.List<SeckillOrder> selectByGoodsAndUsers(Long goodsId, java.util.Collection<Long> userIds) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<SeckillOrder>()
+                .select(SeckillOrder::getUserId)
+                .eq(SeckillOrder::getGoodsId, goodsId)
+                .in(SeckillOrder::getUserId, userIds));
+    }
+
+    /**
+     * 多行 INSERT 批量创建订单
+     */
+    @Insert("<script>" +
+            "INSERT INTO seckill_order (user_id, goods_id, goods_name, seckill_price, status) VALUES " +
+            "<foreach collection='orders' item='o' separator=','>" +
+            "(#{o.userId}, #{o.goodsId}, #{o.goodsName}, #{o.seckillPrice}, #{o.status})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("orders") java.util.List<SeckillOrder> orders);
+
     /**
      * 更新订单状态
      */
@@ -1,7 +1,7 @@
 package com.example.seckill.monitor;
 
-import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -29,7 +29,7 @@ public class CacheService {
     private final StringRedisTemplate redisTemplate;
 
     // Caffeine 本地缓存 - 存储商品信息
-    private final Cache<String, String> localCache;
+    private final LoadingCache<String, String> localCache;
 
     // 模拟数据库存储
     private final Map<String, String> mockDatabase = new ConcurrentHashMap<>();
@@ -46,8 +46,9 @@ public class CacheService {
                 .maximumSize(10_000) // 最大缓存条目数
                 .expireAfterWrite(Duration.ofMinutes(5)) // 写入后 5 分钟过期
                 .expireAfterAccess(Duration.ofMinutes(2))// 2 分钟未访问过期
+                .refreshAfterWrite(Duration.ofMinutes(4)) // 写入 4 分钟后再被访问时后台刷新（热点 key 不会撞上过期）
                 .recordStats() // 记录统计信息
-                .build();
+                .build(this::reload);
 
         // 初始化模拟数据
         initMockData();
@@ -59,6 +60,22 @@ public class CacheService {
         mockDatabase.put("goods:3", "{\"id\":3,\"name\":\"iPad Air\",\"price\":4799}");
     }
 
+    /**
+     * 后台刷新本地缓存：从 Redis / 数据库重新读取，刷新期间读请求仍拿到旧值
+     */
+    private String reload(String key) {
+        try {
+            String value = redisTemplate.opsForValue().get(key);
+            if (value != null) {
+                return value;
+            }
+        } catch (Exception e) {
+            // Redis 不可用时直接读数据库
+        }
+        String value = mockDatabase.get(key);
+        return value != null ? value : NULL_VALUE;
+    }
+
     /**
      * 多级缓存读取示例 (Cache-Aside 模式)
      * 
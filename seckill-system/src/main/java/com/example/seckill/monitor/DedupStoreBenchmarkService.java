@@ -0,0 +1,166 @@
+package com.example.seckill.monitor;
+
+import com.example.seckill.dedup.BitmapDedupStore;
+import com.example.seckill.dedup.PurchaseDedupStore;
+import com.example.seckill.dedup.SetDedupStore;
+import com.example.seckill.dedup.ShardedSetDedupStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已购买用户存储压测服务
+ *
+ * 对比三种判重存储在大规模用户下的表现：
+ * 1. set:     单个 SET（当前默认）
+ * 2. bitmap:  位图 (SETBIT/GETBIT)
+ * 3. sharded: N 个分片 SET
+ *
+ * 每种存储写入 users 个模拟用户后统计：
+ * - 写入耗时（Pipeline 批量写入）
+ * - Redis 内存占用 (MEMORY USAGE，所有 key 求和)
+ * - contains() 查询延迟 (avg / p99)
+ * - 清理耗时 (UNLINK)
+ *
+ * 压测使用独立的虚拟商品 (goodsId = -2)，不影响真实活动数据
+ */
+@Service
+public class DedupStoreBenchmarkService {
+
+    private static final long BENCH_GOODS_ID = -2L;
+    private static final int MAX_USERS = 10_000_000;
+    private static final int PIPELINE_CHUNK = 10_000;
+    private static final int LOOKUP_SAMPLES = 10_000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final int shards;
+
+    public DedupStoreBenchmarkService(StringRedisTemplate redisTemplate,
+            @Value("${seckill.dedup.shards:16}") int shards) {
+        this.redisTemplate = redisTemplate;
+        this.shards = shards;
+    }
+
+    /**
+     * 对比三种存储
+     *
+     * @param users 模拟用户数（如 1_000_000、10_000_000，上限 1000 万）
+     */
+    public Map<String, Object> runDedupBenchmark(int users) {
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        users = Math.max(1, Math.min(users, MAX_USERS)); // 限制最大用户数
+        result.put("users", users);
+
+        List<PurchaseDedupStore> stores = Arrays.asList(
+                new SetDedupStore(redisTemplate),
+                new BitmapDedupStore(redisTemplate),
+                new ShardedSetDedupStore(redisTemplate, shards));
+
+        for (PurchaseDedupStore store : stores) {
+            result.put(store.getName(), runStore(store, users));
+        }
+
+        return result;
+    }
+
+    /**
+     * 单个存储：写入 -> 统计内存 -> 查询延迟 -> 清理
+     */
+    private Map<String, Object> runStore(PurchaseDedupStore store, int users) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        store.clear(BENCH_GOODS_ID);
+
+        try {
+            // 1. Pipeline 批量写入
+            long start = System.nanoTime();
+            for (int from = 1; from <= users; from += PIPELINE_CHUNK) {
+                writeChunk(store, from, Math.min(users, from + PIPELINE_CHUNK - 1));
+            }
+            long writeNanos = System.nanoTime() - start;
+            stats.put("write_time_ms", TimeUnit.NANOSECONDS.toMillis(writeNanos));
+            stats.put("write_ops_per_sec", writeNanos > 0 ? (long) (users * 1_000_000_000.0 / writeNanos) : 0);
+
+            // 2. 内存占用
+            long memoryBytes = memoryUsage(store.keys(BENCH_GOODS_ID));
+            stats.put("key_count", store.keys(BENCH_GOODS_ID).size());
+            stats.put("memory_bytes", memoryBytes);
+            stats.put("memory_mb", String.format("%.2f", memoryBytes / 1024.0 / 1024.0));
+            stats.put("bytes_per_user", String.format("%.2f", (double) memoryBytes / users));
+
+            // 3. 查询延迟（一半命中，一半未命中）
+            long[] latencies = new long[LOOKUP_SAMPLES];
+            int hits = 0;
+            for (int i = 0; i < LOOKUP_SAMPLES; i++) {
+                long userId = (i % 2 == 0)
+                        ? ThreadLocalRandom.current().nextLong(1, users + 1L)
+                        : users + 1L + i;
+                long reqStart = System.nanoTime();
+                if (store.contains(BENCH_GOODS_ID, userId)) {
+                    hits++;
+                }
+                latencies[i] = System.nanoTime() - reqStart;
+            }
+            Arrays.sort(latencies);
+            stats.put("lookup_hits", hits);
+            stats.put("lookup_avg_us", String.format("%.1f", Arrays.stream(latencies).average().orElse(0) / 1000));
+            stats.put("lookup_p99_us", latencies[percentileIndex(LOOKUP_SAMPLES, 99)] / 1000);
+        } finally {
+            // 4. 清理
+            long start = System.nanoTime();
+            store.clear(BENCH_GOODS_ID);
+            stats.put("clear_time_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        return stats;
+    }
+
+    /**
+     * 写入 [from, to] 区间的用户
+     */
+    private void writeChunk(PurchaseDedupStore store, int from, int to) {
+        boolean bitmap = "bit".equals(store.mode());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (long userId = from; userId <= to; userId++) {
+                String key = store.key(BENCH_GOODS_ID, userId);
+                if (bitmap) {
+                    conn.setBit(key, userId, true);
+                } else {
+                    conn.sAdd(key, store.member(userId));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 统计一组 key 的内存占用 (MEMORY USAGE key SAMPLES 0 精确统计)
+     */
+    private long memoryUsage(List<String> keys) {
+        long total = 0;
+        for (String key : keys) {
+            Object bytes = redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute(
+                    "MEMORY",
+                    "USAGE".getBytes(StandardCharsets.UTF_8),
+                    key.getBytes(StandardCharsets.UTF_8),
+                    "SAMPLES".getBytes(StandardCharsets.UTF_8),
+                    "0".getBytes(StandardCharsets.UTF_8)));
+            if (bytes instanceof Number n) {
+                total += n.longValue();
+            }
+        }
+        return total;
+    }
+
+    private int percentileIndex(int size, int percentile) {
+        return Math.max(0, (int) Math.ceil(percentile / 100.0 * size) - 1);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.seckill.monitor;
+
+import com.example.seckill.domain.event.OrderEvents;
+import com.example.seckill.domain.event.SeckillEvents;
+import com.example.seckill.mq.BinaryMessageConverter;
+import com.example.seckill.mq.SeckillMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 消息编码压测服务
+ *
+ * 对比 JSON (Jackson2JsonMessageConverter) 与二进制 (BinaryMessageConverter)：
+ * - 序列化 / 反序列化耗时 (ns/op)
+ * - 线上字节数：消息体 + 转换器写入的消息头 (content-type、__TypeId__ 等)
+ *
+ * 样本：SeckillMessage、SeckillSucceededEvent、OrderCreatedEvent。
+ * 领域事件没有无参构造器，JSON 端反序列化为 JsonNode 计时（旧消费者的实际做法）。
+ */
+@Service
+public class MessageCodecBenchmarkService {
+
+    private final MessageConverter json = new Jackson2JsonMessageConverter();
+    private final MessageConverter binary = new BinaryMessageConverter(json);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 防止 JIT 消除无副作用的循环
+    private volatile long sink;
+
+    /**
+     * 对比两种编码
+     *
+     * @param iterations 每项测试的迭代次数
+     */
+    public Map<String, Object> runCodecBenchmark(int iterations) {
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        iterations = Math.max(1_000, Math.min(iterations, 5_000_000)); // 限制迭代次数
+        result.put("iterations", iterations);
+
+        SeckillMessage seckillMessage = new SeckillMessage(10086L, 1001L);
+        result.put("SeckillMessage", compare(seckillMessage, iterations, json::fromMessage));
+
+        SeckillEvents.SeckillSucceededEvent succeeded =
+                new SeckillEvents.SeckillSucceededEvent("seckill-1001", 10086L, 1001L, 880001L);
+        result.put("SeckillSucceededEvent", compare(succeeded, iterations, this::readTree));
+
+        OrderEvents.OrderCreatedEvent created =
+                new OrderEvents.OrderCreatedEvent("order-880001", 10086L, 2002L, 2, new BigDecimal("199.80"));
+        result.put("OrderCreatedEvent", compare(created, iterations, this::readTree));
+
+        return result;
+    }
+
+    private Map<String, Object> compare(Object sample, int iterations, Function<Message, Object> jsonDecoder) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        Map<String, Object> jsonStats = measure(json, sample, iterations, jsonDecoder);
+        Map<String, Object> binaryStats = measure(binary, sample, iterations, binary::fromMessage);
+        stats.put("json", jsonStats);
+        stats.put("binary", binaryStats);
+
+        long jsonBytes = (long) jsonStats.get("wire_bytes");
+        long binaryBytes = (long) binaryStats.get("wire_bytes");
+        stats.put("wire_size_ratio", String.format("%.1f%%", binaryBytes * 100.0 / jsonBytes));
+        return stats;
+    }
+
+    /**
+     * 单个转换器：先预热，再分别统计编码和解码
+     */
+    private Map<String, Object> measure(MessageConverter converter, Object sample, int iterations,
+            Function<Message, Object> decoder) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        Message encoded = converter.toMessage(sample, new MessageProperties());
+
+        // 预热
+        int warmup = Math.max(1_000, iterations / 10);
+        for (int i = 0; i < warmup; i++) {
+            sink += converter.toMessage(sample, new MessageProperties()).getBody().length;
+            sink += decoder.apply(encoded).hashCode();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += converter.toMessage(sample, new MessageProperties()).getBody().length;
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += decoder.apply(encoded).hashCode();
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        long bodyBytes = encoded.getBody().length;
+        long headerBytes = headerBytes(encoded.getMessageProperties());
+        stats.put("serialize_ns_per_op", encodeNanos / iterations);
+        stats.put("deserialize_ns_per_op", decodeNanos / iterations);
+        stats.put("body_bytes", bodyBytes);
+        stats.put("header_bytes", headerBytes);
+        stats.put("wire_bytes", bodyBytes + headerBytes);
+        return stats;
+    }
+
+    /**
+     * 估算转换器写入的消息头字节数（键 + 值的 UTF-8 长度）
+     */
+    private long headerBytes(MessageProperties properties) {
+        long bytes = 0;
+        if (properties.getContentType() != null) {
+            bytes += properties.getContentType().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (properties.getContentEncoding() != null) {
+            bytes += properties.getContentEncoding().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (Map.Entry<String, Object> header : properties.getHeaders().entrySet()) {
+            bytes += header.getKey().getBytes(StandardCharsets.UTF_8).length;
+            bytes += String.valueOf(header.getValue()).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    private Object readTree(Message message) {
+        try {
+            return objectMapper.readTree(message.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
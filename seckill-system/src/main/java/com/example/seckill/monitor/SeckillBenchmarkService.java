@@ -0,0 +1,165 @@
+package com.example.seckill.monitor;
+
+import com.example.seckill.dedup.PurchaseDedupStore;
+import com.example.seckill.service.SeckillBatcher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * 秒杀脚本压测服务
+ *
+ * 对比两种 Redis 调用方式：
+ * 1. 单次调用：每个请求一次 seckill.lua (当前默认路径)
+ * 2. 微批调用：SeckillBatcher 合并窗口内请求，每批一次 seckill_batch.lua
+ *
+ * 压测使用独立的虚拟商品 (goodsId = -1)，不影响真实活动数据
+ */
+@Service
+public class SeckillBenchmarkService {
+
+    private static final long BENCH_GOODS_ID = -1L;
+    private static final String BENCH_STOCK_KEY = "seckill:stock:" + BENCH_GOODS_ID;
+
+    private final StringRedisTemplate redisTemplate;
+    private final DefaultRedisScript<Long> seckillScript;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> seckillBatchScript;
+    private final PurchaseDedupStore dedupStore;
+
+    @SuppressWarnings("rawtypes")
+    public SeckillBenchmarkService(StringRedisTemplate redisTemplate,
+            @Qualifier("seckillScript") DefaultRedisScript<Long> seckillScript,
+            DefaultRedisScript<List> seckillBatchScript,
+            PurchaseDedupStore dedupStore) {
+        this.redisTemplate = redisTemplate;
+        this.seckillScript = seckillScript;
+        this.seckillBatchScript = seckillBatchScript;
+        this.dedupStore = dedupStore;
+    }
+
+    /**
+     * 对比单次调用与微批调用
+     *
+     * @param concurrent   并发线程数
+     * @param requests     每种方式的总请求数
+     * @param windowMicros 微批窗口（微秒）
+     * @param maxBatchSize 单批最大请求数
+     */
+    public Map<String, Object> runLuaBatchBenchmark(int concurrent, int requests,
+            long windowMicros, int maxBatchSize) {
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        concurrent = Math.min(concurrent, 200); // 限制最大并发
+        requests = Math.max(1, Math.min(requests, 200_000)); // 限制最大请求数
+
+        result.put("concurrent", concurrent);
+        result.put("requests", requests);
+        result.put("window_micros", windowMicros);
+        result.put("max_batch_size", maxBatchSize);
+
+        // 1. 单次调用
+        Map<String, Object> single = runScenario(concurrent, requests, userId -> redisTemplate.execute(
+                seckillScript,
+                Arrays.asList(BENCH_STOCK_KEY, dedupStore.key(BENCH_GOODS_ID, userId)),
+                dedupStore.member(userId),
+                dedupStore.mode()));
+        result.put("single_call", single);
+
+        // 2. 微批调用
+        // 压测商品不参与售罄广播
+        SeckillBatcher batcher = new SeckillBatcher(redisTemplate, seckillBatchScript, dedupStore,
+                goodsId -> {
+                }, windowMicros, maxBatchSize);
+        try {
+            Map<String, Object> batched = runScenario(concurrent, requests,
+                    userId -> batcher.submit(userId, BENCH_GOODS_ID, 5000));
+            result.put("batched", batched);
+
+            double singleQps = (double) single.get("qps");
+            double batchedQps = (double) batched.get("qps");
+            if (singleQps > 0) {
+                result.put("speedup", String.format("%.2fx", batchedQps / singleQps));
+            }
+        } finally {
+            batcher.shutdown();
+            redisTemplate.delete(BENCH_STOCK_KEY);
+            dedupStore.clear(BENCH_GOODS_ID);
+        }
+
+        return result;
+    }
+
+    /**
+     * 执行一轮压测：重置虚拟商品库存后并发执行 requests 次
+     */
+    private Map<String, Object> runScenario(int concurrent, int requests, LongFunction<Long> call) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        // 库存充足，保证每次调用都走完整的扣减路径
+        dedupStore.clear(BENCH_GOODS_ID);
+        redisTemplate.opsForValue().set(BENCH_STOCK_KEY, String.valueOf(requests * 2L));
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrent);
+        AtomicLong successCount = new AtomicLong(0);
+        AtomicLong failCount = new AtomicLong(0);
+        long[] latencies = new long[requests];
+        CountDownLatch latch = new CountDownLatch(requests);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final int index = i;
+            executor.submit(() -> {
+                long reqStart = System.nanoTime();
+                try {
+                    Long r = call.apply(index + 1L);
+                    if (r != null && r == 1) {
+                        successCount.incrementAndGet();
+                    } else {
+                        failCount.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failCount.incrementAndGet();
+                } finally {
+                    latencies[index] = System.nanoTime() - reqStart;
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            if (!latch.await(120, TimeUnit.SECONDS)) {
+                stats.put("warning", "部分请求超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stats.put("error", "压测被中断");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long totalNanos = System.nanoTime() - startTime;
+        double qps = totalNanos > 0 ? requests * 1_000_000_000.0 / totalNanos : 0;
+
+        Arrays.sort(latencies);
+        stats.put("total_time_ms", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+        stats.put("success_count", successCount.get());
+        stats.put("fail_count", failCount.get());
+        stats.put("qps", qps);
+        stats.put("avg_latency_us", String.format("%.1f", Arrays.stream(latencies).average().orElse(0) / 1000));
+        stats.put("p50_latency_us", latencies[percentileIndex(requests, 50)] / 1000);
+        stats.put("p99_latency_us", latencies[percentileIndex(requests, 99)] / 1000);
+
+        return stats;
+    }
+
+    private int percentileIndex(int size, int percentile) {
+        return Math.max(0, (int) Math.ceil(percentile / 100.0 * size) - 1);
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
 
 /**
  * 线程池监控服务
@@ -13,26 +14,47 @@ import java.util.concurrent.ThreadPoolExecutor;
  * 2. IO 密集型：线程数 = CPU 核心数 × 2 (或更多)
  * 3. 使用有界队列防止 OOM
  * 4. 合理设置拒绝策略
+ *
+ * 舱壁在运行期间按需创建，注册与查询可能并发，两个注册表都加锁访问。
  */
 @Service
 public class ThreadPoolMonitor {
 
     private final Map<String, ThreadPoolExecutor> threadPools = new LinkedHashMap<>();
 
+    private final Map<String, Supplier<Map<String, Object>>> bulkheads = new LinkedHashMap<>();
+
     /**
      * 注册线程池以便监控
      */
-    public void registerThreadPool(String name, ThreadPoolExecutor executor) {
+    public synchronized void registerThreadPool(String name, ThreadPoolExecutor executor) {
         threadPools.put(name, executor);
     }
 
+    public synchronized void unregisterThreadPool(String name) {
+        threadPools.remove(name);
+    }
+
+    /**
+     * 注册舱壁以便监控
+     *
+     * @param detail 舱壁当前状态（并发、排队、拒绝、等待超时等）
+     */
+    public synchronized void registerBulkhead(String name, Supplier<Map<String, Object>> detail) {
+        bulkheads.put(name, detail);
+    }
+
+    public synchronized void unregisterBulkhead(String name) {
+        bulkheads.remove(name);
+    }
+
     /**
      * 获取所有注册的线程池状态
      */
-    public Map<String, Object> getAllPoolStatus() {
+    public synchronized Map<String, Object> getAllPoolStatus() {
         Map<String, Object> status = new LinkedHashMap<>();
 
-        if (threadPools.isEmpty()) {
+        if (threadPools.isEmpty() && bulkheads.isEmpty()) {
             status.put("message", "尚未注册任何线程池");
             status.put("usage_guide", "使用 registerThreadPool() 注册线程池");
             return status;
@@ -42,6 +64,12 @@ public class ThreadPoolMonitor {
             status.put(entry.getKey(), getPoolDetail(entry.getValue()));
         }
 
+        if (!bulkheads.isEmpty()) {
+            Map<String, Object> bulkheadStatus = new LinkedHashMap<>();
+            bulkheads.forEach((name, detail) -> bulkheadStatus.put(name, detail.get()));
+            status.put("bulkheads", bulkheadStatus);
+        }
+
         return status;
     }
 
@@ -0,0 +1,121 @@
+package com.example.seckill.mq;
+
+import com.example.seckill.domain.event.DomainEvent;
+import com.example.seckill.domain.event.DomainEventCodec;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 秒杀二进制消息转换器
+ *
+ * JSON 编码的 SeckillMessage 只有三个 long，却要带上字段名和 __TypeId__ 类型头。
+ * 二进制格式 (content-type: application/x-seckill-bin)：
+ *
+ * - SeckillMessage: 定长 27 字节 magic(1) | 版本(1) | null 标记(1) | userId(8) | goodsId(8) | timestamp(8)
+ * - DomainEvent:    {@link DomainEventCodec} 带版本的紧凑编码
+ *
+ * 不支持的类型交给 fallback (JSON) 转换器，解码端通过 ContentTypeDelegatingMessageConverter
+ * 按 content-type 选择，灰度期间旧的 JSON 消息仍可正常消费。
+ */
+public class BinaryMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-seckill-bin";
+
+    private static final byte SECKILL_MAGIC = 0x53; // 'S'
+    private static final byte SECKILL_VERSION = 1;
+    private static final int SECKILL_SIZE = 27;
+    private static final int DOMAIN_EVENT_MAGIC = 0xDE;
+
+    private final MessageConverter fallback;
+
+    public BinaryMessageConverter(MessageConverter fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        byte[] body;
+        if (object instanceof SeckillMessage message) {
+            body = encodeSeckillMessage(message);
+        } else if (object instanceof DomainEvent event && DomainEventCodec.supports(event.getClass())) {
+            try {
+                body = DomainEventCodec.encode(event);
+            } catch (IOException e) {
+                throw new MessageConversionException("领域事件编码失败: " + event.getEventType(), e);
+            }
+        } else {
+            return fallback.toMessage(object, messageProperties);
+        }
+
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        String contentType = message.getMessageProperties().getContentType();
+        if (!CONTENT_TYPE.equals(contentType)) {
+            return fallback.fromMessage(message);
+        }
+
+        byte[] body = message.getBody();
+        if (body.length == 0) {
+            throw new MessageConversionException("空消息体");
+        }
+        if (body[0] == SECKILL_MAGIC) {
+            return decodeSeckillMessage(body);
+        }
+        if ((body[0] & 0xFF) == DOMAIN_EVENT_MAGIC) {
+            try {
+                return DomainEventCodec.decode(body);
+            } catch (IOException e) {
+                throw new MessageConversionException("领域事件解码失败", e);
+            }
+        }
+        throw new MessageConversionException("无法识别的二进制消息: magic=" + body[0]);
+    }
+
+    static byte[] encodeSeckillMessage(SeckillMessage message) {
+        Long userId = message.getUserId();
+        Long goodsId = message.getGoodsId();
+        Long timestamp = message.getTimestamp();
+
+        int nulls = (userId == null ? 1 : 0) | (goodsId == null ? 2 : 0) | (timestamp == null ? 4 : 0);
+        return ByteBuffer.allocate(SECKILL_SIZE)
+                .put(SECKILL_MAGIC)
+                .put(SECKILL_VERSION)
+                .put((byte) nulls)
+                .putLong(userId == null ? 0 : userId)
+                .putLong(goodsId == null ? 0 : goodsId)
+                .putLong(timestamp == null ? 0 : timestamp)
+                .array();
+    }
+
+    static SeckillMessage decodeSeckillMessage(byte[] body) {
+        if (body.length < SECKILL_SIZE) {
+            throw new MessageConversionException("秒杀消息长度不足: " + body.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        buffer.get(); // magic
+        byte version = buffer.get();
+        if (version > SECKILL_VERSION) {
+            throw new MessageConversionException("不支持的秒杀消息版本: " + version);
+        }
+        int nulls = buffer.get();
+        long userId = buffer.getLong();
+        long goodsId = buffer.getLong();
+        long timestamp = buffer.getLong();
+
+        SeckillMessage message = new SeckillMessage();
+        message.setUserId((nulls & 1) != 0 ? null : userId);
+        message.setGoodsId((nulls & 2) != 0 ? null : goodsId);
+        message.setTimestamp((nulls & 4) != 0 ? null : timestamp);
+        return message;
+    }
+}
@@ -1,25 +1,46 @@
 package com.example.seckill.mq;
 
 import com.example.seckill.config.RabbitMQConfig;
+import com.example.seckill.dedup.PurchaseDedupStore;
 import com.example.seckill.entity.SeckillGoods;
 import com.example.seckill.entity.SeckillOrder;
 import com.example.seckill.mapper.SeckillGoodsMapper;
 import com.example.seckill.mapper.SeckillOrderMapper;
+import com.example.seckill.service.SeckillResultNotifier;
+import com.example.seckill.service.SoldOutBroadcaster;
 import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 秒杀消息消费者
  * 异步处理订单创建
+ *
+ * 两种消费模式（seckill.consumer.batch.enabled 切换，同时只启动一个）：
+ * - 单条模式：prefetch=1，每条消息一个事务
+ * - 批量模式：一次取 N 条，按商品分组，每组一次 IN 查询判重 + 一条 UPDATE 扣库存 + 一条多行 INSERT，
+ *   整批成功时一次 ack (multiple=true)，批量失败时退化为逐条处理
  */
 @Component
 public class SeckillMessageConsumer {
@@ -29,16 +50,32 @@ public class SeckillMessageConsumer {
     private final SeckillGoodsMapper goodsMapper;
     private final SeckillOrderMapper orderMapper;
     private final StringRedisTemplate redisTemplate;
+    private final SoldOutBroadcaster soldOutBroadcaster;
+    private final PurchaseDedupStore dedupStore;
+    private final SeckillResultNotifier resultNotifier;
+    private final MessageConverter messageConverter;
+    private final TransactionTemplate transactionTemplate;
 
     public SeckillMessageConsumer(SeckillGoodsMapper goodsMapper,
             SeckillOrderMapper orderMapper,
-            StringRedisTemplate redisTemplate) {
+            StringRedisTemplate redisTemplate,
+            SoldOutBroadcaster soldOutBroadcaster,
+            PurchaseDedupStore dedupStore,
+            SeckillResultNotifier resultNotifier,
+            MessageConverter messageConverter,
+            TransactionTemplate transactionTemplate) {
         this.goodsMapper = goodsMapper;
         this.orderMapper = orderMapper;
         this.redisTemplate = redisTemplate;
+        this.soldOutBroadcaster = soldOutBroadcaster;
+        this.dedupStore = dedupStore;
+        this.resultNotifier = resultNotifier;
+        this.messageConverter = messageConverter;
+        this.transactionTemplate = transactionTemplate;
     }
 
-    @RabbitListener(queues = RabbitMQConfig.SECKILL_QUEUE)
+    @RabbitListener(queues = RabbitMQConfig.SECKILL_QUEUE,
+            autoStartup = "#{!${seckill.consumer.batch.enabled:false}}")
     @Transactional
     public void handleSeckillMessage(SeckillMessage message,
             Channel channel,
@@ -49,44 +86,23 @@ public class SeckillMessageConsumer {
         log.info("收到秒杀消息: userId={}, goodsId={}", userId, goodsId);
 
         try {
-            // 1. 检查是否已有订单（防止重复消费）
-            SeckillOrder existing = orderMapper.selectByUserAndGoods(userId, goodsId);
-            if (existing != null) {
-                log.warn("订单已存在，跳过: userId={}, goodsId={}", userId, goodsId);
-                channel.basicAck(deliveryTag, false);
-                return;
-            }
+            OrderOutcome outcome = createOrder(userId, goodsId);
 
-            // 2. 查询商品信息
-            SeckillGoods goods = goodsMapper.selectById(goodsId);
-            if (goods == null) {
-                log.error("商品不存在: goodsId={}", goodsId);
-                handleOrderFail(userId, goodsId, channel, deliveryTag);
+            if (outcome == OrderOutcome.DUPLICATE) {
+                channel.basicAck(deliveryTag, false);
                 return;
             }
-
-            // 3. 扣减数据库库存（乐观锁）
-            int rows = goodsMapper.deductStock(goodsId);
-            if (rows == 0) {
-                log.warn("数据库库存不足: goodsId={}", goodsId);
+            if (outcome == OrderOutcome.FAILED) {
                 handleOrderFail(userId, goodsId, channel, deliveryTag);
                 return;
             }
 
-            // 4. 创建秒杀订单
-            SeckillOrder order = new SeckillOrder();
-            order.setUserId(userId);
-            order.setGoodsId(goodsId);
-            order.setGoodsName(goods.getGoodsName());
-            order.setSeckillPrice(goods.getSeckillPrice());
-            order.setStatus(SeckillOrder.STATUS_SUCCESS);
-            orderMapper.insert(order);
-
-            // 5. 设置秒杀结果到 Redis（供前端轮询）
+            // 设置秒杀结果到 Redis（供前端轮询）
             String resultKey = "seckill:result:" + userId + ":" + goodsId;
             redisTemplate.opsForValue().set(resultKey, "SUCCESS");
+            notifyResult(userId, goodsId);
 
-            log.info("秒杀订单创建成功: userId={}, goodsId={}, orderId={}", userId, goodsId, order.getId());
+            log.info("秒杀订单创建成功: userId={}, goodsId={}", userId, goodsId);
 
             // 确认消息
             channel.basicAck(deliveryTag, false);
@@ -98,23 +114,308 @@ public class SeckillMessageConsumer {
         }
     }
 
+    /**
+     * 批量消费
+     */
+    @RabbitListener(queues = RabbitMQConfig.SECKILL_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "${seckill.consumer.batch.enabled:false}")
+    public void handleSeckillBatch(List<Message> messages, Channel channel) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        long maxTag = 0;
+        List<Long> ackTags = new ArrayList<>(messages.size());
+        List<Long> nackTags = new ArrayList<>();
+        List<Long> rejectTags = new ArrayList<>();
+        // resultKey -> SUCCESS / FAIL，整批一次 Pipeline 写入
+        Map<String, String> results = new LinkedHashMap<>();
+
+        // 1. 解析消息并按商品分组
+        Map<Long, List<PendingOrder>> byGoods = new LinkedHashMap<>();
+        for (Message message : messages) {
+            long tag = message.getMessageProperties().getDeliveryTag();
+            maxTag = Math.max(maxTag, tag);
+            try {
+                SeckillMessage body = (SeckillMessage) messageConverter.fromMessage(message);
+                byGoods.computeIfAbsent(body.getGoodsId(), k -> new ArrayList<>())
+                        .add(new PendingOrder(body.getUserId(), body.getGoodsId(), tag));
+            } catch (Exception e) {
+                // 无法解析的消息重试也没有意义，直接进入死信队列
+                log.error("秒杀消息解析失败: deliveryTag={}", tag, e);
+                rejectTags.add(tag);
+            }
+        }
+
+        // 2. 每个商品一个事务
+        for (Map.Entry<Long, List<PendingOrder>> entry : byGoods.entrySet()) {
+            Long goodsId = entry.getKey();
+            List<PendingOrder> group = entry.getValue();
+
+            BatchOutcome outcome;
+            try {
+                outcome = transactionTemplate.execute(status -> createOrders(goodsId, group));
+            } catch (Exception e) {
+                log.warn("批量创建订单失败，逐条重试: goodsId={}, size={}", goodsId, group.size(), e);
+                outcome = null;
+            }
+
+            if (outcome == null || outcome.fallback) {
+                // 库存不足以覆盖整组或批量写入失败，逐条处理
+                for (PendingOrder pending : group) {
+                    processOne(pending, ackTags, nackTags, results);
+                }
+                continue;
+            }
+
+            for (PendingOrder pending : outcome.created) {
+                results.put(pending.resultKey(), "SUCCESS");
+                ackTags.add(pending.deliveryTag);
+            }
+            for (PendingOrder pending : outcome.duplicates) {
+                ackTags.add(pending.deliveryTag);
+            }
+            for (PendingOrder pending : outcome.failed) {
+                restoreOnFail(pending.userId, pending.goodsId);
+                results.put(pending.resultKey(), "FAIL");
+                ackTags.add(pending.deliveryTag);
+            }
+        }
+
+        // 3. 一次 Pipeline 写入所有结果并通知长轮询（订单已提交，写入失败不影响确认）
+        writeResults(results);
+
+        // 4. 确认消息
+        if (nackTags.isEmpty() && rejectTags.isEmpty()) {
+            channel.basicAck(maxTag, true);
+        } else {
+            for (Long tag : ackTags) {
+                channel.basicAck(tag, false);
+            }
+            for (Long tag : nackTags) {
+                channel.basicNack(tag, false, true);
+            }
+            for (Long tag : rejectTags) {
+                channel.basicNack(tag, false, false);
+            }
+        }
+
+        log.info("批量处理秒杀消息: total={}, ack={}, requeue={}, reject={}",
+                messages.size(), ackTags.size(), nackTags.size(), rejectTags.size());
+    }
+
+    /**
+     * 创建单个订单（调用方负责事务）
+     */
+    private OrderOutcome createOrder(Long userId, Long goodsId) {
+        // 1. 检查是否已有订单（防止重复消费）
+        SeckillOrder existing = orderMapper.selectByUserAndGoods(userId, goodsId);
+        if (existing != null) {
+            log.warn("订单已存在，跳过: userId={}, goodsId={}", userId, goodsId);
+            return OrderOutcome.DUPLICATE;
+        }
+
+        // 2. 查询商品信息
+        SeckillGoods goods = goodsMapper.selectById(goodsId);
+        if (goods == null) {
+            log.error("商品不存在: goodsId={}", goodsId);
+            return OrderOutcome.FAILED;
+        }
+
+        // 3. 扣减数据库库存（乐观锁）
+        int rows = goodsMapper.deductStock(goodsId);
+        if (rows == 0) {
+            log.warn("数据库库存不足: goodsId={}", goodsId);
+            return OrderOutcome.FAILED;
+        }
+
+        // 4. 创建秒杀订单
+        orderMapper.insert(newOrder(userId, goods));
+        return OrderOutcome.CREATED;
+    }
+
+    /**
+     * 批量创建同一商品的订单（在事务中执行）
+     */
+    private BatchOutcome createOrders(Long goodsId, List<PendingOrder> group) {
+        BatchOutcome outcome = new BatchOutcome();
+
+        // 1. 一次 IN 查询判重，同批内的重复消息也视为重复
+        Set<Long> userIds = new HashSet<>();
+        for (PendingOrder pending : group) {
+            userIds.add(pending.userId);
+        }
+        Set<Long> existingUsers = new HashSet<>();
+        for (SeckillOrder order : orderMapper.selectByGoodsAndUsers(goodsId, userIds)) {
+            existingUsers.add(order.getUserId());
+        }
+
+        List<PendingOrder> fresh = new ArrayList<>(group.size());
+        for (PendingOrder pending : group) {
+            if (existingUsers.add(pending.userId)) {
+                fresh.add(pending);
+            } else {
+                outcome.duplicates.add(pending);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return outcome;
+        }
+
+        // 2. 查询商品信息
+        SeckillGoods goods = goodsMapper.selectById(goodsId);
+        if (goods == null) {
+            log.error("商品不存在: goodsId={}", goodsId);
+            outcome.failed.addAll(fresh);
+            return outcome;
+        }
+
+        // 3. 一条 UPDATE 扣减整批库存，不够整批扣减时交给逐条处理
+        int rows = goodsMapper.deductStockBatch(goodsId, fresh.size());
+        if (rows == 0) {
+            log.warn("数据库库存不足以整批扣减: goodsId={}, count={}", goodsId, fresh.size());
+            outcome.fallback = true;
+            return outcome;
+        }
+
+        // 4. 多行 INSERT
+        List<SeckillOrder> orders = new ArrayList<>(fresh.size());
+        for (PendingOrder pending : fresh) {
+            orders.add(newOrder(pending.userId, goods));
+        }
+        orderMapper.insertBatch(orders);
+
+        outcome.created.addAll(fresh);
+        return outcome;
+    }
+
+    /**
+     * 批量失败后的逐条处理
+     */
+    private void processOne(PendingOrder pending, List<Long> ackTags, List<Long> nackTags,
+            Map<String, String> results) {
+        try {
+            OrderOutcome outcome = transactionTemplate.execute(
+                    status -> createOrder(pending.userId, pending.goodsId));
+
+            if (outcome == OrderOutcome.CREATED) {
+                results.put(pending.resultKey(), "SUCCESS");
+            } else if (outcome == OrderOutcome.FAILED) {
+                restoreOnFail(pending.userId, pending.goodsId);
+                results.put(pending.resultKey(), "FAIL");
+            }
+            ackTags.add(pending.deliveryTag);
+        } catch (Exception e) {
+            log.error("处理秒杀消息异常: userId={}, goodsId={}", pending.userId, pending.goodsId, e);
+            nackTags.add(pending.deliveryTag);
+        }
+    }
+
+    private SeckillOrder newOrder(Long userId, SeckillGoods goods) {
+        SeckillOrder order = new SeckillOrder();
+        order.setUserId(userId);
+        order.setGoodsId(goods.getId());
+        order.setGoodsName(goods.getGoodsName());
+        order.setSeckillPrice(goods.getSeckillPrice());
+        order.setStatus(SeckillOrder.STATUS_SUCCESS);
+        return order;
+    }
+
+    private void writeResults(Map<String, String> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                results.forEach((key, value) -> {
+                    conn.set(key, value);
+                    conn.publish(SeckillResultNotifier.CHANNEL, key);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("批量写入秒杀结果失败: count={}", results.size(), e);
+        }
+    }
+
     /**
      * 处理订单失败
      */
     private void handleOrderFail(Long userId, Long goodsId, Channel channel, long deliveryTag) throws IOException {
-        // 恢复 Redis 库存
-        String stockKey = "seckill:stock:" + goodsId;
-        redisTemplate.opsForValue().increment(stockKey);
-
-        // 从已购买集合移除
-        String boughtKey = "seckill:bought:" + goodsId;
-        redisTemplate.opsForSet().remove(boughtKey, userId.toString());
+        restoreOnFail(userId, goodsId);
 
         // 设置失败结果
         String resultKey = "seckill:result:" + userId + ":" + goodsId;
         redisTemplate.opsForValue().set(resultKey, "FAIL");
+        notifyResult(userId, goodsId);
 
         // 确认消息（不重试）
         channel.basicAck(deliveryTag, false);
     }
+
+    /**
+     * 通知长轮询等待方，在事务中时等提交后再通知，保证对方能查到订单
+     */
+    private void notifyResult(Long userId, Long goodsId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            resultNotifier.publish(userId, goodsId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                resultNotifier.publish(userId, goodsId);
+            }
+        });
+    }
+
+    /**
+     * 订单失败时恢复 Redis 库存和购买记录
+     */
+    private void restoreOnFail(Long userId, Long goodsId) {
+        // 恢复 Redis 库存
+        String stockKey = "seckill:stock:" + goodsId;
+        redisTemplate.opsForValue().increment(stockKey);
+
+        // 从已购买记录移除
+        dedupStore.remove(goodsId, userId);
+
+        // 库存已回补，通知所有节点清除售罄标记
+        soldOutBroadcaster.markRestocked(goodsId);
+    }
+
+    private enum OrderOutcome {
+        CREATED, DUPLICATE, FAILED
+    }
+
+    /**
+     * 单个商品一组消息的批量处理结果
+     */
+    private static final class BatchOutcome {
+        private final List<PendingOrder> created = new ArrayList<>();
+        private final List<PendingOrder> duplicates = new ArrayList<>();
+        private final List<PendingOrder> failed = new ArrayList<>();
+        private boolean fallback = false;
+    }
+
+    /**
+     * 待创建的订单
+     */
+    private static final class PendingOrder {
+        private final Long userId;
+        private final Long goodsId;
+        private final long deliveryTag;
+
+        private PendingOrder(Long userId, Long goodsId, long deliveryTag) {
+            this.userId = userId;
+            this.goodsId = goodsId;
+            this.deliveryTag = deliveryTag;
+        }
+
+        private String resultKey() {
+            return "seckill:result:" + userId + ":" + goodsId;
+        }
+    }
 }
@@ -1,13 +1,29 @@
 package com.example.seckill.mq;
 
 import com.example.seckill.config.RabbitMQConfig;
+import com.example.seckill.mq.SeckillMessageSpool.SpoolRecord;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 秒杀消息生产者
+ *
+ * 开启本地暂存 (seckill.spool.enabled) 时，消息先写入 {@link SeckillMessageSpool} 后立即返回，
+ * 由投递线程按窗口发送并等待 publisher confirm，确认后推进检查点；
+ * 未确认（nack / 退回 / 超时）的消息从检查点处重发。
+ * 重发可能造成重复投递，消息 ID 固定为 userId:goodsId，消费端按已有订单判重。
  */
 @Component
 public class SeckillMessageProducer {
@@ -15,21 +31,202 @@ public class SeckillMessageProducer {
     private static final Logger log = LoggerFactory.getLogger(SeckillMessageProducer.class);
 
     private final RabbitTemplate rabbitTemplate;
+    private final SeckillPartitionManager partitionManager;
+
+    // 本地暂存（未开启时为 null，直接发送）
+    private final SeckillMessageSpool spool;
+    private final Thread drainer;
+    private final int drainWindow;
+    private final long confirmTimeoutMs;
+    private final long retryBackoffMs;
+    private volatile boolean running = true;
 
-    public SeckillMessageProducer(RabbitTemplate rabbitTemplate) {
+    public SeckillMessageProducer(RabbitTemplate rabbitTemplate,
+            SeckillPartitionManager partitionManager,
+            @Value("${seckill.spool.enabled:false}") boolean spoolEnabled,
+            @Value("${seckill.spool.path:./data/seckill-spool.dat}") String spoolPath,
+            @Value("${seckill.spool.capacity:1000000}") int spoolCapacity,
+            @Value("${seckill.spool.flush-interval-ms:10}") long flushIntervalMs,
+            @Value("${seckill.spool.drain-window:200}") int drainWindow,
+            @Value("${seckill.spool.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+            @Value("${seckill.spool.retry-backoff-ms:1000}") long retryBackoffMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.partitionManager = partitionManager;
+        this.drainWindow = Math.max(1, drainWindow);
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.retryBackoffMs = retryBackoffMs;
+
+        if (spoolEnabled) {
+            try {
+                this.spool = new SeckillMessageSpool(Path.of(spoolPath), spoolCapacity, flushIntervalMs);
+            } catch (IOException e) {
+                throw new IllegalStateException("秒杀消息暂存文件打开失败: " + spoolPath, e);
+            }
+            this.drainer = new Thread(this::drainLoop, "seckill-spool-drainer");
+            this.drainer.setDaemon(true);
+            this.drainer.start();
+        } else {
+            this.spool = null;
+            this.drainer = null;
+        }
     }
 
     /**
      * 发送秒杀订单消息
+     * 开启分区模式时按 goodsId 路由到分区队列；开启暂存时写入本地文件后立即返回
      */
     public void sendSeckillMessage(Long userId, Long goodsId) {
+        if (spool != null) {
+            long seq = spool.append(userId, goodsId, System.currentTimeMillis());
+            log.debug("秒杀消息已暂存: seq={}, userId={}, goodsId={}", seq, userId, goodsId);
+            return;
+        }
+
         SeckillMessage message = new SeckillMessage(userId, goodsId);
         log.info("发送秒杀消息: {}", message);
 
-        rabbitTemplate.convertAndSend(
-                RabbitMQConfig.SECKILL_EXCHANGE,
-                RabbitMQConfig.SECKILL_ROUTING_KEY,
-                message);
+        SeckillPartitionManager.Route route = partitionManager.route(goodsId);
+        try {
+            rabbitTemplate.convertAndSend(
+                    RabbitMQConfig.SECKILL_EXCHANGE,
+                    route.routingKey(),
+                    message,
+                    m -> withRoute(m, route));
+        } catch (RuntimeException e) {
+            partitionManager.abandon(route);
+            throw e;
+        }
+    }
+
+    /**
+     * 分区迁移中发往旧分区的消息带上纪元和 goodsId，消费后用于计数
+     */
+    private static Message withRoute(Message message, SeckillPartitionManager.Route route) {
+        if (route.tracked()) {
+            message.getMessageProperties().setHeader(SeckillPartitionManager.EPOCH_HEADER, route.epoch());
+            message.getMessageProperties().setHeader(SeckillPartitionManager.GOODS_HEADER, route.goodsId());
+        }
+        return message;
+    }
+
+    /**
+     * 暂存中未确认的消息数
+     */
+    public long getSpoolPending() {
+        return spool == null ? 0 : spool.getPending();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (spool == null) {
+            return;
+        }
+        running = false;
+        drainer.interrupt();
+        try {
+            drainer.join(confirmTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spool.close();
+    }
+
+    /**
+     * 投递线程：从检查点开始按窗口发送，全部确认后推进检查点
+     */
+    private void drainLoop() {
+        while (running) {
+            try {
+                List<SpoolRecord> records = spool.read(spool.getConfirmedSeq() + 1, drainWindow, 100);
+                if (records.isEmpty()) {
+                    continue;
+                }
+
+                long confirmed = publishWindow(records);
+                if (confirmed > 0) {
+                    spool.confirm(confirmed);
+                }
+                if (confirmed < records.get(records.size() - 1).seq()) {
+                    log.warn("秒杀消息投递未全部确认，{}ms 后重试: confirmed={}, pending={}",
+                            retryBackoffMs, spool.getConfirmedSeq(), spool.getPending());
+                    TimeUnit.MILLISECONDS.sleep(retryBackoffMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("秒杀消息投递异常", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(retryBackoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 发送一个窗口并按顺序等待确认
+     *
+     * @return 连续确认的最大序号，0 表示第一条即未确认
+     */
+    private long publishWindow(List<SpoolRecord> records) throws InterruptedException {
+        List<CorrelationData> pending = new ArrayList<>(records.size());
+        List<SeckillPartitionManager.Route> routes = new ArrayList<>(records.size());
+        for (SpoolRecord record : records) {
+            SeckillMessage message = new SeckillMessage(record.userId(), record.goodsId());
+            message.setTimestamp(record.timestamp());
+
+            CorrelationData correlation = new CorrelationData(String.valueOf(record.seq()));
+            SeckillPartitionManager.Route route;
+            try {
+                route = partitionManager.route(record.goodsId());
+            } catch (Exception e) {
+                log.warn("秒杀消息路由失败: seq={}", record.seq(), e);
+                break;
+            }
+            try {
+                rabbitTemplate.convertAndSend(
+                        RabbitMQConfig.SECKILL_EXCHANGE,
+                        route.routingKey(),
+                        message,
+                        m -> {
+                            m.getMessageProperties().setMessageId(record.userId() + ":" + record.goodsId());
+                            return withRoute(m, route);
+                        },
+                        correlation);
+            } catch (Exception e) {
+                partitionManager.abandon(route);
+                log.warn("秒杀消息发送失败: seq={}", record.seq(), e);
+                break;
+            }
+            pending.add(correlation);
+            routes.add(route);
+        }
+
+        long confirmed = 0;
+        for (int i = 0; i < pending.size(); i++) {
+            CorrelationData correlation = pending.get(i);
+            try {
+                CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+                // 路由失败的消息会被退回 (mandatory)，同样视为未确认
+                if (correlation.getReturned() != null) {
+                    // 退回的消息没有进入队列，撤销分区迁移计数
+                    partitionManager.abandon(routes.get(i));
+                }
+                if (!confirm.isAck() || correlation.getReturned() != null) {
+                    log.warn("秒杀消息未被确认: seq={}, reason={}", correlation.getId(), confirm.getReason());
+                    break;
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("等待秒杀消息确认超时: seq={}", correlation.getId());
+                break;
+            }
+            confirmed = records.get(i).seq();
+        }
+        return confirmed;
     }
 }
@@ -0,0 +1,284 @@
+package com.example.seckill.mq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 秒杀消息本地暂存 (Write-Ahead Spool)
+ *
+ * Broker 抖动时 convertAndSend 失败会回滚 Redis，用户白白丢掉已抢到的名额。
+ * 暂存模式下消息先追加到本地内存映射文件，立即返回用户，再由后台线程投递到 RabbitMQ：
+ *
+ * 文件布局：
+ * - 头部 64 字节：magic | version | capacity | recordSize | confirmedSeq
+ * - 环形记录区：capacity 条定长记录，第 seq 条写在 seq % capacity 槽位
+ *   记录格式：seq | userId | goodsId | timestamp | crc32
+ *
+ * 1. append 写入映射内存（页缓存），flusher 线程按 flushInterval 批量 force() 落盘
+ * 2. 投递线程收到 Broker 确认后推进 confirmedSeq（检查点），被确认的槽位可复用
+ * 3. 重启时跳过 confirmedSeq 之前的记录，重放校验通过的未确认记录
+ *
+ * 未确认记录超过 capacity 时拒绝写入，由调用方按原逻辑回滚。
+ */
+public class SeckillMessageSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(SeckillMessageSpool.class);
+
+    private static final int MAGIC = 0x534B5350; // "SKSP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_RECORD_SIZE = 12;
+    private static final int OFFSET_CONFIRMED = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Thread flusher;
+
+    // 下一条记录的序号（序号从 1 开始）
+    private long nextSeq;
+    // 已被 Broker 确认的最大连续序号
+    private volatile long confirmedSeq;
+    private volatile boolean dirty = false;
+    private volatile boolean closed = false;
+
+    /**
+     * 打开（或创建）暂存文件并恢复未确认记录
+     *
+     * @param path            文件路径
+     * @param capacity        最多暂存的未确认记录数（已存在的文件以文件头为准）
+     * @param flushIntervalMs 批量落盘间隔（毫秒）
+     */
+    public SeckillMessageSpool(Path path, int capacity, long flushIntervalMs) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int fileCapacity = capacity;
+        if (exists) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("无法识别的暂存文件: " + path);
+            }
+            fileCapacity = header.getInt(OFFSET_CAPACITY);
+            if (fileCapacity != capacity) {
+                log.warn("暂存文件容量与配置不一致，沿用文件容量: file={}, config={}", fileCapacity, capacity);
+            }
+        }
+        this.capacity = fileCapacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity * RECORD_SIZE);
+
+        if (exists) {
+            recover();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(OFFSET_CAPACITY, this.capacity);
+            buffer.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+            buffer.putLong(OFFSET_CONFIRMED, 0L);
+            buffer.force();
+            this.confirmedSeq = 0;
+            this.nextSeq = 1;
+        }
+
+        this.flusher = new Thread(() -> flushLoop(flushIntervalMs), "seckill-spool-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+        log.info("秒杀消息暂存文件已打开: path={}, capacity={}, pending={}", path, this.capacity, getPending());
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @return 记录序号
+     * @throws IllegalStateException 暂存已满或已关闭
+     */
+    public synchronized long append(Long userId, Long goodsId, long timestamp) {
+        if (closed) {
+            throw new IllegalStateException("秒杀消息暂存已关闭");
+        }
+        if (nextSeq - confirmedSeq > capacity) {
+            throw new IllegalStateException("秒杀消息暂存已满: pending=" + getPending());
+        }
+
+        long seq = nextSeq++;
+        int pos = position(seq);
+        buffer.putLong(pos, seq);
+        buffer.putLong(pos + 8, userId);
+        buffer.putLong(pos + 16, goodsId);
+        buffer.putLong(pos + 24, timestamp);
+        buffer.putInt(pos + 32, checksum(seq, userId, goodsId, timestamp));
+        dirty = true;
+
+        // 唤醒等待中的投递线程
+        notifyAll();
+        return seq;
+    }
+
+    /**
+     * 读取 fromSeq 开始最多 max 条记录，没有记录时最多等待 waitMs
+     */
+    public synchronized List<SpoolRecord> read(long fromSeq, int max, long waitMs) throws InterruptedException {
+        if (fromSeq >= nextSeq && waitMs > 0 && !closed) {
+            wait(waitMs);
+        }
+
+        List<SpoolRecord> records = new ArrayList<>();
+        for (long seq = Math.max(fromSeq, confirmedSeq + 1); seq < nextSeq && records.size() < max; seq++) {
+            int pos = position(seq);
+            records.add(new SpoolRecord(seq, buffer.getLong(pos + 8), buffer.getLong(pos + 16), buffer.getLong(pos + 24)));
+        }
+        return records;
+    }
+
+    /**
+     * 推进检查点：seq 及之前的记录已被 Broker 确认
+     */
+    public synchronized void confirm(long seq) {
+        if (seq <= confirmedSeq) {
+            return;
+        }
+        confirmedSeq = Math.min(seq, nextSeq - 1);
+        buffer.putLong(OFFSET_CONFIRMED, confirmedSeq);
+        dirty = true;
+    }
+
+    public long getConfirmedSeq() {
+        return confirmedSeq;
+    }
+
+    /**
+     * 未确认的记录数
+     */
+    public synchronized long getPending() {
+        return nextSeq - 1 - confirmedSeq;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 落盘并关闭
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        flusher.interrupt();
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("关闭秒杀消息暂存文件失败", e);
+        }
+        log.info("秒杀消息暂存文件已关闭，未确认记录 {} 条", getPending());
+    }
+
+    /**
+     * 重启恢复：以检查点为起点，找出所有校验通过的未确认记录
+     */
+    private void recover() {
+        long confirmed = buffer.getLong(OFFSET_CONFIRMED);
+        long maxSeq = confirmed;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            int pos = HEADER_SIZE + slot * RECORD_SIZE;
+            long seq = buffer.getLong(pos);
+            if (seq <= confirmed || Math.floorMod(seq, capacity) != slot) {
+                continue;
+            }
+            long userId = buffer.getLong(pos + 8);
+            long goodsId = buffer.getLong(pos + 16);
+            long timestamp = buffer.getLong(pos + 24);
+            if (buffer.getInt(pos + 32) == checksum(seq, userId, goodsId, timestamp)) {
+                maxSeq = Math.max(maxSeq, seq);
+            }
+        }
+
+        // 截断到第一条缺失或损坏的记录（落盘前宕机造成的空洞）
+        long lastValid = confirmed;
+        for (long seq = confirmed + 1; seq <= maxSeq; seq++) {
+            int pos = position(seq);
+            long userId = buffer.getLong(pos + 8);
+            long goodsId = buffer.getLong(pos + 16);
+            long timestamp = buffer.getLong(pos + 24);
+            if (buffer.getLong(pos) != seq || buffer.getInt(pos + 32) != checksum(seq, userId, goodsId, timestamp)) {
+                log.warn("暂存记录损坏，丢弃 seq >= {}", seq);
+                break;
+            }
+            lastValid = seq;
+        }
+
+        this.confirmedSeq = confirmed;
+        this.nextSeq = lastValid + 1;
+        if (lastValid > confirmed) {
+            log.info("恢复未确认的秒杀消息 {} 条: seq {} ~ {}", lastValid - confirmed, confirmed + 1, lastValid);
+        }
+    }
+
+    private void flushLoop(long flushIntervalMs) {
+        while (!closed) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(flushIntervalMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (dirty) {
+                dirty = false;
+                try {
+                    buffer.force();
+                } catch (Exception e) {
+                    dirty = true;
+                    log.error("秒杀消息暂存落盘失败", e);
+                }
+            }
+        }
+    }
+
+    private int position(long seq) {
+        return HEADER_SIZE + (int) Math.floorMod(seq, (long) capacity) * RECORD_SIZE;
+    }
+
+    private static int checksum(long seq, long userId, long goodsId, long timestamp) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (seq >>> (56 - i * 8));
+            bytes[8 + i] = (byte) (userId >>> (56 - i * 8));
+            bytes[16 + i] = (byte) (goodsId >>> (56 - i * 8));
+            bytes[24 + i] = (byte) (timestamp >>> (56 - i * 8));
+        }
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 暂存的一条秒杀消息
+     */
+    public record SpoolRecord(long seq, long userId, long goodsId, long timestamp) {
+    }
+}
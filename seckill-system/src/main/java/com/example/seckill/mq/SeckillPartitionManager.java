@@ -0,0 +1,798 @@
+package com.example.seckill.mq;
+
+import com.example.seckill.config.RabbitMQConfig;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀订单分区队列管理
+ *
+ * 单个 seckill.order.queue 无法横向扩展：多个消费者会同时更新同一行 seckill_goods 造成锁竞争。
+ * 分区模式下生产者按 goodsId 一致性哈希 (Jump Consistent Hash) 路由到 N 个分区队列：
+ *
+ * - 队列 seckill.order.queue.{i}，路由键 seckill.order.{i}
+ * - 每个分区一个独立的监听容器 (concurrency=1)，队列开启 x-single-active-consumer，
+ *   集群内同一分区同时只有一个消费者，同一商品的订单串行处理，不同分区并行
+ *
+ * 分区数以 Redis 中的分区纪元 (seckill:partition:epoch) 为准，{@link #resize} 开始新纪元并通过 Pub/Sub 通知所有节点，
+ * 在线调整时保持同一商品的顺序：
+ *
+ * 1. 新纪元开始时各节点先启动新分区的消费者；分区没有变化的商品直接按新分区数路由
+ * 2. 换了分区的商品继续发往旧分区，消息带上纪元和 goodsId，Redis 中按商品记录旧分区里未处理完的条数，
+ *    消费者处理完（ack 或进入死信，重新入队的不算）后减一
+ * 3. 纪元开始 drainGraceMs 后（所有节点都已切到新纪元）向每个旧分区发送栅栏消息，
+ *    旧分区消费者处理到栅栏时，纪元开始前发入的消息都已处理完
+ * 4. 商品的旧分区已过栅栏、且计数归零时，下一次发送在 Redis 中原子地切换到新分区（partition_route.lua），
+ *    切换后不再回到旧分区，旧分区中不会再有它的消息
+ * 5. 所有旧分区都过了栅栏、所有计数归零后结束迁移；缩容移除的分区队列持续为空 drainGraceMs 后停止消费者并删除队列
+ *
+ * 消息发送失败或节点崩溃可能让计数无法归零：旧分区队列持续为空、计数 drainGraceMs 内没有变化时按泄漏清零。
+ * Jump Hash 保证分区数变化时只有约 1/N 的商品改变分区，只有这部分商品的发送在迁移期间多访问一次 Redis。
+ */
+@Component
+public class SeckillPartitionManager implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SeckillPartitionManager.class);
+
+    public static final String QUEUE_PREFIX = RabbitMQConfig.SECKILL_QUEUE + ".";
+    public static final String ROUTING_KEY_PREFIX = RabbitMQConfig.SECKILL_ROUTING_KEY + ".";
+
+    // 迁移中发往旧分区、需要计数的消息：纪元与 goodsId
+    public static final String EPOCH_HEADER = "x-seckill-partition-epoch";
+    public static final String GOODS_HEADER = "x-seckill-goods-id";
+    // 栅栏消息：值为纪元
+    private static final String FENCE_HEADER = "x-seckill-partition-fence";
+
+    private static final String EPOCH_KEY = "seckill:partition:epoch";
+    // 旧版本写入的分区数，首次初始化纪元时沿用
+    private static final String LEGACY_COUNT_KEY = "seckill:partition:count";
+    private static final String CHANNEL = "seckill:partition";
+
+    // 迁移数据过期时间，远长于任何一次迁移
+    private static final long MIGRATION_TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private static final DefaultRedisScript<Long> INIT_SCRIPT = script("lua/partition_init.lua");
+    private static final DefaultRedisScript<Long> RESIZE_SCRIPT = script("lua/partition_resize.lua");
+    private static final DefaultRedisScript<Long> ROUTE_SCRIPT = script("lua/partition_route.lua");
+    private static final DefaultRedisScript<Long> SETTLE_SCRIPT = script("lua/partition_settle.lua");
+    private static final DefaultRedisScript<Long> CLEAR_PENDING_SCRIPT = script("lua/partition_clear_pending.lua");
+
+    private final ConnectionFactory connectionFactory;
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
+    private final SeckillMessageConsumer consumer;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer redisListenerContainer;
+
+    private final boolean enabled;
+    private final int defaultCount;
+    private final long drainGraceMs;
+    private final boolean batchEnabled;
+    private final int batchSize;
+    private final long receiveTimeoutMs;
+
+    // 当前纪元
+    private volatile Epoch epoch = new Epoch(0, 1, 1, false);
+    private volatile long epochSeenAt = 0;
+
+    // 分区号 -> 监听容器（包括迁移中和正在排空的旧分区）
+    private final Map<Integer, SimpleMessageListenerContainer> containers = new ConcurrentHashMap<>();
+
+    // 迁移线程使用：栅栏最近发送时间、分区队列开始为空的时间、疑似泄漏的计数 (goodsId -> {计数, 首次观察时间})
+    private final Map<Integer, Long> fenceSentAt = new HashMap<>();
+    private final Map<Integer, Long> emptySince = new HashMap<>();
+    private final Map<String, long[]> suspectedLeaks = new HashMap<>();
+
+    private final Object wakeup = new Object();
+    private volatile boolean running = false;
+    private Thread migrator;
+    private MessageListener epochListener;
+
+    public SeckillPartitionManager(ConnectionFactory connectionFactory,
+            AmqpAdmin amqpAdmin,
+            RabbitTemplate rabbitTemplate,
+            MessageConverter messageConverter,
+            SeckillMessageConsumer consumer,
+            StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer redisListenerContainer,
+            @Value("${seckill.partition.enabled:false}") boolean enabled,
+            @Value("${seckill.partition.count:4}") int defaultCount,
+            @Value("${seckill.partition.drain-grace-ms:10000}") long drainGraceMs,
+            @Value("${seckill.consumer.batch.enabled:false}") boolean batchEnabled,
+            @Value("${seckill.consumer.batch.size:100}") int batchSize,
+            @Value("${seckill.consumer.batch.receive-timeout-ms:50}") long receiveTimeoutMs) {
+        this.connectionFactory = connectionFactory;
+        this.amqpAdmin = amqpAdmin;
+        this.rabbitTemplate = rabbitTemplate;
+        this.messageConverter = messageConverter;
+        this.consumer = consumer;
+        this.redisTemplate = redisTemplate;
+        this.redisListenerContainer = redisListenerContainer;
+        this.enabled = enabled;
+        this.defaultCount = Math.max(1, defaultCount);
+        this.drainGraceMs = Math.max(POLL_INTERVAL_MS, drainGraceMs);
+        this.batchEnabled = batchEnabled;
+        this.batchSize = batchSize;
+        this.receiveTimeoutMs = receiveTimeoutMs;
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPartitionCount() {
+        return epoch.count;
+    }
+
+    /**
+     * 分区状态
+     */
+    public Map<String, Object> getStatus() {
+        Epoch current = epoch;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("epoch", current.id);
+        status.put("partitionCount", current.count);
+        status.put("previousCount", current.previous);
+        status.put("migrating", current.migrating);
+        status.put("activePartitions", new TreeSet<>(containers.keySet()));
+        return status;
+    }
+
+    /**
+     * 发送路由：路由键，以及迁移中发往旧分区时需要带上的纪元（0 表示不计数）
+     */
+    public record Route(String routingKey, long epoch, Long goodsId) {
+
+        public boolean tracked() {
+            return epoch > 0;
+        }
+    }
+
+    /**
+     * 商品对应的路由
+     * 迁移中换了分区、尚未切换的商品访问一次 Redis，其余商品只在本地计算
+     */
+    public Route route(Long goodsId) {
+        if (!enabled) {
+            return new Route(RabbitMQConfig.SECKILL_ROUTING_KEY, 0, goodsId);
+        }
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Epoch current = epoch;
+            int target = partitionOf(goodsId, current.count);
+            if (!current.migrating || current.switched.contains(goodsId)) {
+                return new Route(ROUTING_KEY_PREFIX + target, 0, goodsId);
+            }
+            int old = partitionOf(goodsId, current.previous);
+            if (old == target) {
+                return new Route(ROUTING_KEY_PREFIX + target, 0, goodsId);
+            }
+
+            Long result = redisTemplate.execute(ROUTE_SCRIPT,
+                    List.of(EPOCH_KEY, pendingKey(current.id), switchedKey(current.id), fencedKey(current.id)),
+                    String.valueOf(current.id), String.valueOf(goodsId), String.valueOf(old),
+                    String.valueOf(MIGRATION_TTL_SECONDS));
+            if (result == null) {
+                throw new IllegalStateException("分区路由脚本执行失败: goodsId=" + goodsId);
+            }
+            if (result == 1) {
+                current.switched.add(goodsId);
+                return new Route(ROUTING_KEY_PREFIX + target, 0, goodsId);
+            }
+            if (result == 0) {
+                return new Route(ROUTING_KEY_PREFIX + old, current.id, goodsId);
+            }
+            // 纪元已变化，本节点还没有收到通知
+            refreshEpoch();
+        }
+        throw new IllegalStateException("分区纪元持续变化，无法路由: goodsId=" + goodsId);
+    }
+
+    /**
+     * 计数过的消息没有发出去（发送异常）时撤销计数
+     */
+    public void abandon(Route route) {
+        if (!route.tracked()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForHash().increment(pendingKey(route.epoch()), String.valueOf(route.goodsId()), -1);
+        } catch (Exception e) {
+            // 计数无法归零时由迁移线程按泄漏清除
+            log.warn("撤销分区迁移计数失败: epoch={}, goodsId={}", route.epoch(), route.goodsId(), e);
+        }
+    }
+
+    /**
+     * 调整分区数：开始新纪元并通知所有节点，迁移在后台完成
+     *
+     * @return 新纪元编号
+     */
+    public long resize(int newCount) {
+        if (!enabled) {
+            throw new IllegalStateException("未开启分区模式");
+        }
+        if (newCount <= 0) {
+            throw new IllegalArgumentException("分区数必须大于 0: " + newCount);
+        }
+
+        Long id = redisTemplate.execute(RESIZE_SCRIPT, List.of(EPOCH_KEY), String.valueOf(newCount));
+        if (id == null) {
+            throw new IllegalStateException("分区调整脚本执行失败");
+        }
+        if (id < 0) {
+            throw new IllegalStateException("上一次分区调整尚未完成，请稍后重试");
+        }
+        refreshEpoch();
+        redisTemplate.convertAndSend(CHANNEL, String.valueOf(id));
+        return id;
+    }
+
+    /**
+     * Jump Consistent Hash：分布均匀，分区数从 n 变为 n+1 时只有 1/(n+1) 的 key 移动
+     */
+    static int partitionOf(long goodsId, int buckets) {
+        long key = goodsId;
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        // 首个节点写入纪元：沿用旧版本的分区数，没有时使用配置值
+        String legacy = redisTemplate.opsForValue().get(LEGACY_COUNT_KEY);
+        int initial = legacy != null ? Integer.parseInt(legacy) : defaultCount;
+        redisTemplate.execute(INIT_SCRIPT, List.of(EPOCH_KEY), String.valueOf(initial));
+
+        running = true;
+        refreshEpoch();
+        Epoch current = epoch;
+        if (current.count != defaultCount) {
+            log.warn("秒杀订单分区数以集群配置为准: {} (本节点配置 {})", current.count, defaultCount);
+        }
+
+        // 之前缩容未排空的分区，继续排空
+        synchronized (this) {
+            for (int i = Math.max(current.count, current.previous); amqpAdmin.getQueueInfo(queueName(i)) != null; i++) {
+                startPartition(i);
+            }
+        }
+
+        // 通知只唤醒迁移线程，不在 redis-listener 线程上访问 Redis
+        epochListener = (message, pattern) -> {
+            synchronized (wakeup) {
+                wakeup.notifyAll();
+            }
+        };
+        redisListenerContainer.addMessageListener(epochListener, new ChannelTopic(CHANNEL));
+
+        migrator = new Thread(this::migrateLoop, "seckill-partition-migrator");
+        migrator.setDaemon(true);
+        migrator.start();
+        log.info("秒杀订单分区已启动: 纪元 {}, {} 个", current.id, current.count);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (epochListener != null) {
+            redisListenerContainer.removeMessageListener(epochListener);
+        }
+        if (migrator != null) {
+            migrator.interrupt();
+        }
+        containers.values().forEach(SimpleMessageListenerContainer::stop);
+        containers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 晚于其他组件启动，早于其他组件停止
+        return Integer.MAX_VALUE - 100;
+    }
+
+    /**
+     * 从 Redis 读取纪元并在本节点生效：先启动新旧纪元用到的所有分区，再切换路由
+     */
+    private synchronized void refreshEpoch() {
+        List<Object> values = redisTemplate.opsForHash()
+                .multiGet(EPOCH_KEY, List.of("id", "count", "previous", "migrating"));
+        if (values.get(0) == null) {
+            return;
+        }
+        Epoch next = new Epoch(Long.parseLong((String) values.get(0)),
+                Integer.parseInt((String) values.get(1)),
+                Integer.parseInt((String) values.get(2)),
+                "1".equals(values.get(3)));
+        Epoch current = epoch;
+        if (next.id < current.id || (next.id == current.id && next.migrating == current.migrating)) {
+            return;
+        }
+
+        if (running) {
+            for (int i = 0; i < Math.max(next.count, next.previous); i++) {
+                startPartition(i);
+            }
+        }
+        if (next.id == current.id) {
+            log.info("秒杀订单分区迁移完成: 纪元 {}, {} -> {}", next.id, next.previous, next.count);
+        } else {
+            epochSeenAt = System.currentTimeMillis();
+            if (next.migrating) {
+                log.info("秒杀订单分区调整: 纪元 {}, {} -> {}", next.id, next.previous, next.count);
+            }
+        }
+        epoch = next;
+    }
+
+    /**
+     * 迁移线程：同步纪元、发送栅栏、结束迁移、下线被移除的分区
+     */
+    private void migrateLoop() {
+        long seenEpoch = -1;
+        while (running) {
+            try {
+                synchronized (wakeup) {
+                    wakeup.wait(POLL_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                refreshEpoch();
+                Epoch current = epoch;
+                if (current.id != seenEpoch) {
+                    seenEpoch = current.id;
+                    fenceSentAt.clear();
+                    suspectedLeaks.clear();
+                }
+                if (current.migrating) {
+                    migrate(current);
+                } else {
+                    retireRemoved(current);
+                }
+            } catch (Exception e) {
+                log.error("秒杀订单分区迁移异常", e);
+            }
+        }
+    }
+
+    private void migrate(Epoch current) {
+        long now = System.currentTimeMillis();
+        // 等所有节点都切到新纪元（开始计数）后再发栅栏
+        if (now - epochSeenAt < drainGraceMs) {
+            return;
+        }
+
+        Set<String> fenced = redisTemplate.opsForSet().members(fencedKey(current.id));
+        int fencedCount = 0;
+        for (int p = 0; p < current.previous; p++) {
+            if (fenced != null && fenced.contains(String.valueOf(p))) {
+                fencedCount++;
+                continue;
+            }
+            // 栅栏可能随节点崩溃丢失，过一段时间重发（重复的栅栏没有影响）
+            Long sentAt = fenceSentAt.get(p);
+            if (sentAt == null || now - sentAt >= drainGraceMs) {
+                sendFence(p, current.id);
+                fenceSentAt.put(p, now);
+            }
+        }
+        if (fencedCount < current.previous) {
+            return;
+        }
+
+        clearLeakedPending(current, now);
+        Long settled = redisTemplate.execute(SETTLE_SCRIPT,
+                List.of(EPOCH_KEY, pendingKey(current.id), fencedKey(current.id)),
+                String.valueOf(current.id), String.valueOf(current.previous));
+        if (settled != null && settled == 1) {
+            refreshEpoch();
+            redisTemplate.convertAndSend(CHANNEL, String.valueOf(current.id));
+        }
+    }
+
+    /**
+     * 计数长时间不变且旧分区队列持续为空时，判定为泄漏并清零
+     */
+    private void clearLeakedPending(Epoch current, long now) {
+        Map<Object, Object> pending = redisTemplate.opsForHash().entries(pendingKey(current.id));
+        Map<Integer, Boolean> drained = new HashMap<>();
+        suspectedLeaks.keySet().retainAll(pending.keySet());
+
+        for (Map.Entry<Object, Object> entry : pending.entrySet()) {
+            String goodsId = (String) entry.getKey();
+            long count = Long.parseLong((String) entry.getValue());
+            if (count <= 0) {
+                suspectedLeaks.remove(goodsId);
+                continue;
+            }
+            int old = partitionOf(Long.parseLong(goodsId), current.previous);
+            if (!drained.computeIfAbsent(old, p -> queueEmptyFor(p, now))) {
+                suspectedLeaks.remove(goodsId);
+                continue;
+            }
+            long[] seen = suspectedLeaks.get(goodsId);
+            if (seen == null || seen[0] != count) {
+                suspectedLeaks.put(goodsId, new long[] { count, now });
+            } else if (now - seen[1] >= drainGraceMs) {
+                Long cleared = redisTemplate.execute(CLEAR_PENDING_SCRIPT, List.of(pendingKey(current.id)),
+                        goodsId, String.valueOf(count));
+                if (cleared != null && cleared == 1) {
+                    log.warn("清除泄漏的分区迁移计数: goodsId={}, count={}", goodsId, count);
+                }
+                suspectedLeaks.remove(goodsId);
+            }
+        }
+    }
+
+    /**
+     * 下线迁移完成后不再使用的分区：队列持续为空 drainGraceMs 后停止消费者并删除队列
+     */
+    private void retireRemoved(Epoch current) {
+        long now = System.currentTimeMillis();
+        for (Integer partition : new ArrayList<>(containers.keySet())) {
+            if (partition < current.count) {
+                continue;
+            }
+            if (amqpAdmin.getQueueInfo(queueName(partition)) == null) {
+                // 已被其他节点删除
+                stopPartition(partition);
+                continue;
+            }
+            if (queueEmptyFor(partition, now)) {
+                retire(partition);
+            }
+        }
+    }
+
+    /**
+     * 分区队列是否已持续为空 drainGraceMs
+     * 宽限期用于等待在途消息投递、处理中的消息确认
+     */
+    private boolean queueEmptyFor(int partition, long now) {
+        QueueInformation info = amqpAdmin.getQueueInfo(queueName(partition));
+        if (info == null || info.getMessageCount() > 0) {
+            emptySince.remove(partition);
+            return false;
+        }
+        return now - emptySince.computeIfAbsent(partition, p -> now) >= drainGraceMs;
+    }
+
+    private synchronized void retire(int partition) {
+        if (partition < epoch.count) {
+            return;
+        }
+        stopPartition(partition);
+        try {
+            // 只删除空队列，避免丢失消息
+            amqpAdmin.deleteQueue(queueName(partition), false, true);
+        } catch (Exception e) {
+            log.warn("分区队列非空，恢复消费: queue={}", queueName(partition));
+            startPartition(partition);
+            return;
+        }
+        emptySince.remove(partition);
+        log.info("分区已下线: queue={}", queueName(partition));
+    }
+
+    private void stopPartition(int partition) {
+        SimpleMessageListenerContainer container = containers.remove(partition);
+        if (container != null) {
+            // 停止时等待处理中的消息完成，未确认的消息会回到队列
+            container.stop();
+        }
+    }
+
+    private void sendFence(int partition, long epochId) {
+        Message fence = MessageBuilder.withBody(new byte[0])
+                .setHeader(FENCE_HEADER, epochId)
+                .build();
+        rabbitTemplate.send(RabbitMQConfig.SECKILL_EXCHANGE, ROUTING_KEY_PREFIX + partition, fence);
+        log.debug("发送分区栅栏: partition={}, epoch={}", partition, epochId);
+    }
+
+    private void startPartition(int partition) {
+        if (containers.containsKey(partition)) {
+            return;
+        }
+
+        Queue queue = QueueBuilder.durable(queueName(partition))
+                .withArgument("x-dead-letter-exchange", RabbitMQConfig.SECKILL_DLX)
+                .withArgument("x-dead-letter-routing-key", RabbitMQConfig.SECKILL_DLQ)
+                .withArgument("x-single-active-consumer", true)
+                .build();
+        amqpAdmin.declareQueue(queue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(queue)
+                .to(new DirectExchange(RabbitMQConfig.SECKILL_EXCHANGE))
+                .with(ROUTING_KEY_PREFIX + partition));
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue.getName());
+        container.setConcurrentConsumers(1);
+        container.setMaxConcurrentConsumers(1);
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+
+        if (batchEnabled) {
+            container.setConsumerBatchEnabled(true);
+            container.setBatchSize(batchSize);
+            container.setReceiveTimeout(receiveTimeoutMs);
+            container.setPrefetchCount(batchSize);
+            container.setMessageListener((ChannelAwareBatchMessageListener) (messages, channel) -> {
+                try {
+                    deliver(partition, messages, channel, consumer::handleSeckillBatch);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else {
+            container.setPrefetchCount(1);
+            container.setMessageListener((ChannelAwareMessageListener) (message, channel) ->
+                    deliver(partition, List.of(message), channel, (orders, ch) -> {
+                        if (!orders.isEmpty()) {
+                            handleOne(queue.getName(), orders.get(0), ch);
+                        }
+                    }));
+        }
+
+        container.afterPropertiesSet();
+        container.start();
+        containers.put(partition, container);
+        log.info("分区消费者已启动: queue={}", queue.getName());
+    }
+
+    private void handleOne(String queueName, Message message, Channel channel) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        SeckillMessage body;
+        try {
+            body = (SeckillMessage) messageConverter.fromMessage(message);
+        } catch (Exception e) {
+            log.error("秒杀消息解析失败: queue={}, deliveryTag={}", queueName, deliveryTag, e);
+            channel.basicNack(deliveryTag, false, false);
+            return;
+        }
+        consumer.handleSeckillMessage(body, channel, deliveryTag);
+    }
+
+    /**
+     * 交给消费者处理，迁移中额外处理栅栏和计数
+     */
+    private void deliver(int partition, List<Message> messages, Channel channel, Delivery delivery)
+            throws IOException {
+        List<Message> orders = messages;
+        List<Long> fences = null;
+        Map<Long, String> tracked = null;
+        for (Message message : messages) {
+            MessageProperties properties = message.getMessageProperties();
+            Object fence = properties.getHeader(FENCE_HEADER);
+            if (fence != null) {
+                if (fences == null) {
+                    fences = new ArrayList<>();
+                    orders = new ArrayList<>(messages);
+                }
+                fences.add(((Number) fence).longValue());
+                orders.remove(message);
+                // 栅栏不交给消费者，先单独确认（之后消费者按 multiple 确认不会重复确认它）
+                channel.basicAck(properties.getDeliveryTag(), false);
+                continue;
+            }
+            Object epochId = properties.getHeader(EPOCH_HEADER);
+            if (epochId != null) {
+                if (tracked == null) {
+                    tracked = new HashMap<>();
+                }
+                tracked.put(properties.getDeliveryTag(), epochId + ":" + properties.getHeader(GOODS_HEADER));
+            }
+        }
+
+        if (fences == null && tracked == null) {
+            delivery.handle(orders, channel);
+            return;
+        }
+
+        SettleTracker tracker = new SettleTracker(channel, orders);
+        try {
+            delivery.handle(orders, tracker.proxy());
+        } finally {
+            if (tracked != null) {
+                settle(tracked, tracker.settled);
+            }
+        }
+
+        if (fences != null) {
+            for (Long epochId : fences) {
+                if (tracker.requeued) {
+                    // 栅栏之前的消息重新入队，栅栏重发到它们之后
+                    sendFence(partition, epochId);
+                } else {
+                    redisTemplate.opsForSet().add(fencedKey(epochId), String.valueOf(partition));
+                    redisTemplate.expire(fencedKey(epochId), MIGRATION_TTL_SECONDS, TimeUnit.SECONDS);
+                    log.info("分区已处理完栅栏: partition={}, epoch={}", partition, epochId);
+                }
+            }
+        }
+    }
+
+    /**
+     * 已处理完的计数消息，对应商品的计数减一
+     */
+    private void settle(Map<Long, String> tracked, Set<Long> settled) {
+        Map<String, Long> decrements = new HashMap<>();
+        for (Map.Entry<Long, String> entry : tracked.entrySet()) {
+            if (settled.contains(entry.getKey())) {
+                decrements.merge(entry.getValue(), 1L, Long::sum);
+            }
+        }
+        for (Map.Entry<String, Long> entry : decrements.entrySet()) {
+            String[] parts = entry.getKey().split(":", 2);
+            try {
+                redisTemplate.opsForHash().increment(pendingKey(Long.parseLong(parts[0])), parts[1],
+                        -entry.getValue());
+            } catch (Exception e) {
+                // 计数无法归零时由迁移线程按泄漏清除
+                log.warn("分区迁移计数更新失败: epoch={}, goodsId={}", parts[0], parts[1], e);
+            }
+        }
+    }
+
+    private String queueName(int partition) {
+        return QUEUE_PREFIX + partition;
+    }
+
+    private static String pendingKey(long epochId) {
+        return "seckill:partition:pending:" + epochId;
+    }
+
+    private static String switchedKey(long epochId) {
+        return "seckill:partition:switched:" + epochId;
+    }
+
+    private static String fencedKey(long epochId) {
+        return "seckill:partition:fenced:" + epochId;
+    }
+
+    /**
+     * 分区纪元
+     */
+    private static final class Epoch {
+        private final long id;
+        private final int count;
+        private final int previous;
+        private final boolean migrating;
+        // 本节点已知切换到新分区的商品（切换不可逆，缓存后不再访问 Redis）
+        private final Set<Long> switched = ConcurrentHashMap.newKeySet();
+
+        private Epoch(long id, int count, int previous, boolean migrating) {
+            this.id = id;
+            this.count = count;
+            this.previous = previous;
+            this.migrating = migrating;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Delivery {
+        void handle(List<Message> messages, Channel channel) throws IOException;
+    }
+
+    /**
+     * 记录消费者对消息的最终处理：ack、不重新入队的 nack / reject 算处理完，重新入队的不算
+     */
+    private static final class SettleTracker implements InvocationHandler {
+        private final Channel channel;
+        private final NavigableSet<Long> outstanding = new TreeSet<>();
+        private final Set<Long> settled = new TreeSet<>();
+        private boolean requeued = false;
+
+        private SettleTracker(Channel channel, List<Message> messages) {
+            this.channel = channel;
+            for (Message message : messages) {
+                outstanding.add(message.getMessageProperties().getDeliveryTag());
+            }
+        }
+
+        private Channel proxy() {
+            return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                    new Class<?>[] { Channel.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(channel, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            switch (method.getName()) {
+                case "basicAck" -> record((long) args[0], (boolean) args[1], false);
+                case "basicNack" -> record((long) args[0], (boolean) args[1], (boolean) args[2]);
+                case "basicReject" -> record((long) args[0], false, (boolean) args[1]);
+                default -> {
+                }
+            }
+            return result;
+        }
+
+        private void record(long deliveryTag, boolean multiple, boolean requeue) {
+            Set<Long> affected = multiple
+                    ? outstanding.headSet(deliveryTag, true)
+                    : (outstanding.contains(deliveryTag) ? Set.of(deliveryTag) : Set.of());
+            if (requeue) {
+                requeued |= !affected.isEmpty();
+            } else {
+                settled.addAll(affected);
+            }
+            outstanding.removeAll(List.copyOf(affected));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.seckill.ratelimit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限流器（梯度算法）
+ *
+ * 静态 QPS 需要手工调，MySQL / Redis 延迟一变就不准。这里不限制速率，而是限制在途请求数，
+ * 并根据实测 RTT 自动调整上限（思路同 TCP Vegas / Netflix Gradient2）：
+ *
+ * - 基线 RTT：历史低点并缓慢上浮，代表"无排队"时的延迟
+ * - 短期 RTT：最近一个采样窗口的平均值
+ * - gradient = clamp(tolerance × 基线 / 短期, 0.5, 1.0)
+ *   短期 RTT 明显高于基线说明开始排队，按比例收缩；持平时 gradient = 1
+ * - newLimit = limit × gradient + queueSize（queueSize = √limit，给探测上调留出空间）
+ * - 平滑：limit = limit × (1 - smoothing) + newLimit × smoothing，并限制在 [min, max]
+ *
+ * 没有排队迹象且在途数不到上限一半时不上调（应用本身没压满，RTT 不能说明容量），避免上限无限增长。
+ *
+ * 热路径只有一次 CAS（获取）和两次 LongAdder 累加（释放）；窗口结算由 tryLock 抢到的线程完成。
+ */
+public class AdaptiveConcurrencyLimiter implements RateLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minWindowSamples;
+
+    /**
+     * 当前上限（取整前的值保存在 estimatedLimit）
+     */
+    private volatile int limit;
+    private double estimatedLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    // 当前采样窗口
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowEnd;
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    // 基线 / 短期 RTT（纳秒）
+    private volatile double longRttNanos;
+    private volatile long shortRttNanos;
+
+    // 统计
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+
+    private Recorder recorder = Recorder.NOOP;
+
+    /**
+     * 创建自适应并发限流器
+     *
+     * @param initialLimit 初始并发上限
+     * @param minLimit     最小并发上限
+     * @param maxLimit     最大并发上限
+     * @param windowMs     采样窗口
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long windowMs) {
+        this(initialLimit, minLimit, maxLimit, 1.2, 0.2, windowMs, 10);
+    }
+
+    /**
+     * @param tolerance        容忍短期 RTT 高出基线的倍数
+     * @param smoothing        上限调整的平滑系数
+     * @param minWindowSamples 采样窗口内至少多少个样本才调整
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+            double tolerance, double smoothing, long windowMs, int minWindowSamples) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.minWindowSamples = minWindowSamples;
+        this.estimatedLimit = Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit));
+        this.limit = (int) estimatedLimit;
+        this.windowEnd = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 占用在途名额，成功后必须调用 release / onSuccess
+     */
+    @Override
+    public boolean tryAcquire(int permits) {
+        while (true) {
+            int current = inFlight.get();
+            if (current + permits > limit) {
+                rejected.increment();
+                recorder.onDenied(permits);
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + permits)) {
+                recorder.onGranted(permits);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 不支持异步获取：异步调用方拿到 true 后没有归还名额的途径，名额泄漏后会永久拒绝。
+     * 按异步契约不同步抛出，返回以 IllegalStateException 失败的 future
+     */
+    @Override
+    public CompletionStage<Boolean> acquireAsync(int permits, long timeoutMs) {
+        return CompletableFuture.failedFuture(new IllegalStateException(
+                "自适应并发限流的名额需要调用 release / onSuccess 归还，不支持 acquireAsync"));
+    }
+
+    /**
+     * 请求正常完成：释放名额并记录 RTT
+     */
+    public void onSuccess(long rttNanos) {
+        inFlight.decrementAndGet();
+        if (rttNanos <= 0) {
+            return;
+        }
+        windowRttSum.add(rttNanos);
+        windowSamples.increment();
+        samples.increment();
+
+        long now = System.nanoTime();
+        if (now - windowEnd.get() >= 0 && updateLock.tryLock()) {
+            try {
+                if (now - windowEnd.get() >= 0) {
+                    closeWindow(now);
+                }
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 请求失败或被丢弃：只释放名额，不参与 RTT 采样（失败往往很快，会误导算法）
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 结算一个采样窗口并调整上限
+     */
+    private void closeWindow(long now) {
+        long count = windowSamples.sumThenReset();
+        long sum = windowRttSum.sumThenReset();
+        windowEnd.set(now + windowNanos);
+        if (count < minWindowSamples) {
+            // 样本太少不调整，把已取出的样本放回下个窗口
+            windowSamples.add(count);
+            windowRttSum.add(sum);
+            return;
+        }
+
+        long shortRtt = sum / count;
+        shortRttNanos = shortRtt;
+
+        // 基线取历史低点：低于基线立即跟随，高于基线只缓慢上浮（依赖整体变慢后最终接受新的基线）
+        double longRtt = longRttNanos;
+        if (longRtt == 0 || shortRtt < longRtt) {
+            longRtt = shortRtt;
+        } else {
+            longRtt = longRtt * 0.99 + shortRtt * 0.01;
+        }
+        longRttNanos = longRtt;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+
+        // 应用没压满时不上调
+        if (gradient >= 1.0 && inFlight.get() < estimatedLimit / 2) {
+            return;
+        }
+
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        estimatedLimit = newLimit;
+        limit = (int) newLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getSampleCount() {
+        return samples.sum();
+    }
+
+    public double getShortRttMillis() {
+        return shortRttNanos / 1_000_000.0;
+    }
+
+    public double getLongRttMillis() {
+        return longRttNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String getName() {
+        return "Adaptive";
+    }
+
+    @Override
+    public RateLimiterStats getStats() {
+        int currentLimit = limit;
+        int current = inFlight.get();
+        return new RateLimiterStats(getName(), currentLimit, Math.max(0, currentLimit - current), 0,
+                current, getShortRttMillis(), getLongRttMillis(), getSampleCount(), getRejectedCount());
+    }
+
+    @Override
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+}
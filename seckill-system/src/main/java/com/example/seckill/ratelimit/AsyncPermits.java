@@ -0,0 +1,63 @@
+package com.example.seckill.ratelimit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步获取许可的公共实现
+ *
+ * 许可不足时不 park 线程，而是按限流器给出的等待时间在共享定时器上重试：
+ * CompletableFuture.delayedExecutor 使用 JDK 内置的单线程延迟调度器，到期后在 ForkJoinPool 上执行，
+ * 重试本身只有一次 CAS，后续回调也不会占用定时器线程。
+ * 预计在超时前拿不到许可时立即以 false 完成，不会白等。
+ */
+final class AsyncPermits {
+
+    private AsyncPermits() {
+    }
+
+    /**
+     * 一次非阻塞尝试
+     */
+    @FunctionalInterface
+    interface Attempt {
+        /**
+         * @return 0 表示获取成功，否则为建议的重试等待时间（纳秒）
+         */
+        long tryAcquireOrWait(int permits);
+    }
+
+    static CompletionStage<Boolean> acquire(Attempt attempt, int permits, long timeoutMs,
+            RateLimiter.Recorder recorder) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        attempt(attempt, permits, start, deadline, recorder, future);
+        return future;
+    }
+
+    private static void attempt(Attempt attempt, int permits, long start, long deadline,
+            RateLimiter.Recorder recorder, CompletableFuture<Boolean> future) {
+        if (future.isDone()) {
+            // 调用方已取消
+            return;
+        }
+        long waitNanos = attempt.tryAcquireOrWait(permits);
+        long now = System.nanoTime();
+        if (waitNanos == 0) {
+            recorder.onGranted(permits);
+            recorder.onWait(now - start);
+            future.complete(Boolean.TRUE);
+            return;
+        }
+        if (waitNanos == Long.MAX_VALUE || now + waitNanos - deadline > 0) {
+            recorder.onDenied(permits);
+            future.complete(Boolean.FALSE);
+            return;
+        }
+        Executor delayed = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS);
+        delayed.execute(() -> attempt(attempt, permits, start, deadline, recorder, future));
+    }
+}
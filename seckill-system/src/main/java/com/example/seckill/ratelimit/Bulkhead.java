@@ -0,0 +1,107 @@
+package com.example.seckill.ratelimit;
+
+import java.util.function.LongConsumer;
+
+/**
+ * 舱壁隔离
+ *
+ * 限制同时访问某个依赖的调用数，一个依赖变慢时只占满自己的舱壁，不会拖垮整个 Tomcat 线程池：
+ * - SEMAPHORE：信号量，在调用线程上执行，开销最小，只限并发不隔离线程
+ * - THREAD_POOL：独立线程池 + 有界队列，调用方可以超时放弃，依赖卡死时调用线程也能返回
+ *
+ * 舱壁满时在 maxWait 内等待，超时抛出 BulkheadFullException，不会退化为调用方执行。
+ */
+public interface Bulkhead {
+
+    /**
+     * 舱壁类型
+     */
+    enum Type {
+        SEMAPHORE, THREAD_POOL
+    }
+
+    /**
+     * 在舱壁内执行
+     *
+     * @throws BulkheadFullException 舱壁已满且等待超时
+     */
+    <T> T execute(CircuitBreaker.ProtectedAction<T> action) throws Exception;
+
+    String getName();
+
+    Type getType();
+
+    BulkheadStats getStats();
+
+    /**
+     * 设置等待时间记录器（信号量为等待许可的时间，线程池为排队时间），单位纳秒
+     */
+    void setWaitRecorder(LongConsumer waitRecorder);
+
+    /**
+     * 舱壁统计信息
+     */
+    class BulkheadStats {
+        private final String name;
+        private final Type type;
+        private final int maxConcurrent;
+        private final int active;
+        private final int queued;
+        private final long permitted;
+        private final long rejected;
+        private final long waitTimeouts;
+
+        public BulkheadStats(String name, Type type, int maxConcurrent, int active, int queued,
+                long permitted, long rejected, long waitTimeouts) {
+            this.name = name;
+            this.type = type;
+            this.maxConcurrent = maxConcurrent;
+            this.active = active;
+            this.queued = queued;
+            this.permitted = permitted;
+            this.rejected = rejected;
+            this.waitTimeouts = waitTimeouts;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getPermitted() {
+            return permitted;
+        }
+
+        /**
+         * 被拒绝的调用数（含等待超时）
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getWaitTimeouts() {
+            return waitTimeouts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{type=%s, active=%d/%d, queued=%d, permitted=%d, rejected=%d, waitTimeouts=%d}",
+                    name, type, active, maxConcurrent, queued, permitted, rejected, waitTimeouts);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.seckill.ratelimit;
+
+/**
+ * 舱壁已满（并发或队列已满，且在 maxWait 内没有等到空位）
+ */
+public class BulkheadFullException extends CallNotPermittedException {
+
+    public BulkheadFullException(String name, String message) {
+        super(name, message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.seckill.ratelimit;
+
+/**
+ * 线程池舱壁调用超时（任务已经开始或排队，调用方在 timeoutMs 内没有等到结果）
+ *
+ * 与 CallNotPermittedException 不同，调用已经放行，超时说明依赖变慢或卡死，熔断器按失败统计；
+ * GlobalExceptionHandler 返回 503。
+ */
+public class BulkheadTimeoutException extends RuntimeException {
+
+    private final String policy;
+
+    public BulkheadTimeoutException(String policy, String message) {
+        super(message);
+        this.policy = policy;
+    }
+
+    /**
+     * 超时的舱壁名称
+     */
+    public String getPolicy() {
+        return policy;
+    }
+}
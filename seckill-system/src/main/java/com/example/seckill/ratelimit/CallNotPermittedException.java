@@ -0,0 +1,23 @@
+package com.example.seckill.ratelimit;
+
+/**
+ * 调用被保护策略拒绝（限流、熔断、舱壁已满）
+ *
+ * 由 @ResiliencePolicy 抛出，GlobalExceptionHandler 统一返回 429。
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+    private final String policy;
+
+    public CallNotPermittedException(String policy, String message) {
+        super(message);
+        this.policy = policy;
+    }
+
+    /**
+     * 拒绝调用的策略名称
+     */
+    public String getPolicy() {
+        return policy;
+    }
+}
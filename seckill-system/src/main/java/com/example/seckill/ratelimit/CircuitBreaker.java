@@ -1,24 +1,47 @@
 package com.example.seckill.ratelimit;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 熔断器实现
- * 
+ *
  * 基于状态机的熔断器模式：
  * - CLOSED: 正常状态，请求正常通过
  * - OPEN: 熔断状态，请求快速失败
- * - HALF_OPEN: 半开状态，允许部分请求尝试
- * 
+ * - HALF_OPEN: 半开状态，只放行有限个试探请求
+ *
  * 状态转换：
- * CLOSED -> (失败率超阈值) -> OPEN
+ * CLOSED -> (失败率或慢调用率超阈值) -> OPEN
  * OPEN -> (等待超时) -> HALF_OPEN
- * HALF_OPEN -> (尝试成功) -> CLOSED
- * HALF_OPEN -> (尝试失败) -> OPEN
+ * HALF_OPEN -> (试探请求全部完成且比率低于阈值) -> CLOSED
+ * HALF_OPEN -> (试探请求的比率超阈值) -> OPEN
+ * HALF_OPEN -> (maxWaitInHalfOpen 内试探请求没有全部完成) -> OPEN
+ *
+ * 状态周期：每次状态转换生成新的周期，acquirePermission 返回的许可记录放行时的状态和周期。
+ * 结果只计入放行它的那个周期：CLOSED 期间放行、在 HALF_OPEN 期间才完成的旧调用不会被当成试探请求，
+ * 超时后才返回的试探请求也不会影响下一轮半开。
+ *
+ * 统计窗口（环形缓冲区）：
+ * - COUNT_BASED：最近 N 次调用，每个槽记录一次调用的结果
+ * - TIME_BASED：最近 N 秒，每秒一个桶，桶上带所属的秒，过期的桶不计入、写入时发现过期则原地复用
+ * 窗口内调用数达到 minimumCalls 后才计算比率。执行时间超过 slowCallDuration 的调用计为慢调用，
+ * 依赖"变慢但不报错"时也能熔断。
+ *
+ * 热路径只有原子变量操作，无锁、无对象分配。
+ * 状态转换次数、各状态累计停留时间和调用耗时供 Micrometer 读取（见 ResilienceMetrics）。
  */
 public class CircuitBreaker {
 
@@ -45,158 +68,419 @@ public class CircuitBreaker {
         }
     }
 
+    /**
+     * 统计窗口类型
+     */
+    public enum WindowType {
+        COUNT_BASED, TIME_BASED
+    }
+
     private final String name;
-    private final int failureThreshold; // 触发熔断的失败次数阈值
-    private final int successThreshold; // 恢复的成功次数阈值
+    private final WindowType windowType;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold; // 失败率阈值（百分比）
+    private final float slowCallRateThreshold; // 慢调用率阈值（百分比）
+    private final long slowCallDurationNanos; // 慢调用判定时间
     private final long openTimeoutMs; // 熔断持续时间（毫秒）
+    private final int permittedCallsInHalfOpen; // 半开状态放行的试探请求数
+    private final long maxWaitInHalfOpenMs; // 半开状态等待试探结果的最长时间
+
+    /**
+     * 未获得许可
+     */
+    public static final long NOT_PERMITTED = -1;
+
+    // 按序号取状态：values() 每次调用都会复制数组
+    private static final State[] STATES = State.values();
 
-    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
-    private final AtomicInteger failureCount = new AtomicInteger(0);
-    private final AtomicInteger successCount = new AtomicInteger(0);
+    // 状态与周期打包：周期 << 2 | 状态序号，每次转换周期加一
+    private final AtomicLong stateWord = new AtomicLong(State.CLOSED.ordinal());
     private volatile long openTimestamp = 0;
+    private volatile long halfOpenTimestamp = 0;
+
+    // CLOSED 状态的统计窗口
+    private final OutcomeWindow window;
+
+    // HALF_OPEN 状态：剩余放行名额与试探结果
+    private final AtomicInteger halfOpenPermits = new AtomicInteger(0);
+    private final AtomicInteger halfOpenCalls = new AtomicInteger(0);
+    private final AtomicInteger halfOpenFailures = new AtomicInteger(0);
+    private final AtomicInteger halfOpenSlowCalls = new AtomicInteger(0);
 
     // 统计数据
-    private final AtomicInteger totalRequests = new AtomicInteger(0);
-    private final AtomicInteger rejectedRequests = new AtomicInteger(0);
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    // 状态转换次数（下标 from × 3 + to）与各状态累计停留时间
+    private final LongAdder[] transitions = new LongAdder[STATES.length * STATES.length];
+    private final AtomicLongArray stateNanos = new AtomicLongArray(STATES.length);
+    private final AtomicLong stateEnteredAt;
+
+    /**
+     * 纳秒时钟（熔断 / 半开计时、时间窗口、调用耗时）
+     */
+    private final LongSupplier nanoClock;
+
+    private CallRecorder recorder = CallRecorder.NOOP;
 
     /**
      * 创建熔断器
-     * 
+     */
+    public CircuitBreaker(String name, Config config) {
+        this(name, config, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, Config config, LongSupplier nanoClock) {
+        this.name = name;
+        this.nanoClock = nanoClock;
+        this.stateEnteredAt = new AtomicLong(nanoClock.getAsLong());
+        this.windowType = config.windowType;
+        this.windowSize = Math.max(1, config.windowSize);
+        // 按次数统计时窗口装不下 minimumCalls 次调用就永远不会熔断
+        this.minimumCalls = config.windowType == WindowType.COUNT_BASED
+                ? Math.max(1, Math.min(config.minimumCalls, windowSize))
+                : Math.max(1, config.minimumCalls);
+        this.failureRateThreshold = config.failureRateThreshold;
+        this.slowCallRateThreshold = config.slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(config.slowCallDurationMs);
+        this.openTimeoutMs = config.openTimeoutMs;
+        this.permittedCallsInHalfOpen = Math.max(1, config.permittedCallsInHalfOpen);
+        this.maxWaitInHalfOpenMs = Math.max(1, config.maxWaitInHalfOpenMs);
+        this.window = windowType == WindowType.COUNT_BASED
+                ? new CountBasedWindow(windowSize)
+                : new TimeBasedWindow(windowSize, nanoClock);
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 创建熔断器（兼容旧参数）
+     *
+     * 旧版按"连续失败次数"熔断，这里换算为：最近 max(10, 2 × failureThreshold) 次调用中
+     * 至少 failureThreshold 次、失败率达到 50% 时熔断；半开状态放行 successThreshold 个试探请求，
+     * 试探请求 openTimeoutMs 内没有全部完成时重新熔断。
+     *
      * @param name             熔断器名称
      * @param failureThreshold 失败阈值
      * @param successThreshold 恢复阈值
      * @param openTimeoutMs    熔断超时时间
      */
     public CircuitBreaker(String name, int failureThreshold, int successThreshold, long openTimeoutMs) {
-        this.name = name;
-        this.failureThreshold = failureThreshold;
-        this.successThreshold = successThreshold;
-        this.openTimeoutMs = openTimeoutMs;
+        this(name, Config.custom()
+                .countBasedWindow(Math.max(10, failureThreshold * 2))
+                .minimumCalls(failureThreshold)
+                .failureRateThreshold(50)
+                .permittedCallsInHalfOpen(successThreshold)
+                .maxWaitInHalfOpenMs(openTimeoutMs)
+                .openTimeoutMs(openTimeoutMs));
     }
 
     /**
      * 使用默认配置创建熔断器
      */
     public CircuitBreaker(String name) {
-        this(name, 5, 3, 10000); // 5次失败熔断，3次成功恢复，10秒超时
+        this(name, Config.custom());
     }
 
     /**
      * 检查是否允许请求通过
+     *
+     * 配合不带许可的 recordSuccess / recordFailure 使用，结果计入记录时的状态；
+     * 需要区分放行周期时使用 acquirePermission
      */
     public boolean allowRequest() {
-        totalRequests.incrementAndGet();
-        State currentState = state.get();
-
-        switch (currentState) {
-            case CLOSED:
-                return true;
+        return acquirePermission() != NOT_PERMITTED;
+    }
 
-            case OPEN:
-                // 检查是否超时，可以转为半开状态
-                if (System.currentTimeMillis() - openTimestamp >= openTimeoutMs) {
-                    if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
-                        log.info("🔄 熔断器 [{}] 状态: OPEN -> HALF_OPEN (尝试恢复)", name);
-                        failureCount.set(0);
-                        successCount.set(0);
+    /**
+     * 申请调用许可
+     *
+     * @return 许可（调用结束时传给 onSuccess / onFailure），被拒绝时返回 NOT_PERMITTED
+     */
+    public long acquirePermission() {
+        totalRequests.increment();
+
+        while (true) {
+            long word = stateWord.get();
+            switch (stateOf(word)) {
+                case CLOSED:
+                    return word;
+
+                case OPEN:
+                    // 检查是否超时，可以转为半开状态
+                    if (currentMillis() - openTimestamp >= openTimeoutMs) {
+                        toHalfOpen(word);
+                        continue;
                     }
-                    return true;
-                }
-                rejectedRequests.incrementAndGet();
-                return false;
+                    rejectedRequests.increment();
+                    return NOT_PERMITTED;
 
-            case HALF_OPEN:
-                // 半开状态允许请求通过尝试
-                return true;
+                case HALF_OPEN:
+                    if (acquireHalfOpenPermit()) {
+                        return word;
+                    }
+                    // 名额已用完但迟迟等不到试探结果（调用方没有上报、或调用挂住）时重新熔断
+                    if (currentMillis() - halfOpenTimestamp >= maxWaitInHalfOpenMs
+                            && transition(word, State.OPEN)) {
+                        openTimestamp = currentMillis();
+                        log.warn("⚠️ 熔断器 [{}] 状态: HALF_OPEN -> OPEN (试探请求 {}ms 内未全部完成)",
+                                name, maxWaitInHalfOpenMs);
+                    }
+                    rejectedRequests.increment();
+                    return NOT_PERMITTED;
 
-            default:
-                return true;
+                default:
+                    return word;
+            }
         }
     }
 
     /**
-     * 记录请求成功
+     * 记录请求成功（不计耗时，计入当前状态）
      */
     public void recordSuccess() {
-        State currentState = state.get();
+        onResult(stateWord.get(), false, 0);
+    }
 
-        switch (currentState) {
-            case CLOSED:
-                failureCount.set(0); // 重置失败计数
-                break;
+    /**
+     * 记录请求成功（计入当前状态）
+     *
+     * @param durationNanos 执行耗时，超过 slowCallDuration 计为慢调用
+     */
+    public void recordSuccess(long durationNanos) {
+        onResult(stateWord.get(), false, durationNanos);
+    }
 
-            case HALF_OPEN:
-                int successes = successCount.incrementAndGet();
-                if (successes >= successThreshold) {
-                    if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
-                        log.info("✅ 熔断器 [{}] 状态: HALF_OPEN -> CLOSED (恢复正常)", name);
-                        reset();
-                    }
-                }
-                break;
+    /**
+     * 记录请求失败（不计耗时，计入当前状态）
+     */
+    public void recordFailure() {
+        onResult(stateWord.get(), true, 0);
+    }
 
-            default:
-                break;
-        }
+    /**
+     * 记录请求失败（计入当前状态）
+     */
+    public void recordFailure(long durationNanos) {
+        onResult(stateWord.get(), true, durationNanos);
     }
 
     /**
-     * 记录请求失败
+     * 记录 acquirePermission 放行的请求成功，周期已结束时只记录耗时
      */
-    public void recordFailure() {
-        State currentState = state.get();
+    public void onSuccess(long permission, long durationNanos) {
+        onResult(permission, false, durationNanos);
+    }
+
+    /**
+     * 记录 acquirePermission 放行的请求失败，周期已结束时只记录耗时
+     */
+    public void onFailure(long permission, long durationNanos) {
+        onResult(permission, true, durationNanos);
+    }
 
-        switch (currentState) {
+    /**
+     * 放行后调用没有真正执行（如舱壁已满）：不计入统计，半开状态下归还试探名额
+     */
+    public void releasePermission(long permission) {
+        if (permission != NOT_PERMITTED && stateOf(permission) == State.HALF_OPEN
+                && stateWord.get() == permission) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    private void onResult(long permission, boolean failure, long durationNanos) {
+        boolean slow = slowCallDurationNanos > 0 && durationNanos >= slowCallDurationNanos;
+        if (durationNanos > 0) {
+            recorder.onCall(failure, durationNanos);
+        }
+        // 放行后状态已经转换过，结果属于已结束的周期
+        if (permission == NOT_PERMITTED || stateWord.get() != permission) {
+            return;
+        }
+
+        switch (stateOf(permission)) {
             case CLOSED:
-                int failures = failureCount.incrementAndGet();
-                if (failures >= failureThreshold) {
-                    if (state.compareAndSet(State.CLOSED, State.OPEN)) {
-                        openTimestamp = System.currentTimeMillis();
-                        log.warn("⚠️ 熔断器 [{}] 状态: CLOSED -> OPEN (触发熔断)", name);
+                window.record(failure, slow);
+                if (window.calls() >= minimumCalls
+                        && exceeds(window.calls(), window.failures(), window.slowCalls())) {
+                    if (transition(permission, State.OPEN)) {
+                        openTimestamp = currentMillis();
+                        log.warn("⚠️ 熔断器 [{}] 状态: CLOSED -> OPEN (失败率 {}%, 慢调用率 {}%)",
+                                name, rate(window.failures(), window.calls()),
+                                rate(window.slowCalls(), window.calls()));
                     }
                 }
                 break;
 
             case HALF_OPEN:
-                if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
-                    openTimestamp = System.currentTimeMillis();
-                    log.warn("⚠️ 熔断器 [{}] 状态: HALF_OPEN -> OPEN (恢复失败)", name);
+                if (failure) {
+                    halfOpenFailures.incrementAndGet();
+                }
+                if (slow) {
+                    halfOpenSlowCalls.incrementAndGet();
+                }
+                int calls = halfOpenCalls.incrementAndGet();
+                if (calls >= permittedCallsInHalfOpen) {
+                    if (exceeds(calls, halfOpenFailures.get(), halfOpenSlowCalls.get())) {
+                        if (transition(permission, State.OPEN)) {
+                            openTimestamp = currentMillis();
+                            log.warn("⚠️ 熔断器 [{}] 状态: HALF_OPEN -> OPEN (恢复失败)", name);
+                        }
+                    } else if (transition(permission, State.CLOSED)) {
+                        window.reset();
+                        log.info("✅ 熔断器 [{}] 状态: HALF_OPEN -> CLOSED (恢复正常)", name);
+                    }
                 }
                 break;
 
             default:
+                // OPEN 期间不放行请求
                 break;
         }
     }
 
+    private boolean exceeds(int calls, int failures, int slowCalls) {
+        return rate(failures, calls) >= failureRateThreshold
+                || rate(slowCalls, calls) >= slowCallRateThreshold;
+    }
+
+    private static float rate(int count, int calls) {
+        return calls > 0 ? Math.max(0, count) * 100f / calls : 0;
+    }
+
+    private void toHalfOpen(long openWord) {
+        // 先写半开时间：看到新周期的线程判断半开超时时不会读到上一轮的时间
+        halfOpenTimestamp = currentMillis();
+        // 名额最后设置：设置前新周期发不出许可，不会有试探结果写入旧计数
+        if (transition(openWord, State.HALF_OPEN)) {
+            halfOpenCalls.set(0);
+            halfOpenFailures.set(0);
+            halfOpenSlowCalls.set(0);
+            halfOpenPermits.set(permittedCallsInHalfOpen);
+            log.info("🔄 熔断器 [{}] 状态: OPEN -> HALF_OPEN (放行 {} 个试探请求)", name, permittedCallsInHalfOpen);
+        }
+    }
+
+    private long currentMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong());
+    }
+
+    private static State stateOf(long word) {
+        return STATES[(int) (word & 3)];
+    }
+
+    /**
+     * CAS 切换状态（只在状态和周期都是 expectedWord 时成功），进入新周期，
+     * 并记录转换次数和上一状态的停留时间
+     */
+    private boolean transition(long expectedWord, State to) {
+        State from = stateOf(expectedWord);
+        long next = ((expectedWord >>> 2) + 1) << 2 | to.ordinal();
+        if (!stateWord.compareAndSet(expectedWord, next)) {
+            return false;
+        }
+        long now = nanoClock.getAsLong();
+        stateNanos.addAndGet(from.ordinal(), now - stateEnteredAt.getAndSet(now));
+        transitions[from.ordinal() * STATES.length + to.ordinal()].increment();
+        return true;
+    }
+
+    private boolean acquireHalfOpenPermit() {
+        while (true) {
+            int permits = halfOpenPermits.get();
+            // 拒绝次数由 acquirePermission 统一记录
+            if (permits <= 0) {
+                return false;
+            }
+            if (halfOpenPermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
     /**
      * 执行受保护的操作
      */
     public <T> T execute(ProtectedAction<T> action, FallbackAction<T> fallback) {
-        if (!allowRequest()) {
+        long permission = acquirePermission();
+        if (permission == NOT_PERMITTED) {
             log.debug("🚫 熔断器 [{}] 拒绝请求", name);
             return fallback.execute();
         }
 
+        long start = nanoClock.getAsLong();
         try {
             T result = action.execute();
-            recordSuccess();
+            onSuccess(permission, nanoClock.getAsLong() - start);
             return result;
         } catch (Exception e) {
-            recordFailure();
+            onFailure(permission, nanoClock.getAsLong() - start);
             log.warn("❌ 熔断器 [{}] 请求失败: {}", name, e.getMessage());
             return fallback.execute();
         }
     }
 
+    /**
+     * 异步执行受保护的操作，不阻塞调用线程
+     *
+     * 在异步结果完成时记录成功 / 失败和耗时；被熔断或失败时返回降级结果。
+     * Reactor 中可用 Mono.fromCompletionStage(breaker.executeAsync(() -> mono.toFuture(), fallback)) 适配。
+     */
+    public <T> CompletionStage<T> executeAsync(Supplier<? extends CompletionStage<T>> action,
+            FallbackAction<T> fallback) {
+        return executeAsync(action).exceptionally(e -> fallback.execute());
+    }
+
+    /**
+     * 异步执行受保护的操作，被熔断时以 CallNotPermittedException 失败，操作本身的异常原样传递
+     */
+    public <T> CompletionStage<T> executeAsync(Supplier<? extends CompletionStage<T>> action) {
+        long permission = acquirePermission();
+        if (permission == NOT_PERMITTED) {
+            log.debug("🚫 熔断器 [{}] 拒绝请求", name);
+            return CompletableFuture.failedFuture(
+                    new CallNotPermittedException(name, "熔断器 [" + name + "] 已打开"));
+        }
+
+        long start = nanoClock.getAsLong();
+        CompletionStage<T> stage;
+        try {
+            stage = action.get();
+        } catch (Exception e) {
+            onFailure(permission, nanoClock.getAsLong() - start);
+            return CompletableFuture.failedFuture(e);
+        }
+        return stage.whenComplete((result, error) -> {
+            if (error == null) {
+                onSuccess(permission, nanoClock.getAsLong() - start);
+            } else {
+                onFailure(permission, nanoClock.getAsLong() - start);
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                log.warn("❌ 熔断器 [{}] 请求失败: {}", name, cause.getMessage());
+            }
+        });
+    }
+
     /**
      * 重置熔断器
      */
     public void reset() {
-        state.set(State.CLOSED);
-        failureCount.set(0);
-        successCount.set(0);
+        long current = stateWord.get();
+        while (stateOf(current) != State.CLOSED && !transition(current, State.CLOSED)) {
+            current = stateWord.get();
+        }
+        window.reset();
+        halfOpenPermits.set(0);
+        halfOpenCalls.set(0);
+        halfOpenFailures.set(0);
+        halfOpenSlowCalls.set(0);
         openTimestamp = 0;
+        halfOpenTimestamp = 0;
     }
 
     // Getters
@@ -205,23 +489,66 @@ public class CircuitBreaker {
     }
 
     public State getState() {
-        return state.get();
+        return stateOf(stateWord.get());
     }
 
+    /**
+     * 统计窗口内的失败次数
+     */
     public int getFailureCount() {
-        return failureCount.get();
+        return Math.max(0, window.failures());
     }
 
+    /**
+     * 统计窗口内的成功次数
+     */
     public int getSuccessCount() {
-        return successCount.get();
+        return Math.max(0, window.calls() - window.failures());
+    }
+
+    public int getSlowCallCount() {
+        return Math.max(0, window.slowCalls());
     }
 
-    public int getTotalRequests() {
-        return totalRequests.get();
+    public float getFailureRate() {
+        return rate(window.failures(), window.calls());
     }
 
-    public int getRejectedRequests() {
-        return rejectedRequests.get();
+    public float getSlowCallRate() {
+        return rate(window.slowCalls(), window.calls());
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * from -> to 的累计转换次数
+     */
+    public long getTransitionCount(State from, State to) {
+        return transitions[from.ordinal() * STATES.length + to.ordinal()].sum();
+    }
+
+    /**
+     * 在指定状态累计停留的时间（含当前正在停留的时间）
+     */
+    public double getTimeInStateSeconds(State target) {
+        long nanos = stateNanos.get(target.ordinal());
+        if (stateOf(stateWord.get()) == target) {
+            nanos += nanoClock.getAsLong() - stateEnteredAt.get();
+        }
+        return nanos / 1_000_000_000.0;
+    }
+
+    /**
+     * 设置调用耗时记录器（由 RateLimitService 在创建时设置一次）
+     */
+    public void setRecorder(CallRecorder recorder) {
+        this.recorder = recorder;
     }
 
     /**
@@ -230,11 +557,25 @@ public class CircuitBreaker {
     public CircuitBreakerStats getStats() {
         return new CircuitBreakerStats(
                 name,
-                state.get(),
-                failureCount.get(),
-                successCount.get(),
-                totalRequests.get(),
-                rejectedRequests.get());
+                stateOf(stateWord.get()),
+                getFailureCount(),
+                getSuccessCount(),
+                totalRequests.sum(),
+                rejectedRequests.sum(),
+                getSlowCallCount(),
+                getFailureRate(),
+                getSlowCallRate());
+    }
+
+    /**
+     * 调用耗时事件，实现必须无分配、不阻塞
+     */
+    public interface CallRecorder {
+
+        CallRecorder NOOP = (failure, durationNanos) -> {
+        };
+
+        void onCall(boolean failure, long durationNanos);
     }
 
     /**
@@ -253,6 +594,297 @@ public class CircuitBreaker {
         T execute();
     }
 
+    /**
+     * 熔断器配置
+     */
+    public static final class Config {
+        private WindowType windowType = WindowType.COUNT_BASED;
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 80;
+        private long slowCallDurationMs = 1000;
+        private long openTimeoutMs = 10000;
+        private int permittedCallsInHalfOpen = 10;
+        private long maxWaitInHalfOpenMs = 10000;
+
+        /**
+         * 默认配置：最近 100 次调用、至少 20 次，失败率 50% 或慢调用 (≥1s) 率 80% 熔断，
+         * 熔断 10 秒，半开放行 10 个试探请求、最多等待 10 秒
+         */
+        public static Config custom() {
+            return new Config();
+        }
+
+        /**
+         * 按最近 N 次调用统计
+         */
+        public Config countBasedWindow(int calls) {
+            this.windowType = WindowType.COUNT_BASED;
+            this.windowSize = calls;
+            return this;
+        }
+
+        /**
+         * 按最近 N 秒统计
+         */
+        public Config timeBasedWindow(int seconds) {
+            this.windowType = WindowType.TIME_BASED;
+            this.windowSize = seconds;
+            return this;
+        }
+
+        public Config minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Config failureRateThreshold(float percent) {
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        public Config slowCallRateThreshold(float percent) {
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * 慢调用判定时间，≤ 0 关闭慢调用检测
+         */
+        public Config slowCallDurationMs(long slowCallDurationMs) {
+            this.slowCallDurationMs = slowCallDurationMs;
+            return this;
+        }
+
+        public Config openTimeoutMs(long openTimeoutMs) {
+            this.openTimeoutMs = openTimeoutMs;
+            return this;
+        }
+
+        public Config permittedCallsInHalfOpen(int permittedCallsInHalfOpen) {
+            this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+            return this;
+        }
+
+        /**
+         * 半开状态等待试探结果的最长时间，超时后重新熔断
+         */
+        public Config maxWaitInHalfOpenMs(long maxWaitInHalfOpenMs) {
+            this.maxWaitInHalfOpenMs = maxWaitInHalfOpenMs;
+            return this;
+        }
+    }
+
+    /**
+     * 统计窗口：调用数 / 失败数 / 慢调用数
+     * 计数与各槽分开更新，并发时可能短暂不一致（甚至为负），读取时按 0 截断
+     */
+    private interface OutcomeWindow {
+        void record(boolean failure, boolean slow);
+
+        int calls();
+
+        int failures();
+
+        int slowCalls();
+
+        void reset();
+    }
+
+    /**
+     * 按次数统计：环形缓冲区每个槽记录一次调用
+     * 槽值：0 空，bit0 有调用，bit1 失败，bit2 慢调用
+     */
+    private static final class CountBasedWindow implements OutcomeWindow {
+        private static final int CALL = 1;
+        private static final int FAILURE = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray ring;
+        private final AtomicLong cursor = new AtomicLong(0);
+        private final AtomicInteger calls = new AtomicInteger(0);
+        private final AtomicInteger failures = new AtomicInteger(0);
+        private final AtomicInteger slowCalls = new AtomicInteger(0);
+
+        CountBasedWindow(int size) {
+            this.ring = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        public void record(boolean failure, boolean slow) {
+            int outcome = CALL | (failure ? FAILURE : 0) | (slow ? SLOW : 0);
+            int index = (int) (cursor.getAndIncrement() % ring.length());
+            int evicted = ring.getAndSet(index, outcome);
+
+            // 只更新有变化的计数
+            if ((evicted & CALL) == 0) {
+                calls.incrementAndGet();
+            }
+            int failureDelta = (failure ? 1 : 0) - ((evicted & FAILURE) != 0 ? 1 : 0);
+            if (failureDelta != 0) {
+                failures.addAndGet(failureDelta);
+            }
+            int slowDelta = (slow ? 1 : 0) - ((evicted & SLOW) != 0 ? 1 : 0);
+            if (slowDelta != 0) {
+                slowCalls.addAndGet(slowDelta);
+            }
+        }
+
+        @Override
+        public int calls() {
+            return calls.get();
+        }
+
+        @Override
+        public int failures() {
+            return failures.get();
+        }
+
+        @Override
+        public int slowCalls() {
+            return slowCalls.get();
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < ring.length(); i++) {
+                int evicted = ring.getAndSet(i, 0);
+                if ((evicted & CALL) != 0) {
+                    calls.decrementAndGet();
+                }
+                if ((evicted & FAILURE) != 0) {
+                    failures.decrementAndGet();
+                }
+                if ((evicted & SLOW) != 0) {
+                    slowCalls.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按时间统计：每秒一个桶，桶内所属秒的标签和三个计数打包在一个 long 中
+     * （标签 12 位，计数各 17 位，单桶每秒超过约 13 万次时计数饱和、不再增加）
+     *
+     * 写入时 CAS：标签是当前秒则累加；是更早的秒则整桶替换为当前秒；比当前秒新说明本次调用
+     * 取秒之后桶已被后面的秒复用，丢弃这条过期结果，不会写进新的一秒。
+     * 读取时只累加标签落在窗口内的桶；时间推进时由推进成功的线程清掉滑出窗口的桶，
+     * 长时间没有调用后标签不会因回绕被误认成当前秒。
+     */
+    private static final class TimeBasedWindow implements OutcomeWindow {
+        private static final int BITS = 17;
+        private static final long MASK = (1L << BITS) - 1;
+        private static final int TAG_SHIFT = 3 * BITS;
+        private static final long TAG_MASK = (1L << 12) - 1;
+
+        private final int seconds;
+        private final AtomicLongArray buckets;
+        private final AtomicLong advancedEpoch = new AtomicLong(0);
+        private final LongSupplier nanoClock;
+        private final long origin;
+
+        TimeBasedWindow(int seconds, LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            this.origin = nanoClock.getAsLong();
+            // 标签回绕周期内必须能区分窗口内外的秒
+            this.seconds = Math.min(seconds, (int) (TAG_MASK + 1) / 2);
+            this.buckets = new AtomicLongArray(this.seconds);
+        }
+
+        @Override
+        public void record(boolean failure, boolean slow) {
+            long epoch = advance();
+            long tag = epoch & TAG_MASK;
+            int index = (int) (epoch % seconds);
+            while (true) {
+                long word = buckets.get(index);
+                long wordTag = (word >>> TAG_SHIFT) & TAG_MASK;
+                long next;
+                if (word != 0 && wordTag == tag) {
+                    next = word;
+                } else if (word == 0 || ((tag - wordTag) & TAG_MASK) < (TAG_MASK + 1) / 2) {
+                    // 空桶或更早的秒：复用为当前秒
+                    next = tag << TAG_SHIFT;
+                } else {
+                    // 桶已属于更晚的秒，本次结果已滑出窗口
+                    return;
+                }
+                next = increment(next, 0, true);
+                next = increment(next, BITS, failure);
+                next = increment(next, 2 * BITS, slow);
+                if (buckets.compareAndSet(index, word, next)) {
+                    return;
+                }
+            }
+        }
+
+        private static long increment(long word, int shift, boolean present) {
+            return present && ((word >>> shift) & MASK) < MASK ? word + (1L << shift) : word;
+        }
+
+        /**
+         * 推进到当前秒，清理滑出窗口的桶
+         */
+        private long advance() {
+            long epoch = (nanoClock.getAsLong() - origin) / 1_000_000_000L;
+            long advanced = advancedEpoch.get();
+            if (epoch > advanced && advancedEpoch.compareAndSet(advanced, epoch)) {
+                // 桶 (advanced, epoch] 将被新的一秒复用；跨度超过一轮时每个桶只清一次
+                long from = Math.max(advanced + 1, epoch - seconds + 1);
+                // 空闲接近一个标签周期时，旧桶的标签可能恰好等于新的秒，只能全部清掉
+                boolean wrapped = epoch - advanced > TAG_MASK - seconds;
+                for (long e = from; e <= epoch; e++) {
+                    int index = (int) (e % seconds);
+                    long word = buckets.get(index);
+                    // 已被当前秒的写入复用的桶不清
+                    if (wrapped || ((word >>> TAG_SHIFT) & TAG_MASK) != (e & TAG_MASK)) {
+                        buckets.compareAndSet(index, word, 0);
+                    }
+                }
+            }
+            return epoch;
+        }
+
+        /**
+         * 窗口内各桶某一计数之和
+         */
+        private int sum(int shift) {
+            long epoch = advance();
+            int total = 0;
+            for (int i = 0; i < seconds; i++) {
+                long word = buckets.get(i);
+                long age = ((epoch & TAG_MASK) - ((word >>> TAG_SHIFT) & TAG_MASK)) & TAG_MASK;
+                if (word != 0 && age < seconds) {
+                    total += (int) ((word >>> shift) & MASK);
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public int calls() {
+            return sum(0);
+        }
+
+        @Override
+        public int failures() {
+            return sum(BITS);
+        }
+
+        @Override
+        public int slowCalls() {
+            return sum(2 * BITS);
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < seconds; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
     /**
      * 熔断器统计信息
      */
@@ -261,17 +893,29 @@ public class CircuitBreaker {
         private final State state;
         private final int failureCount;
         private final int successCount;
-        private final int totalRequests;
-        private final int rejectedRequests;
+        private final long totalRequests;
+        private final long rejectedRequests;
+        private final int slowCallCount;
+        private final float failureRate;
+        private final float slowCallRate;
+
+        public CircuitBreakerStats(String name, State state, int failureCount,
+                int successCount, long totalRequests, long rejectedRequests) {
+            this(name, state, failureCount, successCount, totalRequests, rejectedRequests, 0, 0, 0);
+        }
 
         public CircuitBreakerStats(String name, State state, int failureCount,
-                int successCount, int totalRequests, int rejectedRequests) {
+                int successCount, long totalRequests, long rejectedRequests,
+                int slowCallCount, float failureRate, float slowCallRate) {
             this.name = name;
             this.state = state;
             this.failureCount = failureCount;
             this.successCount = successCount;
             this.totalRequests = totalRequests;
             this.rejectedRequests = rejectedRequests;
+            this.slowCallCount = slowCallCount;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
         }
 
         public String getName() {
@@ -290,22 +934,36 @@ public class CircuitBreaker {
             return successCount;
         }
 
-        public int getTotalRequests() {
+        public long getTotalRequests() {
             return totalRequests;
         }
 
-        public int getRejectedRequests() {
+        public long getRejectedRequests() {
             return rejectedRequests;
         }
 
+        public int getSlowCallCount() {
+            return slowCallCount;
+        }
+
+        public float getFailureRate() {
+            return failureRate;
+        }
+
+        public float getSlowCallRate() {
+            return slowCallRate;
+        }
+
         public double getRejectionRate() {
             return totalRequests > 0 ? (double) rejectedRequests / totalRequests * 100 : 0;
         }
 
         @Override
         public String toString() {
-            return String.format("%s{state=%s, failures=%d, total=%d, rejected=%d (%.1f%%)}",
-                    name, state, failureCount, totalRequests, rejectedRequests, getRejectionRate());
+            return String.format(
+                    "%s{state=%s, failures=%d (%.1f%%), slow=%d (%.1f%%), total=%d, rejected=%d (%.1f%%)}",
+                    name, state, failureCount, failureRate, slowCallCount, slowCallRate,
+                    totalRequests, rejectedRequests, getRejectionRate());
         }
     }
 }
@@ -0,0 +1,21 @@
+package com.example.seckill.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 过载丢弃优先级
+ *
+ * 标注在不需要限流的处理方法或控制器上；需要限流的方法直接使用 @RateLimit(priority = ...)。
+ * 方法上的注解优先于类上的注解，都没有时按 NORMAL 处理。
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LoadShedPriority {
+
+    RateLimit.Priority value();
+}
@@ -0,0 +1,226 @@
+package com.example.seckill.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按优先级的过载丢弃（CoDel 排队延迟信号）
+ *
+ * 限流只看到达顺序，节点压满时下单、查结果和廉价的商品列表平等竞争。这里按请求的排队延迟判断过载：
+ * - Tomcat（或虚拟线程）执行器被 wrap() 包装，记录每个请求从入队到开始执行的时间
+ * - CoDel：一个 interval 内的最小排队延迟仍高于 target，说明队列无法自行排空（不是突发），判定过载
+ * - 连续过载的 interval 逐级提高丢弃等级：1 级丢弃 SHEDDABLE，2 级再丢弃 NORMAL；
+ *   恢复时每个 interval 降一级，空闲（没有出队也没有积压）期间按经过的 interval 数降级。CRITICAL 永不因过载丢弃
+ * - 过载期间排队已超过一个 interval 的非关键请求直接丢弃（客户端多半已经放弃）
+ *
+ * Retry-After 按当前积压估算：排队数 / 出队速率 + 当前排队延迟，而不是固定 1 秒。
+ */
+@Component
+public class LoadShedder {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadShedder.class);
+
+    private static final int MAX_LEVEL = 2;
+
+    /**
+     * 当前线程正在处理的请求的排队延迟（纳秒），由包装后的执行器设置
+     */
+    private static final ThreadLocal<Long> QUEUE_DELAY = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final long targetDelayNanos;
+    private final long intervalNanos;
+    private final int maxRetryAfterSeconds;
+
+    // 已入队未开始执行的任务数
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    // 当前 interval 的最小排队延迟与出队数
+    private final AtomicLong intervalMinDelay = new AtomicLong(Long.MAX_VALUE);
+    private final LongAdder intervalDequeued = new LongAdder();
+    private final AtomicLong intervalEnd;
+
+    private volatile int level;
+    private volatile long minDelayNanos;
+    private volatile double drainRatePerSecond;
+
+    private final LongAdder[] shed = new LongAdder[RateLimit.Priority.values().length];
+
+    public LoadShedder(
+            @Value("${seckill.ratelimit.shedding.enabled:true}") boolean enabled,
+            @Value("${seckill.ratelimit.shedding.target-delay-ms:5}") long targetDelayMs,
+            @Value("${seckill.ratelimit.shedding.interval-ms:100}") long intervalMs,
+            @Value("${seckill.ratelimit.shedding.max-retry-after-seconds:30}") int maxRetryAfterSeconds) {
+        this.enabled = enabled;
+        this.targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(targetDelayMs);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.maxRetryAfterSeconds = Math.max(1, maxRetryAfterSeconds);
+        this.intervalEnd = new AtomicLong(System.nanoTime() + intervalNanos);
+        for (int i = 0; i < shed.length; i++) {
+            shed[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 包装请求执行器，记录排队延迟
+     */
+    public Executor wrap(Executor delegate) {
+        return task -> execute(delegate, task);
+    }
+
+    /**
+     * 通过 delegate 执行 task，记录从提交到开始执行的排队延迟
+     */
+    public void execute(Executor delegate, Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        pending.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                long delay = System.nanoTime() - enqueuedAt;
+                onDequeue(delay);
+                QUEUE_DELAY.set(delay);
+                try {
+                    task.run();
+                } finally {
+                    QUEUE_DELAY.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void onDequeue(long delay) {
+        pending.decrementAndGet();
+        intervalDequeued.increment();
+
+        long min = intervalMinDelay.get();
+        while (delay < min && !intervalMinDelay.compareAndSet(min, delay)) {
+            min = intervalMinDelay.get();
+        }
+
+        advance(System.nanoTime());
+    }
+
+    /**
+     * 当前 interval 已到期时结算（出队和判断丢弃时都会调用，空闲期间也能按时间降级）
+     */
+    private void advance(long now) {
+        long end = intervalEnd.get();
+        if (now - end >= 0 && intervalEnd.compareAndSet(end, now + intervalNanos)) {
+            closeInterval(now - end + intervalNanos);
+        }
+    }
+
+    /**
+     * 结算一个 interval：更新过载等级和出队速率
+     *
+     * @param elapsedNanos 距上次结算的时间，空闲后可能跨越多个 interval
+     */
+    private void closeInterval(long elapsedNanos) {
+        long min = intervalMinDelay.getAndSet(Long.MAX_VALUE);
+        long dequeued = intervalDequeued.sumThenReset();
+        minDelayNanos = min == Long.MAX_VALUE ? 0 : min;
+
+        double rate = dequeued * 1_000_000_000.0 / elapsedNanos;
+        drainRatePerSecond = drainRatePerSecond == 0 ? rate : drainRatePerSecond * 0.5 + rate * 0.5;
+
+        int previous = level;
+        int next;
+        if (min == Long.MAX_VALUE && pending.get() > 0) {
+            // 没有出队但仍有积压：工作线程全部卡住，保持当前等级
+            next = previous;
+        } else if (minDelayNanos > targetDelayNanos) {
+            next = Math.min(previous + 1, MAX_LEVEL);
+        } else {
+            // 每经过一个未过载的 interval 降一级
+            long intervals = Math.max(1, elapsedNanos / intervalNanos);
+            next = (int) Math.max(previous - intervals, 0);
+        }
+        if (next != previous) {
+            level = next;
+            if (next > previous) {
+                log.warn("🚦 过载丢弃等级 {} -> {} (最小排队延迟 {}ms, 积压 {})",
+                        previous, next, TimeUnit.NANOSECONDS.toMillis(minDelayNanos), pending.get());
+            } else {
+                log.info("🚦 过载丢弃等级 {} -> {}", previous, next);
+            }
+        }
+    }
+
+    /**
+     * 当前请求是否应该丢弃
+     */
+    public boolean shouldShed(RateLimit.Priority priority) {
+        if (!enabled || priority == RateLimit.Priority.CRITICAL) {
+            return false;
+        }
+        if (level == 0) {
+            return false;
+        }
+        advance(System.nanoTime());
+        int current = level;
+        if (current == 0) {
+            return false;
+        }
+
+        Long delay = QUEUE_DELAY.get();
+        boolean drop = priority == RateLimit.Priority.SHEDDABLE
+                || current >= MAX_LEVEL
+                || (delay != null && delay > intervalNanos);
+        if (drop) {
+            shed[priority.ordinal()].increment();
+        }
+        return drop;
+    }
+
+    /**
+     * 建议客户端多少秒后重试：排空当前积压所需时间
+     */
+    public int retryAfterSeconds() {
+        double rate = drainRatePerSecond;
+        int backlog = pending.get();
+        double seconds = minDelayNanos / 1_000_000_000.0
+                + (rate > 0 ? backlog / rate : 0);
+        return (int) Math.max(1, Math.min(maxRetryAfterSeconds, Math.ceil(seconds)));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * 过载丢弃统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("level", level);
+        stats.put("minQueueDelayMs", minDelayNanos / 1_000_000.0);
+        stats.put("pending", pending.get());
+        stats.put("drainRatePerSecond", drainRatePerSecond);
+        stats.put("retryAfterSeconds", retryAfterSeconds());
+        Map<String, Long> shedCounts = new LinkedHashMap<>();
+        for (RateLimit.Priority priority : RateLimit.Priority.values()) {
+            shedCounts.put(priority.name(), shed[priority.ordinal()].sum());
+        }
+        stats.put("shed", shedCounts);
+        return stats;
+    }
+}
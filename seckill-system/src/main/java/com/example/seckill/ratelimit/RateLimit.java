@@ -23,9 +23,26 @@ public @interface RateLimit {
 
     /**
      * 每秒允许的请求数 (QPS)
+     * 分布式算法下为集群总 QPS
      */
     int qps() default 100;
 
+    /**
+     * 限流 key（SpEL），非空时按 key 分别限流，例如：
+     * - "#userId"：按 @RequestParam userId
+     * - "#ip"：按客户端 IP
+     * - "#request.getHeader('X-Device-Id')"：按请求头
+     * 可用变量见 RateLimitKeyResolver
+     */
+    String key() default "";
+
+    /**
+     * 每个 key 每秒允许的请求数
+     * 大于 0 时每个 key 按该值限流，同时整体仍受 qps() 限制；
+     * 不设置时每个 key 直接按 qps() 限流
+     */
+    int keyQps() default 0;
+
     /**
      * 限流算法类型
      */
@@ -36,6 +53,31 @@ public @interface RateLimit {
      */
     String message() default "请求太频繁，请稍后再试";
 
+    /**
+     * 过载时的优先级，也可以单独用 @LoadShedPriority 标注
+     */
+    Priority priority() default Priority.NORMAL;
+
+    /**
+     * 请求优先级，过载时从低到高依次丢弃
+     */
+    enum Priority {
+        /**
+         * 关键请求（下单、查询秒杀结果）- 不因过载丢弃，只受限流约束
+         */
+        CRITICAL,
+
+        /**
+         * 普通请求 - 持续过载时丢弃
+         */
+        NORMAL,
+
+        /**
+         * 可丢弃请求（商品列表等廉价读）- 一出现排队就丢弃
+         */
+        SHEDDABLE
+    }
+
     /**
      * 限流算法枚举
      */
@@ -48,6 +90,22 @@ public @interface RateLimit {
         /**
          * 滑动窗口 - 精确限流
          */
-        SLIDING_WINDOW
+        SLIDING_WINDOW,
+
+        /**
+         * 分布式令牌桶 (Redis GCRA) - 所有节点共享配额
+         */
+        REDIS_TOKEN_BUCKET,
+
+        /**
+         * 分布式滑动窗口 (Redis) - 所有节点共享配额
+         */
+        REDIS_SLIDING_WINDOW,
+
+        /**
+         * 自适应并发限流 - 按实测 RTT 自动调整在途请求上限，qps() 作为上限的最大值
+         * 按 key 限流时每个 key 退化为令牌桶
+         */
+        ADAPTIVE
     }
 }
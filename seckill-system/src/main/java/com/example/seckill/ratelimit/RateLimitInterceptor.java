@@ -1,12 +1,13 @@
 package com.example.seckill.ratelimit;
 
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import java.io.IOException;
 
@@ -14,23 +15,39 @@ import java.io.IOException;
  * 限流拦截器
  * 
  * 拦截带有 @RateLimit 注解的请求，执行限流检查
+ *
+ * 自适应并发限流 (ADAPTIVE) 需要知道请求何时结束：preHandle 占用名额并记录开始时间，
+ * afterCompletion 释放名额并上报 RTT（失败或 5xx 只释放不采样）；
+ * 异步请求在 afterConcurrentHandlingStarted 中释放，异步分派不再重复限流。
+ *
+ * 限流之前先做过载丢弃（LoadShedder）：按 @LoadShedPriority / @RateLimit(priority) 分级，
+ * 过载时从 SHEDDABLE 开始丢弃；429 的 Retry-After 按当前积压估算。
  */
 @Component
-public class RateLimitInterceptor implements HandlerInterceptor {
+public class RateLimitInterceptor implements AsyncHandlerInterceptor {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimitInterceptor.class);
 
+    private static final String ADAPTIVE_LIMITER = RateLimitInterceptor.class.getName() + ".adaptiveLimiter";
+    private static final String ADAPTIVE_START = RateLimitInterceptor.class.getName() + ".adaptiveStart";
+
     private final RateLimitService rateLimitService;
+    private final RateLimitKeyResolver keyResolver;
+    private final LoadShedder loadShedder;
 
-    public RateLimitInterceptor(RateLimitService rateLimitService) {
+    public RateLimitInterceptor(RateLimitService rateLimitService, RateLimitKeyResolver keyResolver,
+            LoadShedder loadShedder) {
         this.rateLimitService = rateLimitService;
+        this.keyResolver = keyResolver;
+        this.loadShedder = loadShedder;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
             Object handler) throws Exception {
-        // 只处理 Controller 方法
-        if (!(handler instanceof HandlerMethod handlerMethod)) {
+        // 只处理 Controller 方法；异步分派在首次分派时已经限流
+        if (!(handler instanceof HandlerMethod handlerMethod)
+                || request.getDispatcherType() == DispatcherType.ASYNC) {
             return true;
         }
 
@@ -40,39 +57,134 @@ public class RateLimitInterceptor implements HandlerInterceptor {
             rateLimit = handlerMethod.getBeanType().getAnnotation(RateLimit.class);
         }
 
+        // 过载丢弃：低优先级请求先让路
+        RateLimit.Priority priority = priorityOf(handlerMethod, rateLimit);
+        if (loadShedder.shouldShed(priority)) {
+            log.warn("🚫 过载丢弃: {} {} (优先级: {}, 等级: {})",
+                    request.getMethod(), request.getRequestURI(), priority, loadShedder.getLevel());
+            writeTooManyRequests(response, "服务繁忙，请稍后再试", -1);
+            return false;
+        }
+
         // 没有注解，直接通过
         if (rateLimit == null) {
             return true;
         }
 
-        // 获取限流器并尝试获取许可
-        RateLimiter limiter = rateLimitService.getLimiter(rateLimit);
-        if (limiter.tryAcquire()) {
-            return true;
+        // 整体限流先于按 key 限流：被整体拒绝的请求不消耗单个 key 的配额
+        // 只配置 key、没有 keyQps 时只按 key 限流
+        boolean keyed = !rateLimit.key().isEmpty();
+        RateLimiter limiter = null;
+        if (!keyed || rateLimit.keyQps() > 0) {
+            limiter = rateLimitService.getLimiter(rateLimit);
+            if (!limiter.tryAcquire()) {
+                log.warn("🚫 请求被限流: {} {} (规则: {})",
+                        request.getMethod(), request.getRequestURI(), rateLimit.name());
+                handleRateLimited(response, rateLimit, rateLimit.qps());
+                return false;
+            }
+        }
+
+        if (keyed) {
+            String key = keyResolver.resolve(rateLimit.key(), request, handlerMethod);
+            if (!rateLimitService.getKeyedLimiter(rateLimit, key).tryAcquire()) {
+                // 自适应限流已占用的并发名额要归还
+                if (limiter instanceof AdaptiveConcurrencyLimiter adaptive) {
+                    adaptive.release();
+                }
+                log.warn("🚫 请求被限流: {} {} (规则: {}, key: {})",
+                        request.getMethod(), request.getRequestURI(), rateLimit.name(), key);
+                handleRateLimited(response, rateLimit,
+                        rateLimit.keyQps() > 0 ? rateLimit.keyQps() : rateLimit.qps());
+                return false;
+            }
+        }
+
+        if (limiter instanceof AdaptiveConcurrencyLimiter) {
+            request.setAttribute(ADAPTIVE_LIMITER, limiter);
+            request.setAttribute(ADAPTIVE_START, System.nanoTime());
         }
+        return true;
+    }
 
-        // 被限流，返回 429 状态码
-        log.warn("🚫 请求被限流: {} {} (规则: {})",
-                request.getMethod(), request.getRequestURI(), rateLimit.name());
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+            Object handler, Exception ex) {
+        AdaptiveConcurrencyLimiter limiter = takeAdaptiveLimiter(request);
+        if (limiter == null) {
+            return;
+        }
+        if (ex == null && response.getStatus() < 500) {
+            long start = (Long) request.getAttribute(ADAPTIVE_START);
+            limiter.onSuccess(System.nanoTime() - start);
+        } else {
+            limiter.release();
+        }
+    }
 
-        handleRateLimited(response, rateLimit);
-        return false;
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        // 异步请求不占用 Servlet 线程，挂起期间不计入在途
+        AdaptiveConcurrencyLimiter limiter = takeAdaptiveLimiter(request);
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    private AdaptiveConcurrencyLimiter takeAdaptiveLimiter(HttpServletRequest request) {
+        Object limiter = request.getAttribute(ADAPTIVE_LIMITER);
+        if (limiter == null) {
+            return null;
+        }
+        request.removeAttribute(ADAPTIVE_LIMITER);
+        return (AdaptiveConcurrencyLimiter) limiter;
+    }
+
+    /**
+     * 请求优先级：方法上的 @LoadShedPriority > 方法上的 @RateLimit > 类上的 @LoadShedPriority > 类上的 @RateLimit
+     */
+    private static RateLimit.Priority priorityOf(HandlerMethod handlerMethod, RateLimit rateLimit) {
+        LoadShedPriority priority = handlerMethod.getMethodAnnotation(LoadShedPriority.class);
+        if (priority != null) {
+            return priority.value();
+        }
+        if (rateLimit != null && handlerMethod.hasMethodAnnotation(RateLimit.class)) {
+            return rateLimit.priority();
+        }
+        priority = handlerMethod.getBeanType().getAnnotation(LoadShedPriority.class);
+        if (priority != null) {
+            return priority.value();
+        }
+        return rateLimit != null ? rateLimit.priority() : RateLimit.Priority.NORMAL;
     }
 
     /**
      * 处理被限流的请求
      */
-    private void handleRateLimited(HttpServletResponse response, RateLimit rateLimit)
+    private void handleRateLimited(HttpServletResponse response, RateLimit rateLimit, int limit)
+            throws IOException {
+        writeTooManyRequests(response, rateLimit.message(), limit);
+    }
+
+    /**
+     * 返回 429，Retry-After 按当前积压估算
+     *
+     * @param limit 限流阈值，小于 0 时不输出 X-RateLimit-* 头
+     */
+    private void writeTooManyRequests(HttpServletResponse response, String message, int limit)
             throws IOException {
         response.setStatus(429); // Too Many Requests
         response.setContentType("application/json;charset=UTF-8");
-        response.setHeader("X-RateLimit-Limit", String.valueOf(rateLimit.qps()));
-        response.setHeader("X-RateLimit-Remaining", "0");
-        response.setHeader("Retry-After", "1");
+        if (limit >= 0) {
+            response.setHeader("X-RateLimit-Limit", String.valueOf(limit));
+            response.setHeader("X-RateLimit-Remaining", "0");
+        }
+        response.setHeader("Retry-After", String.valueOf(loadShedder.retryAfterSeconds()));
 
         String json = String.format(
                 "{\"code\":429,\"message\":\"%s\",\"data\":null}",
-                rateLimit.message());
+                message);
         response.getWriter().write(json);
     }
 }
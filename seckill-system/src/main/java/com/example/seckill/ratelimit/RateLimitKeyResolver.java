@@ -0,0 +1,265 @@
+package com.example.seckill.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 限流 key 解析
+ *
+ * 计算 @RateLimit(key = "...") 中的 SpEL 表达式，可用变量：
+ * - #request：HttpServletRequest
+ * - #ip：客户端 IP。只有直连地址属于 trustedProxies 时才读取 X-Forwarded-For，
+ *   从右往左跳过可信代理，取第一个不可信的地址；否则直接使用连接的远端地址，
+ *   客户端伪造的 X-Forwarded-For 无法绕过按 IP 限流
+ * - #参数名：处理方法的 @RequestParam / @PathVariable / @RequestHeader 参数（字符串值）
+ *
+ * 拦截器执行时方法参数尚未绑定，这里按参数注解从请求中直接取值。
+ * 表达式解析后缓存，并开启 SpEL 编译（MIXED），热路径上不重复解析。
+ */
+@Component
+public class RateLimitKeyResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitKeyResolver.class);
+
+    /**
+     * key 表达式结果为空时使用的 key（匿名请求共享一个限流器）
+     */
+    public static final String ANONYMOUS = "_";
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F:.]*:[0-9a-fA-F:.]*");
+
+    private final ExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
+
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private final Map<Method, ParameterSource[]> parameterSources = new ConcurrentHashMap<>();
+
+    // 可信代理（IP 或 CIDR），为空时不读取 X-Forwarded-For
+    private final List<Cidr> trustedProxies;
+
+    public RateLimitKeyResolver(@Value("${seckill.ratelimit.trusted-proxies:}") List<String> trustedProxies) {
+        List<Cidr> parsed = new ArrayList<>();
+        for (String entry : trustedProxies) {
+            if (StringUtils.hasText(entry)) {
+                parsed.add(Cidr.parse(entry.trim()));
+            }
+        }
+        this.trustedProxies = List.copyOf(parsed);
+    }
+
+    /**
+     * 计算限流 key
+     */
+    public String resolve(String keyExpression, HttpServletRequest request, HandlerMethod handlerMethod) {
+        Expression expression = expressions.computeIfAbsent(keyExpression, parser::parseExpression);
+
+        EvaluationContext context = new StandardEvaluationContext();
+        context.setVariable("request", request);
+        context.setVariable("ip", clientIp(request));
+        bindParameters(context, request, handlerMethod);
+
+        try {
+            Object value = expression.getValue(context);
+            String key = value == null ? null : value.toString();
+            return StringUtils.hasLength(key) ? key : ANONYMOUS;
+        } catch (Exception e) {
+            log.warn("限流 key 表达式计算失败: {} ({})", keyExpression, e.getMessage());
+            return ANONYMOUS;
+        }
+    }
+
+    /**
+     * 客户端 IP
+     * 直连地址是可信代理时，从 X-Forwarded-For 右侧（离本节点最近的一跳）开始跳过可信代理
+     */
+    public String clientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (trustedProxies.isEmpty() || !isTrusted(parseLiteral(remote))) {
+            return remote;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (!StringUtils.hasText(forwarded)) {
+            return remote;
+        }
+
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            InetAddress address = parseLiteral(hop);
+            if (address == null) {
+                // 不是合法地址（代理链被篡改），不采用
+                return remote;
+            }
+            if (i == 0 || !isTrusted(address)) {
+                return hop;
+            }
+        }
+        return remote;
+    }
+
+    private boolean isTrusted(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        for (Cidr cidr : trustedProxies) {
+            if (cidr.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只解析 IP 字面量（不触发 DNS 查询），其他内容返回 null
+     */
+    private static InetAddress parseLiteral(String value) {
+        try {
+            if (IPV4.matcher(value).matches()) {
+                return InetAddress.getByName(value);
+            }
+            if (IPV6.matcher(value).matches()) {
+                // 方括号形式只按 IPv6 字面量解析
+                return InetAddress.getByName("[" + value + "]");
+            }
+        } catch (UnknownHostException e) {
+            // 非法地址
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindParameters(EvaluationContext context, HttpServletRequest request,
+            HandlerMethod handlerMethod) {
+        ParameterSource[] sources = parameterSources.computeIfAbsent(handlerMethod.getMethod(),
+                RateLimitKeyResolver::parameterSources);
+        if (sources.length == 0) {
+            return;
+        }
+
+        Object attribute = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Map<String, String> pathVariables = attribute instanceof Map
+                ? (Map<String, String>) attribute
+                : Collections.emptyMap();
+
+        for (ParameterSource source : sources) {
+            String value = switch (source.kind()) {
+                case PARAM -> request.getParameter(source.requestName());
+                case PATH -> pathVariables.get(source.requestName());
+                case HEADER -> request.getHeader(source.requestName());
+            };
+            context.setVariable(source.variableName(), value);
+        }
+    }
+
+    private static ParameterSource[] parameterSources(Method method) {
+        Parameter[] parameters = method.getParameters();
+        ParameterSource[] sources = new ParameterSource[parameters.length];
+        int count = 0;
+        for (Parameter parameter : parameters) {
+            String variableName = parameter.getName();
+            RequestParam requestParam = parameter.getAnnotation(RequestParam.class);
+            PathVariable pathVariable = parameter.getAnnotation(PathVariable.class);
+            RequestHeader requestHeader = parameter.getAnnotation(RequestHeader.class);
+            if (requestParam != null) {
+                sources[count++] = new ParameterSource(variableName,
+                        firstNonEmpty(requestParam.name(), requestParam.value(), variableName), Kind.PARAM);
+            } else if (pathVariable != null) {
+                sources[count++] = new ParameterSource(variableName,
+                        firstNonEmpty(pathVariable.name(), pathVariable.value(), variableName), Kind.PATH);
+            } else if (requestHeader != null) {
+                sources[count++] = new ParameterSource(variableName,
+                        firstNonEmpty(requestHeader.name(), requestHeader.value(), variableName), Kind.HEADER);
+            }
+        }
+        ParameterSource[] result = new ParameterSource[count];
+        System.arraycopy(sources, 0, result, 0, count);
+        return result;
+    }
+
+    private static String firstNonEmpty(String... candidates) {
+        for (String candidate : candidates) {
+            if (StringUtils.hasLength(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private enum Kind {
+        PARAM, PATH, HEADER
+    }
+
+    /**
+     * 地址段（单个 IP 视为 /32 或 /128）
+     */
+    private record Cidr(byte[] network, int prefix) {
+
+        static Cidr parse(String value) {
+            int slash = value.indexOf('/');
+            String ip = slash >= 0 ? value.substring(0, slash) : value;
+            InetAddress address = parseLiteral(ip);
+            if (address == null) {
+                throw new IllegalArgumentException("seckill.ratelimit.trusted-proxies 中的地址不合法: " + value);
+            }
+            byte[] network = address.getAddress();
+            int prefix = slash >= 0 ? Integer.parseInt(value.substring(slash + 1)) : network.length * 8;
+            if (prefix < 0 || prefix > network.length * 8) {
+                throw new IllegalArgumentException("seckill.ratelimit.trusted-proxies 中的前缀长度不合法: " + value);
+            }
+            return new Cidr(network, prefix);
+        }
+
+        boolean contains(InetAddress address) {
+            byte[] bytes = address.getAddress();
+            if (bytes.length != network.length) {
+                return false;
+            }
+            int fullBytes = prefix / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (bytes[i] != network[i]) {
+                    return false;
+                }
+            }
+            int remainingBits = prefix % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - remainingBits);
+            return (bytes[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+    }
+
+    /**
+     * 方法参数与请求中取值位置的对应关系
+     */
+    private record ParameterSource(String variableName, String requestName, Kind kind) {
+    }
+}
@@ -1,11 +1,21 @@
 package com.example.seckill.ratelimit;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.example.seckill.monitor.ThreadPoolMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * 限流管理服务
@@ -14,6 +24,15 @@ import java.util.concurrent.ConcurrentHashMap;
  * - 根据配置创建限流器
  * - 提供限流检查服务
  * - 管理熔断器
+ *
+ * 分布式限流器 (REDIS_*) 在所有节点共享配额，按批预取许可，Redis 不可用时降级为本地限流。
+ *
+ * 按 key 限流（@RateLimit(key = ...)）的限流器放在有界的 Caffeine 缓存中：
+ * 超过上限按 W-TinyLFU 淘汰，空闲一段时间自动过期，百万级不同 key 下内存保持平稳。
+ * 被淘汰的 key 再次出现时重新创建（满桶），对单个 key 相当于放宽一次突发。
+ *
+ * 舱壁（信号量 / 线程池）按名称创建，状态注册到 ThreadPoolMonitor；
+ * 与限流器、熔断器一起通过 @ResiliencePolicy 组合使用。
  */
 @Service
 public class RateLimitService {
@@ -30,6 +49,56 @@ public class RateLimitService {
      */
     private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
 
+    /**
+     * 舱壁缓存
+     */
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 按 key 限流的限流器（有界、空闲过期）
+     */
+    private final Cache<String, RateLimiter> keyedLimiters;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ResilienceMetrics metrics;
+    private final ThreadPoolMonitor threadPoolMonitor;
+    private final double prefetchRatio;
+    private final long prefetchLeaseMs;
+    private final long degradeRetryMs;
+    private final int clusterNodes;
+    private final int adaptiveInitialLimit;
+    private final int adaptiveMinLimit;
+    private final long adaptiveWindowMs;
+
+    public RateLimitService(StringRedisTemplate redisTemplate,
+            ResilienceMetrics metrics,
+            ThreadPoolMonitor threadPoolMonitor,
+            @Value("${seckill.ratelimit.redis.prefetch-ratio:0.05}") double prefetchRatio,
+            @Value("${seckill.ratelimit.redis.prefetch-lease-ms:100}") long prefetchLeaseMs,
+            @Value("${seckill.ratelimit.redis.degrade-retry-ms:1000}") long degradeRetryMs,
+            @Value("${seckill.ratelimit.redis.cluster-nodes:1}") int clusterNodes,
+            @Value("${seckill.ratelimit.keyed.max-keys:100000}") long maxKeys,
+            @Value("${seckill.ratelimit.keyed.idle-expire-seconds:60}") long idleExpireSeconds,
+            @Value("${seckill.ratelimit.adaptive.initial-limit:20}") int adaptiveInitialLimit,
+            @Value("${seckill.ratelimit.adaptive.min-limit:5}") int adaptiveMinLimit,
+            @Value("${seckill.ratelimit.adaptive.window-ms:100}") long adaptiveWindowMs) {
+        this.redisTemplate = redisTemplate;
+        this.metrics = metrics;
+        this.threadPoolMonitor = threadPoolMonitor;
+        this.prefetchRatio = prefetchRatio;
+        this.prefetchLeaseMs = prefetchLeaseMs;
+        this.degradeRetryMs = degradeRetryMs;
+        this.clusterNodes = Math.max(1, clusterNodes);
+        this.adaptiveInitialLimit = adaptiveInitialLimit;
+        this.adaptiveMinLimit = adaptiveMinLimit;
+        this.adaptiveWindowMs = adaptiveWindowMs;
+        this.keyedLimiters = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofSeconds(idleExpireSeconds))
+                .recordStats()
+                .build();
+    }
+
     /**
      * 获取或创建令牌桶限流器
      */
@@ -37,7 +106,9 @@ public class RateLimitService {
         return rateLimiters.computeIfAbsent(name + ":token_bucket",
                 k -> {
                     log.info("📊 创建令牌桶限流器: {} (QPS={})", name, qps);
-                    return new TokenBucketRateLimiter(qps * 2, qps);
+                    RateLimiter limiter = newTokenBucket(name, qps);
+                    metrics.bindLimiter(name, limiter);
+                    return limiter;
                 });
     }
 
@@ -48,29 +119,150 @@ public class RateLimitService {
         return rateLimiters.computeIfAbsent(name + ":sliding_window",
                 k -> {
                     log.info("📊 创建滑动窗口限流器: {} (QPS={})", name, qps);
-                    return new SlidingWindowRateLimiter(qps);
+                    RateLimiter limiter = new SlidingWindowRateLimiter(qps);
+                    metrics.bindLimiter(name, limiter);
+                    return limiter;
+                });
+    }
+
+    /**
+     * 获取或创建分布式限流器
+     * 降级用的本地限流器按节点数均分集群配额
+     */
+    public RateLimiter getRedisLimiter(String name, int qps, RedisRateLimiter.Type type) {
+        String suffix = type == RedisRateLimiter.Type.GCRA ? ":redis_token_bucket" : ":redis_sliding_window";
+        return rateLimiters.computeIfAbsent(name + suffix,
+                k -> {
+                    int batch = (int) Math.max(1, Math.ceil(qps * prefetchRatio));
+                    int localQps = Math.max(1, qps / clusterNodes);
+                    RateLimiter fallback = type == RedisRateLimiter.Type.GCRA
+                            ? new TokenBucketRateLimiter(localQps * 2L, localQps)
+                            : new SlidingWindowRateLimiter(localQps);
+                    log.info("📊 创建分布式限流器: {} ({}, 集群QPS={}, 预取={})", name, type, qps, batch);
+                    RateLimiter limiter = new RedisRateLimiter(name, type, qps, qps * 2L, redisTemplate, fallback,
+                            batch, prefetchLeaseMs, degradeRetryMs);
+                    metrics.bindLimiter(name, limiter);
+                    return limiter;
+                });
+    }
+
+    /**
+     * 获取或创建自适应并发限流器
+     *
+     * @param maxLimit 并发上限的最大值
+     */
+    public AdaptiveConcurrencyLimiter getAdaptiveLimiter(String name, int maxLimit) {
+        return (AdaptiveConcurrencyLimiter) rateLimiters.computeIfAbsent(name + ":adaptive",
+                k -> {
+                    log.info("📊 创建自适应并发限流器: {} (初始={}, 范围=[{}, {}])",
+                            name, adaptiveInitialLimit, adaptiveMinLimit, maxLimit);
+                    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                            adaptiveInitialLimit, adaptiveMinLimit, maxLimit, adaptiveWindowMs);
+                    metrics.bindLimiter(name, limiter);
+                    return limiter;
                 });
     }
 
     /**
      * 根据注解配置获取限流器
+     * ADAPTIVE 返回的并发限流器需要调用方在请求结束时归还名额，只供本包的拦截器 / 切面使用
      */
-    public RateLimiter getLimiter(RateLimit config) {
-        return switch (config.algorithm()) {
-            case TOKEN_BUCKET -> getTokenBucketLimiter(config.name(), config.qps());
-            case SLIDING_WINDOW -> getSlidingWindowLimiter(config.name(), config.qps());
+    RateLimiter getLimiter(RateLimit config) {
+        return getLimiter(config.name(), config.qps(), config.algorithm());
+    }
+
+    /**
+     * 获取按 key 限流的限流器
+     *
+     * 本地算法按 key 创建轻量实例（令牌桶约 80 字节；滑动窗口不分条），
+     * 分布式算法按 key 使用独立的 Redis key。
+     */
+    public RateLimiter getKeyedLimiter(RateLimit config, String key) {
+        int qps = config.keyQps() > 0 ? config.keyQps() : config.qps();
+        String cacheKey = config.name() + ':' + config.algorithm().ordinal() + ':' + key;
+        RateLimiter limiter = keyedLimiters.getIfPresent(cacheKey);
+        if (limiter != null) {
+            return limiter;
+        }
+        return keyedLimiters.get(cacheKey, k -> createKeyedLimiter(config.name() + ':' + key, qps, config.algorithm()));
+    }
+
+    private RateLimiter createKeyedLimiter(String name, int qps, RateLimit.Algorithm algorithm) {
+        return switch (algorithm) {
+            case TOKEN_BUCKET, ADAPTIVE -> newTokenBucket(name, qps);
+            case SLIDING_WINDOW -> new SlidingWindowRateLimiter(qps, 1000, 10, 1, System::currentTimeMillis);
+            case REDIS_TOKEN_BUCKET, REDIS_SLIDING_WINDOW -> {
+                RedisRateLimiter.Type type = algorithm == RateLimit.Algorithm.REDIS_TOKEN_BUCKET
+                        ? RedisRateLimiter.Type.GCRA
+                        : RedisRateLimiter.Type.SLIDING_WINDOW;
+                int localQps = Math.max(1, qps / clusterNodes);
+                yield new RedisRateLimiter(name, type, qps, qps * 2L, redisTemplate,
+                        new TokenBucketRateLimiter(localQps * 2L, localQps),
+                        (int) Math.max(1, Math.ceil(qps * prefetchRatio)), prefetchLeaseMs, degradeRetryMs);
+            }
         };
     }
 
     /**
-     * 尝试获取限流许可
+     * 创建令牌桶（容量为 2 倍 QPS）
+     * 令牌桶要求速率大于 0，调用方传入的 QPS 不大于 0 时按 1 处理，不在请求路径上抛异常
+     */
+    private TokenBucketRateLimiter newTokenBucket(String name, int qps) {
+        if (qps <= 0) {
+            log.warn("⚠️ 限流器 {} 的 QPS={} 不合法，按 1 处理", name, qps);
+            qps = 1;
+        }
+        return new TokenBucketRateLimiter(qps * 2L, qps);
+    }
+
+    /**
+     * 按 key 限流器的缓存统计
+     */
+    public Map<String, Object> getKeyedLimiterStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", keyedLimiters.estimatedSize());
+        stats.put("hitRate", keyedLimiters.stats().hitRate());
+        stats.put("evictions", keyedLimiters.stats().evictionCount());
+        return stats;
+    }
+
+    /**
+     * 尝试获取限流许可（按速率限流的算法）
+     * ADAPTIVE 的名额必须在调用结束时归还，不能用这种只获取不归还的方式，使用 getAdaptiveLimiter
      */
     public boolean tryAcquire(String name, int qps, RateLimit.Algorithm algorithm) {
-        RateLimiter limiter = switch (algorithm) {
+        return getLimiter(name, qps, requireRateBased(algorithm)).tryAcquire();
+    }
+
+    /**
+     * 异步获取限流许可（不阻塞调用线程，按速率限流的算法）
+     *
+     * @param timeoutMs 最长等待时间，0 表示不等待
+     */
+    public CompletionStage<Boolean> acquireAsync(String name, int qps, RateLimit.Algorithm algorithm,
+            long timeoutMs) {
+        return getLimiter(name, qps, requireRateBased(algorithm)).acquireAsync(1, timeoutMs);
+    }
+
+    private static RateLimit.Algorithm requireRateBased(RateLimit.Algorithm algorithm) {
+        if (algorithm == RateLimit.Algorithm.ADAPTIVE) {
+            throw new IllegalArgumentException("ADAPTIVE 是并发限流，名额需要在调用结束时归还，请使用 getAdaptiveLimiter");
+        }
+        return algorithm;
+    }
+
+    /**
+     * 按名称、QPS 和算法获取限流器
+     * ADAPTIVE 返回的并发限流器需要调用方在请求结束时归还名额，只供本包的拦截器 / 切面使用
+     */
+    RateLimiter getLimiter(String name, int qps, RateLimit.Algorithm algorithm) {
+        return switch (algorithm) {
             case TOKEN_BUCKET -> getTokenBucketLimiter(name, qps);
             case SLIDING_WINDOW -> getSlidingWindowLimiter(name, qps);
+            case REDIS_TOKEN_BUCKET -> getRedisLimiter(name, qps, RedisRateLimiter.Type.GCRA);
+            case REDIS_SLIDING_WINDOW -> getRedisLimiter(name, qps, RedisRateLimiter.Type.SLIDING_WINDOW);
+            case ADAPTIVE -> getAdaptiveLimiter(name, qps);
         };
-        return limiter.tryAcquire();
     }
 
     /**
@@ -80,7 +272,7 @@ public class RateLimitService {
         return circuitBreakers.computeIfAbsent(name,
                 k -> {
                     log.info("🔌 创建熔断器: {}", name);
-                    return new CircuitBreaker(name);
+                    return bind(new CircuitBreaker(name));
                 });
     }
 
@@ -93,10 +285,26 @@ public class RateLimitService {
                 k -> {
                     log.info("🔌 创建熔断器: {} (失败阈值={}, 恢复阈值={}, 超时={}ms)",
                             name, failureThreshold, successThreshold, openTimeoutMs);
-                    return new CircuitBreaker(name, failureThreshold, successThreshold, openTimeoutMs);
+                    return bind(new CircuitBreaker(name, failureThreshold, successThreshold, openTimeoutMs));
+                });
+    }
+
+    /**
+     * 获取或创建熔断器（滑动窗口配置）
+     */
+    public CircuitBreaker getCircuitBreaker(String name, CircuitBreaker.Config config) {
+        return circuitBreakers.computeIfAbsent(name,
+                k -> {
+                    log.info("🔌 创建熔断器: {}", name);
+                    return bind(new CircuitBreaker(name, config));
                 });
     }
 
+    private CircuitBreaker bind(CircuitBreaker breaker) {
+        metrics.bindCircuitBreaker(breaker);
+        return breaker;
+    }
+
     /**
      * 执行受熔断保护的操作
      */
@@ -107,6 +315,87 @@ public class RateLimitService {
         return breaker.execute(action, fallback);
     }
 
+    /**
+     * 获取或创建信号量舱壁
+     *
+     * @param maxConcurrent 最大并发数
+     * @param maxWaitMs     满时最长等待时间，0 表示直接拒绝
+     */
+    public Bulkhead getSemaphoreBulkhead(String name, int maxConcurrent, long maxWaitMs) {
+        return bulkheads.computeIfAbsent(name,
+                k -> {
+                    log.info("🧱 创建信号量舱壁: {} (并发={}, 等待={}ms)", name, maxConcurrent, maxWaitMs);
+                    SemaphoreBulkhead bulkhead = new SemaphoreBulkhead(name, maxConcurrent, maxWaitMs);
+                    threadPoolMonitor.registerBulkhead(name, () -> bulkheadDetail(bulkhead));
+                    metrics.bindBulkhead(bulkhead);
+                    return bulkhead;
+                });
+    }
+
+    /**
+     * 获取或创建线程池舱壁
+     *
+     * @param maxConcurrent 线程数
+     * @param queueCapacity 队列容量
+     * @param maxWaitMs     最长排队时间，0 表示不限制
+     * @param timeoutMs     调用方最长等待时间，0 表示不限制
+     */
+    public Bulkhead getThreadPoolBulkhead(String name, int maxConcurrent, int queueCapacity,
+            long maxWaitMs, long timeoutMs) {
+        return bulkheads.computeIfAbsent(name,
+                k -> {
+                    log.info("🧱 创建线程池舱壁: {} (线程={}, 队列={}, 排队={}ms, 超时={}ms)",
+                            name, maxConcurrent, queueCapacity, maxWaitMs, timeoutMs);
+                    ThreadPoolBulkhead bulkhead = new ThreadPoolBulkhead(name, maxConcurrent, queueCapacity,
+                            maxWaitMs, timeoutMs);
+                    threadPoolMonitor.registerThreadPool("bulkhead-" + name, bulkhead.getExecutor());
+                    threadPoolMonitor.registerBulkhead(name, () -> bulkheadDetail(bulkhead));
+                    metrics.bindBulkhead(bulkhead);
+                    return bulkhead;
+                });
+    }
+
+    /**
+     * 根据注解配置获取舱壁
+     */
+    public Bulkhead getBulkhead(ResiliencePolicy policy) {
+        return policy.bulkhead() == Bulkhead.Type.THREAD_POOL
+                ? getThreadPoolBulkhead(policy.name(), policy.maxConcurrent(), policy.queueCapacity(),
+                        policy.maxWaitMs(), policy.timeoutMs())
+                : getSemaphoreBulkhead(policy.name(), policy.maxConcurrent(), policy.maxWaitMs());
+    }
+
+    private static Map<String, Object> bulkheadDetail(Bulkhead bulkhead) {
+        Bulkhead.BulkheadStats stats = bulkhead.getStats();
+        Map<String, Object> detail = new LinkedHashMap<>();
+        detail.put("type", stats.getType());
+        detail.put("max_concurrent", stats.getMaxConcurrent());
+        detail.put("active", stats.getActive());
+        detail.put("queued", stats.getQueued());
+        detail.put("permitted", stats.getPermitted());
+        detail.put("rejected", stats.getRejected());
+        detail.put("wait_timeouts", stats.getWaitTimeouts());
+        return detail;
+    }
+
+    /**
+     * 获取所有舱壁统计
+     */
+    public Map<String, Bulkhead.BulkheadStats> getAllBulkheadStats() {
+        Map<String, Bulkhead.BulkheadStats> stats = new ConcurrentHashMap<>();
+        bulkheads.forEach((name, bulkhead) -> stats.put(name, bulkhead.getStats()));
+        return stats;
+    }
+
+    /**
+     * 异步执行受熔断保护的操作
+     */
+    public <T> CompletionStage<T> executeWithCircuitBreakerAsync(String name,
+            Supplier<? extends CompletionStage<T>> action,
+            CircuitBreaker.FallbackAction<T> fallback) {
+        return getCircuitBreaker(name).executeAsync(action, fallback);
+    }
+
     /**
      * 获取所有限流器统计
      */
@@ -141,7 +430,23 @@ public class RateLimitService {
      */
     public void clearAll() {
         rateLimiters.clear();
+        keyedLimiters.invalidateAll();
         circuitBreakers.clear();
-        log.info("🗑️ 已清除所有限流器和熔断器");
+        shutdownBulkheads();
+        // 实例重建后重新绑定指标
+        metrics.removeAll();
+        log.info("🗑️ 已清除所有限流器、熔断器和舱壁");
+    }
+
+    @PreDestroy
+    public void shutdownBulkheads() {
+        bulkheads.forEach((name, bulkhead) -> {
+            threadPoolMonitor.unregisterBulkhead(name);
+            if (bulkhead instanceof ThreadPoolBulkhead threadPoolBulkhead) {
+                threadPoolMonitor.unregisterThreadPool("bulkhead-" + name);
+                threadPoolBulkhead.shutdown();
+            }
+        });
+        bulkheads.clear();
     }
 }
@@ -1,5 +1,8 @@
 package com.example.seckill.ratelimit;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * 限流器接口
  * 
@@ -22,6 +25,20 @@ public interface RateLimiter {
      */
     boolean tryAcquire(int permits);
 
+    /**
+     * 异步获取许可，不阻塞、不 park 调用线程（可用于虚拟线程、异步 Controller、Reactor 管道）
+     *
+     * 许可不足时在共享定时器上等到许可可用再完成（true），预计超时前拿不到时立即以 false 完成。
+     * Reactor / WebFlux 中使用 Mono.fromCompletionStage(limiter.acquireAsync(1, 100)) 适配。
+     * 默认实现只尝试一次，适用于不需要等待的限流器（如并发限流）。
+     *
+     * @param permits   需要的许可数量
+     * @param timeoutMs 最长等待时间，0 表示不等待
+     */
+    default CompletionStage<Boolean> acquireAsync(int permits, long timeoutMs) {
+        return CompletableFuture.completedFuture(tryAcquire(permits));
+    }
+
     /**
      * 获取限流器名称
      */
@@ -31,4 +48,38 @@ public interface RateLimiter {
      * 获取限流器统计信息
      */
     RateLimiterStats getStats();
+
+    /**
+     * 设置指标记录器（只有按名称注册的限流器才设置，按 key 限流的限流器保持 NOOP）
+     */
+    void setRecorder(Recorder recorder);
+
+    /**
+     * 许可获取事件，实现必须无分配、不阻塞
+     */
+    interface Recorder {
+
+        Recorder NOOP = new Recorder() {
+            @Override
+            public void onGranted(int permits) {
+            }
+
+            @Override
+            public void onDenied(int permits) {
+            }
+
+            @Override
+            public void onWait(long nanos) {
+            }
+        };
+
+        void onGranted(int permits);
+
+        void onDenied(int permits);
+
+        /**
+         * 获取许可花费的时间（阻塞等待、访问 Redis 等）
+         */
+        void onWait(long nanos);
+    }
 }
@@ -10,11 +10,28 @@ public class RateLimiterStats {
     private final long available;
     private final double rate;
 
+    // 自适应并发限流器：在途请求数、短期/长期 RTT、采样数、拒绝数
+    private final long inFlight;
+    private final double rttMillis;
+    private final double baselineRttMillis;
+    private final long rttSamples;
+    private final long rejected;
+
     public RateLimiterStats(String name, long capacity, long available, double rate) {
+        this(name, capacity, available, rate, 0, 0, 0, 0, 0);
+    }
+
+    public RateLimiterStats(String name, long capacity, long available, double rate, long inFlight,
+            double rttMillis, double baselineRttMillis, long rttSamples, long rejected) {
         this.name = name;
         this.capacity = capacity;
         this.available = available;
         this.rate = rate;
+        this.inFlight = inFlight;
+        this.rttMillis = rttMillis;
+        this.baselineRttMillis = baselineRttMillis;
+        this.rttSamples = rttSamples;
+        this.rejected = rejected;
     }
 
     public String getName() {
@@ -33,12 +50,36 @@ public class RateLimiterStats {
         return rate;
     }
 
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public double getRttMillis() {
+        return rttMillis;
+    }
+
+    public double getBaselineRttMillis() {
+        return baselineRttMillis;
+    }
+
+    public long getRttSamples() {
+        return rttSamples;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
     public double getUsagePercent() {
         return capacity > 0 ? (double) (capacity - available) / capacity * 100 : 0;
     }
 
     @Override
     public String toString() {
+        if (rttSamples > 0) {
+            return String.format("%s{limit=%d, inFlight=%d, rtt=%.2fms, baseline=%.2fms, samples=%d, rejected=%d}",
+                    name, capacity, inFlight, rttMillis, baselineRttMillis, rttSamples, rejected);
+        }
         return String.format("%s{capacity=%d, available=%d, rate=%.2f/s, usage=%.1f%%}",
                 name, capacity, available, rate, getUsagePercent());
     }
@@ -0,0 +1,407 @@
+package com.example.seckill.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分布式限流器（Redis）
+ *
+ * 本地限流器只限制单个 JVM，10 个节点上的 qps=1000 实际放行 10000。
+ * 这里把配额放到 Redis 中由所有节点共享，两种算法：
+ * - GCRA：令牌桶的等价形式，只存一个理论到达时间
+ * - SLIDING_WINDOW：滑动窗口计数器，只存当前/上一窗口计数
+ *
+ * 批量预取：
+ * 每次向 Redis 申请一批许可（默认 qps 的 5%），本地 CAS 扣减，用完再取，
+ * 大部分请求不需要访问 Redis。预取的许可只在 leaseMs 内有效，过期作废，
+ * 节点之间最多少放行、不会多放行。Redis 返回 0 时按建议等待时间暂停预取，期间本地直接拒绝。
+ *
+ * 降级：
+ * Redis 不可用时切换到本地限流器（配额按节点数均分），degradeRetryMs 后由一个调用方探测 Redis，
+ * 探测期间其他调用方继续走本地限流，探测成功才恢复；失败则再降级 degradeRetryMs。
+ *
+ * 异步获取：本地批次够用时直接完成；需要访问 Redis 时交给共享的预取线程，调用线程不阻塞。
+ * 返回的结果在公共线程池上完成，调用方的后续回调不会占用预取线程；超过 timeoutMs 以 false 完成，
+ * 超时后才拿到的许可还回本地批次。Redis 要求暂停预取时，暂停在超时前结束则到时重试，否则立即拒绝。
+ * 降级期间使用本地限流器的异步获取。
+ */
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+    /**
+     * Redis 限流算法
+     */
+    public enum Type {
+        GCRA("ratelimit_gcra.lua", "gcra"),
+        SLIDING_WINDOW("ratelimit_sliding_window.lua", "sw");
+
+        @SuppressWarnings("rawtypes")
+        private final DefaultRedisScript<List> script;
+        private final String keySuffix;
+
+        Type(String scriptFile, String keySuffix) {
+            this.script = new DefaultRedisScript<>();
+            this.script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/" + scriptFile)));
+            this.script.setResultType(List.class);
+            this.keySuffix = keySuffix;
+        }
+    }
+
+    private static final long WINDOW_MS = 1000;
+
+    /**
+     * 异步获取时访问 Redis 的共享线程（同一限流器的预取本来就串行，少量线程足够）
+     */
+    private static final ThreadPoolExecutor ASYNC_FETCH_EXECUTOR;
+
+    static {
+        AtomicInteger index = new AtomicInteger();
+        ASYNC_FETCH_EXECUTOR = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    Thread t = new Thread(r, "ratelimit-redis-async-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        ASYNC_FETCH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final String name;
+    private final Type type;
+    private final int qps;
+    private final long capacity;
+    private final StringRedisTemplate redisTemplate;
+    private final List<String> keys;
+    private final RateLimiter fallback;
+    private final int batchSize;
+    private final long leaseNanos;
+    private final long degradeRetryNanos;
+
+    // 本地预取的许可及其失效时间
+    private final AtomicLong localPermits = new AtomicLong(0);
+    private volatile long batchExpireAt;
+
+    // Redis 拒绝后暂停预取的截止时间
+    private volatile long nextFetchAt;
+
+    // 下次探测 Redis 的时间（0 表示未降级；到期后仍处于降级，直到探测成功）
+    private volatile long degradedUntil;
+
+    private final ReentrantLock fetchLock = new ReentrantLock();
+
+    private Recorder recorder = Recorder.NOOP;
+
+    /**
+     * 创建分布式限流器
+     *
+     * @param name           限流器名称（同名限流器在所有节点共享配额）
+     * @param type           算法
+     * @param qps            集群总 QPS
+     * @param capacity       突发容量（GCRA 桶容量；滑动窗口忽略）
+     * @param fallback       Redis 不可用时使用的本地限流器
+     * @param batchSize      单次预取的许可数
+     * @param leaseMs        预取许可的有效期
+     * @param degradeRetryMs 降级后多久重新尝试 Redis
+     */
+    public RedisRateLimiter(String name, Type type, int qps, long capacity,
+            StringRedisTemplate redisTemplate, RateLimiter fallback,
+            int batchSize, long leaseMs, long degradeRetryMs) {
+        this.name = name;
+        this.type = type;
+        this.qps = qps;
+        this.capacity = capacity;
+        this.redisTemplate = redisTemplate;
+        this.keys = Collections.singletonList("ratelimit:{" + name + "}:" + type.keySuffix);
+        this.fallback = fallback;
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMs);
+        this.degradeRetryNanos = TimeUnit.MILLISECONDS.toNanos(degradeRetryMs);
+
+        long now = System.nanoTime();
+        this.batchExpireAt = now;
+        this.nextFetchAt = now;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        boolean acquired = doAcquire(permits);
+        if (acquired) {
+            recorder.onGranted(permits);
+        } else {
+            recorder.onDenied(permits);
+        }
+        return acquired;
+    }
+
+    private boolean doAcquire(int permits) {
+        if (takeLocal(permits)) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        if (degradedUntil != 0) {
+            return probeOrFallback(permits, now);
+        }
+        if (now - nextFetchAt < 0) {
+            return false;
+        }
+
+        long start = now;
+        fetchLock.lock();
+        try {
+            // 等锁期间其他线程可能已经取回一批
+            if (takeLocal(permits)) {
+                return true;
+            }
+            // 等锁期间持锁线程访问 Redis 失败，已经降级
+            if (degradedUntil != 0) {
+                return fallback.tryAcquire(permits);
+            }
+            now = System.nanoTime();
+            if (now - nextFetchAt < 0) {
+                return false;
+            }
+            return fetch(permits, now);
+        } finally {
+            fetchLock.unlock();
+            // 走到这里说明本地批次不够，等锁和访问 Redis 的时间都算作等待
+            recorder.onWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 降级中：未到探测时间、或其他线程正在探测时走本地限流，不排队等 Redis；否则由当前线程探测
+     */
+    private boolean probeOrFallback(int permits, long now) {
+        if (now - degradedUntil < 0 || !fetchLock.tryLock()) {
+            return fallback.tryAcquire(permits);
+        }
+        long start = now;
+        try {
+            now = System.nanoTime();
+            long until = degradedUntil;
+            if (until == 0) {
+                // 其他线程刚刚探测成功
+                if (takeLocal(permits)) {
+                    return true;
+                }
+                if (now - nextFetchAt < 0) {
+                    return false;
+                }
+            } else if (now - until < 0) {
+                // 其他线程刚刚探测失败
+                return fallback.tryAcquire(permits);
+            }
+            return fetch(permits, now);
+        } finally {
+            fetchLock.unlock();
+            recorder.onWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param timeoutMs 最长等待时间；0 表示不等待 Redis 的暂停预取，只访问一次 Redis（受 Redis 客户端超时约束）
+     */
+    @Override
+    public CompletionStage<Boolean> acquireAsync(int permits, long timeoutMs) {
+        if (takeLocal(permits)) {
+            recorder.onGranted(permits);
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        long start = System.nanoTime();
+        long until = degradedUntil;
+        if (until != 0 && start - until < 0) {
+            // 降级且未到探测时间；到期后交给预取线程探测 Redis
+            return fallback.acquireAsync(permits, timeoutMs);
+        }
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+        if (timeoutNanos > 0) {
+            // 由延迟调度线程转交公共线程池完成，后续回调不会跑在调度线程上
+            CompletableFuture.delayedExecutor(timeoutNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> finish(result, false, permits));
+        }
+        attemptAsync(permits, start + timeoutNanos, result);
+        return result;
+    }
+
+    private void attemptAsync(int permits, long deadline, CompletableFuture<Boolean> result) {
+        if (result.isDone()) {
+            // 已超时或被调用方取消
+            return;
+        }
+        if (takeLocal(permits)) {
+            finish(result, true, permits);
+            return;
+        }
+        long now = System.nanoTime();
+        long until = degradedUntil;
+        if (until != 0 && now - until < 0) {
+            long remainingMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+            fallback.acquireAsync(permits, remainingMs)
+                    .whenComplete((acquired, error) -> result.complete(error == null && Boolean.TRUE.equals(acquired)));
+            return;
+        }
+        long pause = until == 0 ? nextFetchAt - now : 0;
+        if (pause > 0) {
+            // Redis 要求暂停预取：超时前能结束就到时重试，否则立即拒绝
+            if (now + pause - deadline > 0) {
+                finish(result, false, permits);
+            } else {
+                CompletableFuture.delayedExecutor(pause, TimeUnit.NANOSECONDS)
+                        .execute(() -> attemptAsync(permits, deadline, result));
+            }
+            return;
+        }
+
+        CompletableFuture<Boolean> fetched;
+        try {
+            fetched = CompletableFuture.supplyAsync(() -> doAcquire(permits), ASYNC_FETCH_EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            finish(result, false, permits);
+            return;
+        }
+        // 在公共线程池上处理结果，预取线程只负责访问 Redis
+        fetched.whenCompleteAsync((acquired, error) -> {
+            if (error == null && Boolean.TRUE.equals(acquired)) {
+                if (!finish(result, true, permits)) {
+                    // 已经超时返回 false：许可还回本地批次，留给后续请求
+                    localPermits.addAndGet(permits);
+                }
+            } else if (error == null && nextFetchAt - System.nanoTime() > 0) {
+                attemptAsync(permits, deadline, result);
+            } else {
+                finish(result, false, permits);
+            }
+        });
+    }
+
+    /**
+     * 完成异步获取并记录结果，已经完成（超时 / 取消）时返回 false
+     */
+    private boolean finish(CompletableFuture<Boolean> result, boolean acquired, int permits) {
+        if (!result.complete(acquired)) {
+            return false;
+        }
+        if (acquired) {
+            recorder.onGranted(permits);
+        } else {
+            recorder.onDenied(permits);
+        }
+        return true;
+    }
+
+    /**
+     * 从本地批次中扣减
+     */
+    private boolean takeLocal(int permits) {
+        if (System.nanoTime() - batchExpireAt > 0) {
+            return false;
+        }
+        while (true) {
+            long current = localPermits.get();
+            if (current < permits) {
+                return false;
+            }
+            if (localPermits.compareAndSet(current, current - permits)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 向 Redis 预取一批许可，本次请求优先使用
+     */
+    @SuppressWarnings("unchecked")
+    private boolean fetch(int permits, long now) {
+        long requested = Math.max(permits, batchSize);
+        List<Long> result;
+        try {
+            result = redisTemplate.execute(type.script, keys, args(requested));
+        } catch (Exception e) {
+            degradedUntil = now + degradeRetryNanos;
+            log.warn("分布式限流器 [{}] Redis 不可用，降级为本地限流 {}ms: {}",
+                    name, TimeUnit.NANOSECONDS.toMillis(degradeRetryNanos), e.getMessage());
+            return fallback.tryAcquire(permits);
+        }
+
+        if (degradedUntil != 0) {
+            degradedUntil = 0;
+            log.info("分布式限流器 [{}] Redis 已恢复", name);
+        }
+        if (result == null || result.size() < 2) {
+            return false;
+        }
+
+        long granted = result.get(0);
+        long waitMicros = result.get(1);
+
+        // 部分发放（不足本次所需）时许可留在本地，等后续请求使用
+        boolean acquired = granted >= permits;
+        localPermits.set(acquired ? granted - permits : granted);
+        batchExpireAt = System.nanoTime() + leaseNanos;
+
+        if (granted < requested) {
+            nextFetchAt = now + TimeUnit.MICROSECONDS.toNanos(Math.max(waitMicros, 0));
+        }
+        return acquired;
+    }
+
+    private Object[] args(long requested) {
+        return switch (type) {
+            case GCRA -> new Object[] {
+                    String.valueOf(Math.max(1, 1_000_000L / Math.max(1, qps))),
+                    String.valueOf(capacity),
+                    String.valueOf(requested) };
+            case SLIDING_WINDOW -> new Object[] {
+                    String.valueOf(qps),
+                    String.valueOf(WINDOW_MS),
+                    String.valueOf(requested) };
+        };
+    }
+
+    /**
+     * 是否处于降级状态（探测 Redis 成功前一直为降级）
+     */
+    public boolean isDegraded() {
+        return degradedUntil != 0;
+    }
+
+    @Override
+    public String getName() {
+        return type == Type.GCRA ? "RedisGCRA" : "RedisSlidingWindow";
+    }
+
+    @Override
+    public RateLimiterStats getStats() {
+        long available = System.nanoTime() - batchExpireAt > 0 ? 0 : localPermits.get();
+        return new RateLimiterStats(getName(), capacity, available, qps);
+    }
+
+    @Override
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.seckill.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 限流器 / 熔断器 / 舱壁的 Micrometer 指标
+ *
+ * 每个实例创建时绑定一次（RateLimitService 的 computeIfAbsent 内），请求路径上只有
+ * LongAdder 累加和 Timer.record（HdrHistogram 记录，无分配）：
+ * - seckill.ratelimit.permits{result=granted|denied}、seckill.ratelimit.wait
+ * - seckill.circuitbreaker.state / transitions / state.time / calls / call.duration
+ * - seckill.bulkhead.calls / active / queued / wait.timeouts / wait
+ *
+ * 计数类指标使用 FunctionCounter 直接读取实例内的计数器，Prometheus 抓取时才计算。
+ * 按 key 限流的限流器数量无上限，不注册指标。
+ */
+@Component
+public class ResilienceMetrics {
+
+    private static final String[] PREFIXES = {
+            "seckill.ratelimit.", "seckill.circuitbreaker.", "seckill.bulkhead." };
+
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final MeterRegistry meterRegistry;
+
+    public ResilienceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 绑定限流器：放行 / 拒绝次数与获取许可的等待时间
+     */
+    public void bindLimiter(String name, RateLimiter limiter) {
+        LongAdder granted = new LongAdder();
+        LongAdder denied = new LongAdder();
+        Timer wait = timer("seckill.ratelimit.wait", "获取许可的等待时间（阻塞等待、访问 Redis）")
+                .tag("name", name).tag("type", limiter.getName())
+                .register(meterRegistry);
+
+        FunctionCounter.builder("seckill.ratelimit.permits", granted, LongAdder::sum)
+                .tag("name", name).tag("type", limiter.getName()).tag("result", "granted")
+                .description("放行的许可数").register(meterRegistry);
+        FunctionCounter.builder("seckill.ratelimit.permits", denied, LongAdder::sum)
+                .tag("name", name).tag("type", limiter.getName()).tag("result", "denied")
+                .description("拒绝的许可数").register(meterRegistry);
+
+        limiter.setRecorder(new RateLimiter.Recorder() {
+            @Override
+            public void onGranted(int permits) {
+                granted.add(permits);
+            }
+
+            @Override
+            public void onDenied(int permits) {
+                denied.add(permits);
+            }
+
+            @Override
+            public void onWait(long nanos) {
+                wait.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        });
+
+        if (limiter instanceof AdaptiveConcurrencyLimiter adaptive) {
+            bindAdaptive(name, adaptive);
+        }
+    }
+
+    private void bindAdaptive(String name, AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("seckill.ratelimit.adaptive.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("name", name).description("当前并发上限").register(meterRegistry);
+        Gauge.builder("seckill.ratelimit.adaptive.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("name", name).description("在途请求数").register(meterRegistry);
+        Gauge.builder("seckill.ratelimit.adaptive.rtt", limiter, AdaptiveConcurrencyLimiter::getShortRttMillis)
+                .tag("name", name).baseUnit("milliseconds").description("最近采样窗口的平均 RTT")
+                .register(meterRegistry);
+        Gauge.builder("seckill.ratelimit.adaptive.rtt.baseline", limiter,
+                AdaptiveConcurrencyLimiter::getLongRttMillis)
+                .tag("name", name).baseUnit("milliseconds").description("基线 RTT（长期平均）")
+                .register(meterRegistry);
+        FunctionCounter.builder("seckill.ratelimit.adaptive.samples", limiter,
+                AdaptiveConcurrencyLimiter::getSampleCount)
+                .tag("name", name).description("RTT 采样数").register(meterRegistry);
+        FunctionCounter.builder("seckill.ratelimit.adaptive.rejected", limiter,
+                AdaptiveConcurrencyLimiter::getRejectedCount)
+                .tag("name", name).description("被拒绝的请求数").register(meterRegistry);
+    }
+
+    /**
+     * 绑定熔断器：当前状态、状态转换、各状态停留时间、放行 / 拒绝次数、调用耗时
+     */
+    public void bindCircuitBreaker(CircuitBreaker breaker) {
+        String name = breaker.getName();
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("seckill.circuitbreaker.state", breaker, b -> b.getState() == state ? 1 : 0)
+                    .tag("name", name).tag("state", state.name())
+                    .description("当前状态（1 表示处于该状态）").register(meterRegistry);
+            FunctionCounter.builder("seckill.circuitbreaker.state.time", breaker,
+                    b -> b.getTimeInStateSeconds(state))
+                    .tag("name", name).tag("state", state.name()).baseUnit("seconds")
+                    .description("在该状态累计停留的时间").register(meterRegistry);
+            for (CircuitBreaker.State to : CircuitBreaker.State.values()) {
+                if (to != state) {
+                    FunctionCounter.builder("seckill.circuitbreaker.transitions", breaker,
+                            b -> b.getTransitionCount(state, to))
+                            .tag("name", name).tag("from", state.name()).tag("to", to.name())
+                            .description("状态转换次数").register(meterRegistry);
+                }
+            }
+        }
+
+        FunctionCounter.builder("seckill.circuitbreaker.calls", breaker,
+                b -> b.getTotalRequests() - b.getRejectedRequests())
+                .tag("name", name).tag("result", "permitted").description("放行的调用数").register(meterRegistry);
+        FunctionCounter.builder("seckill.circuitbreaker.calls", breaker, CircuitBreaker::getRejectedRequests)
+                .tag("name", name).tag("result", "rejected").description("熔断拒绝的调用数").register(meterRegistry);
+        Gauge.builder("seckill.circuitbreaker.failure.rate", breaker, CircuitBreaker::getFailureRate)
+                .tag("name", name).baseUnit("percent").description("窗口内失败率").register(meterRegistry);
+        Gauge.builder("seckill.circuitbreaker.slow.rate", breaker, CircuitBreaker::getSlowCallRate)
+                .tag("name", name).baseUnit("percent").description("窗口内慢调用率").register(meterRegistry);
+
+        Timer success = timer("seckill.circuitbreaker.call.duration", "受保护调用的耗时")
+                .tag("name", name).tag("outcome", "success").register(meterRegistry);
+        Timer failure = timer("seckill.circuitbreaker.call.duration", "受保护调用的耗时")
+                .tag("name", name).tag("outcome", "failure").register(meterRegistry);
+        breaker.setRecorder((failed, durationNanos) ->
+                (failed ? failure : success).record(durationNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 绑定舱壁：放行 / 拒绝次数、并发与排队数、等待超时、等待时间
+     */
+    public void bindBulkhead(Bulkhead bulkhead) {
+        String name = bulkhead.getName();
+        String type = bulkhead.getType().name();
+        FunctionCounter.builder("seckill.bulkhead.calls", bulkhead, b -> b.getStats().getPermitted())
+                .tag("name", name).tag("type", type).tag("result", "permitted")
+                .description("进入舱壁的调用数").register(meterRegistry);
+        FunctionCounter.builder("seckill.bulkhead.calls", bulkhead, b -> b.getStats().getRejected())
+                .tag("name", name).tag("type", type).tag("result", "rejected")
+                .description("被舱壁拒绝的调用数").register(meterRegistry);
+        FunctionCounter.builder("seckill.bulkhead.wait.timeouts", bulkhead, b -> b.getStats().getWaitTimeouts())
+                .tag("name", name).tag("type", type).description("等待超时次数").register(meterRegistry);
+        Gauge.builder("seckill.bulkhead.active", bulkhead, b -> b.getStats().getActive())
+                .tag("name", name).tag("type", type).description("正在执行的调用数").register(meterRegistry);
+        Gauge.builder("seckill.bulkhead.queued", bulkhead, b -> b.getStats().getQueued())
+                .tag("name", name).tag("type", type).description("等待中的调用数").register(meterRegistry);
+
+        Timer wait = timer("seckill.bulkhead.wait", "进入舱壁前的等待时间")
+                .tag("name", name).tag("type", type).register(meterRegistry);
+        bulkhead.setWaitRecorder(nanos -> wait.record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 移除所有限流 / 熔断 / 舱壁指标（实例重建后重新绑定）
+     */
+    public void removeAll() {
+        meterRegistry.getMeters().stream()
+                .filter(meter -> {
+                    String meterName = meter.getId().getName();
+                    for (String prefix : PREFIXES) {
+                        if (meterName.startsWith(prefix)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                })
+                .toList()
+                .forEach(meterRegistry::remove);
+    }
+
+    /**
+     * 高精度耗时分布：客户端百分位（HdrHistogram）+ Prometheus 直方图桶
+     */
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(10));
+    }
+}
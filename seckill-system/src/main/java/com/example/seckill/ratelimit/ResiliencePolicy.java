@@ -0,0 +1,75 @@
+package com.example.seckill.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 保护策略注解
+ *
+ * 用于标注访问外部依赖的 Bean 方法（Redis、MySQL、MQ 调用等），按以下顺序组合：
+ * 限流 -> 熔断 -> 舱壁 -> 方法
+ * - 限流最便宜，先挡掉超额请求
+ * - 熔断在舱壁外面，线程池舱壁的调用超时（BulkheadTimeoutException）计为失败
+ * - 舱壁满时直接拒绝，不计入熔断统计（本地过载不代表依赖故障）
+ *
+ * 任一环节拒绝时抛出 CallNotPermittedException。
+ * 同名的限流器 / 舱壁 / 熔断器在第一次使用时创建，之后共享。
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ResiliencePolicy {
+
+    /**
+     * 策略名称（限流器、舱壁、熔断器共用）
+     */
+    String name();
+
+    /**
+     * 每秒允许的调用数，0 表示不限流
+     */
+    int qps() default 0;
+
+    /**
+     * 限流算法
+     */
+    RateLimit.Algorithm algorithm() default RateLimit.Algorithm.TOKEN_BUCKET;
+
+    /**
+     * 最大并发数，0 表示不使用舱壁
+     */
+    int maxConcurrent() default 0;
+
+    /**
+     * 舱壁类型
+     */
+    Bulkhead.Type bulkhead() default Bulkhead.Type.SEMAPHORE;
+
+    /**
+     * 舱壁满时最长等待时间（线程池舱壁为最长排队时间），0 表示信号量不等待、线程池不限制排队时间
+     */
+    long maxWaitMs() default 0;
+
+    /**
+     * 线程池舱壁的队列容量
+     */
+    int queueCapacity() default 0;
+
+    /**
+     * 线程池舱壁调用方最长等待时间，0 表示不限制
+     */
+    long timeoutMs() default 0;
+
+    /**
+     * 是否启用熔断（使用默认配置的滑动窗口熔断器）
+     */
+    boolean circuitBreaker() default false;
+
+    /**
+     * 被拒绝时的提示信息
+     */
+    String message() default "系统繁忙，请稍后再试";
+}
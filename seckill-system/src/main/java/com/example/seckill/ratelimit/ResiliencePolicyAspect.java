@@ -0,0 +1,134 @@
+package com.example.seckill.ratelimit;
+
+import com.example.seckill.common.SeckillException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ResiliencePolicy 切面
+ *
+ * 按 限流 -> 熔断 -> 舱壁 -> 方法 的顺序组合保护策略。
+ * 熔断器在舱壁外记录结果，线程池舱壁的调用超时计为失败；舱壁已满时调用没有执行，不计入统计。
+ * 业务异常（SeckillException）不算依赖故障，按成功计入熔断统计。
+ */
+@Aspect
+@Component
+public class ResiliencePolicyAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(ResiliencePolicyAspect.class);
+
+    private final RateLimitService rateLimitService;
+
+    public ResiliencePolicyAspect(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Around("@annotation(com.example.seckill.ratelimit.ResiliencePolicy) "
+            + "|| @within(com.example.seckill.ratelimit.ResiliencePolicy)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        ResiliencePolicy policy = findPolicy(joinPoint);
+        if (policy == null) {
+            return joinPoint.proceed();
+        }
+
+        // 1. 限流
+        RateLimiter limiter = policy.qps() > 0
+                ? rateLimitService.getLimiter(policy.name(), policy.qps(), policy.algorithm())
+                : null;
+        if (limiter != null && !limiter.tryAcquire()) {
+            log.warn("🚫 调用被限流: {}", policy.name());
+            throw new CallNotPermittedException(policy.name(), policy.message());
+        }
+
+        // 自适应并发限流需要在调用结束时释放名额并上报 RTT
+        AdaptiveConcurrencyLimiter adaptive = limiter instanceof AdaptiveConcurrencyLimiter a ? a : null;
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Object result = guarded(joinPoint, policy);
+            succeeded = true;
+            return result;
+        } finally {
+            if (adaptive != null) {
+                if (succeeded) {
+                    adaptive.onSuccess(System.nanoTime() - start);
+                } else {
+                    adaptive.release();
+                }
+            }
+        }
+    }
+
+    private Object guarded(ProceedingJoinPoint joinPoint, ResiliencePolicy policy) throws Exception {
+        // 2. 熔断
+        CircuitBreaker breaker = policy.circuitBreaker() ? rateLimitService.getCircuitBreaker(policy.name()) : null;
+        if (breaker == null) {
+            return bulkheaded(joinPoint, policy);
+        }
+
+        long permission = breaker.acquirePermission();
+        if (permission == CircuitBreaker.NOT_PERMITTED) {
+            log.debug("🚫 熔断器 [{}] 拒绝调用", breaker.getName());
+            throw new CallNotPermittedException(policy.name(), policy.message());
+        }
+        long start = System.nanoTime();
+        try {
+            Object result = bulkheaded(joinPoint, policy);
+            breaker.onSuccess(permission, System.nanoTime() - start);
+            return result;
+        } catch (CallNotPermittedException e) {
+            // 舱壁已满、或方法内部的保护策略拒绝：调用没有到达依赖
+            breaker.releasePermission(permission);
+            throw e;
+        } catch (SeckillException e) {
+            breaker.onSuccess(permission, System.nanoTime() - start);
+            throw e;
+        } catch (Exception e) {
+            breaker.onFailure(permission, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private Object bulkheaded(ProceedingJoinPoint joinPoint, ResiliencePolicy policy) throws Exception {
+        // 3. 舱壁
+        if (policy.maxConcurrent() <= 0) {
+            return proceed(joinPoint);
+        }
+        try {
+            return rateLimitService.getBulkhead(policy).execute(() -> proceed(joinPoint));
+        } catch (BulkheadFullException e) {
+            log.warn("🚫 {}", e.getMessage());
+            throw new BulkheadFullException(policy.name(), policy.message());
+        }
+    }
+
+    /**
+     * ProtectedAction 只能抛出 Exception，Error 原样抛出，其他 Throwable 包装
+     */
+    private static Object proceed(ProceedingJoinPoint joinPoint) throws Exception {
+        try {
+            return joinPoint.proceed();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static ResiliencePolicy findPolicy(ProceedingJoinPoint joinPoint) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        ResiliencePolicy policy = AnnotatedElementUtils.findMergedAnnotation(signature.getMethod(),
+                ResiliencePolicy.class);
+        if (policy == null) {
+            policy = AnnotatedElementUtils.findMergedAnnotation(joinPoint.getTarget().getClass(),
+                    ResiliencePolicy.class);
+        }
+        return policy;
+    }
+}
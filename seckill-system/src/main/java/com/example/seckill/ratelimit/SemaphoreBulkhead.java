@@ -0,0 +1,96 @@
+package com.example.seckill.ratelimit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 信号量舱壁
+ *
+ * 在调用线程上执行，最多 maxConcurrent 个调用同时进行；
+ * 满时最多等待 maxWaitMs（0 表示不等待直接拒绝）。
+ */
+public class SemaphoreBulkhead implements Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final Semaphore semaphore;
+
+    private final LongAdder permitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitTimeouts = new LongAdder();
+
+    private LongConsumer waitRecorder = nanos -> {
+    };
+
+    public SemaphoreBulkhead(String name, int maxConcurrent, long maxWaitMs) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        this.semaphore = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * 占用一个名额，成功后必须调用 release
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        boolean acquired = semaphore.tryAcquire();
+        if (!acquired && maxWaitMs > 0) {
+            long start = System.nanoTime();
+            acquired = semaphore.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+            waitRecorder.accept(System.nanoTime() - start);
+        }
+        if (acquired) {
+            permitted.increment();
+        } else {
+            rejected.increment();
+            if (maxWaitMs > 0) {
+                waitTimeouts.increment();
+            }
+        }
+        return acquired;
+    }
+
+    public void release() {
+        semaphore.release();
+    }
+
+    @Override
+    public <T> T execute(CircuitBreaker.ProtectedAction<T> action) throws Exception {
+        if (!tryAcquire()) {
+            throw new BulkheadFullException(name, "舱壁 [" + name + "] 已满");
+        }
+        try {
+            return action.execute();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.SEMAPHORE;
+    }
+
+    @Override
+    public BulkheadStats getStats() {
+        int active = maxConcurrent - semaphore.availablePermits();
+        return new BulkheadStats(name, Type.SEMAPHORE, maxConcurrent, active, semaphore.getQueueLength(),
+                permitted.sum(), rejected.sum(), waitTimeouts.sum());
+    }
+
+    @Override
+    public void setWaitRecorder(LongConsumer waitRecorder) {
+        this.waitRecorder = waitRecorder;
+    }
+}
@@ -1,20 +1,37 @@
 package com.example.seckill.ratelimit;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 
 /**
  * 滑动窗口限流器
- * 
+ *
  * 核心思想：
  * 1. 将时间窗口划分为多个小的时间槽
  * 2. 每个槽记录该时间段内的请求数
  * 3. 窗口随时间滑动，过期的槽被清除
- * 
+ *
+ * 无锁实现：
+ * - 窗口总数单独缓存在 windowTotal 中，准入判断只看它，tryAcquire 为 O(1)，与槽数无关
+ * - 每个槽按 CPU 数分条 (stripe)，线程按 ID 落到不同分条，记录计数时互不争用同一个缓存行
+ * - 槽内的计数带纪元标签（槽序号），旧纪元的槽在下次写入时懒重置，不需要全局清理
+ * - 时间推进时由一个线程把过期槽的计数从 windowTotal 中扣除
+ *
+ * 槽状态是一个 long：高 32 位纪元、第 31 位"已结算"标记、低 31 位计数。
+ * 过期槽的计数只会被扣除一次：由把它从"未结算"改写掉的那次 CAS（推进线程或懒重置的写入线程）负责；
+ * 写入时发现自己的纪元已经被结算，则自行扣回刚计入的许可。
+ *
  * 优点：解决固定窗口的边界问题，限流更精确
  * 适用场景：需要精确限流的场景
  */
 public class SlidingWindowRateLimiter implements RateLimiter {
 
+    private static final long SETTLED = 1L << 31;
+    private static final long COUNT_MASK = SETTLED - 1;
+
     /**
      * 每秒最大请求数
      */
@@ -31,36 +48,44 @@ public class SlidingWindowRateLimiter implements RateLimiter {
     private final int slotSizeMs;
 
     /**
-     * 时间槽数组
+     * 分条数（2 的幂）
+     */
+    private final int stripeMask;
+
+    /**
+     * 时间槽：下标 = stripe * slotCount + slot
+     * 同一分条的槽相邻，不同分条相隔 slotCount 个 long
+     */
+    private final AtomicLongArray slots;
+
+    /**
+     * 当前窗口内的许可总数
      */
-    private final AtomicInteger[] slots;
+    private final AtomicLong windowTotal = new AtomicLong(0);
 
     /**
-     * 窗口开始时间
+     * 已推进到的纪元（此前的过期槽都已从 windowTotal 扣除）
      */
-    private volatile long windowStart;
+    private final AtomicLong advancedEpoch;
 
     /**
-     * 同步锁
+     * 毫秒时钟及起点
      */
-    private final Object lock = new Object();
+    private final LongSupplier clock;
+    private final long origin;
+
+    private Recorder recorder = Recorder.NOOP;
 
     /**
      * 创建滑动窗口限流器
-     * 
+     *
      * @param limit        每秒最大请求数
      * @param windowSizeMs 窗口大小（毫秒）
      * @param slotCount    时间槽数量
      */
     public SlidingWindowRateLimiter(int limit, int windowSizeMs, int slotCount) {
-        this.limit = limit;
-        this.slotCount = slotCount;
-        this.slotSizeMs = windowSizeMs / slotCount;
-        this.slots = new AtomicInteger[slotCount];
-        for (int i = 0; i < slotCount; i++) {
-            slots[i] = new AtomicInteger(0);
-        }
-        this.windowStart = System.currentTimeMillis();
+        this(limit, windowSizeMs, slotCount, Runtime.getRuntime().availableProcessors(),
+                System::currentTimeMillis);
     }
 
     /**
@@ -70,6 +95,23 @@ public class SlidingWindowRateLimiter implements RateLimiter {
         this(limit, 1000, 10);
     }
 
+    SlidingWindowRateLimiter(int limit, int windowSizeMs, int slotCount, int stripes, LongSupplier clock) {
+        if (slotCount <= 0 || windowSizeMs < slotCount) {
+            throw new IllegalArgumentException("窗口大小必须不小于时间槽数量");
+        }
+        this.limit = limit;
+        this.slotCount = slotCount;
+        this.slotSizeMs = windowSizeMs / slotCount;
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, 64)));
+        this.stripeMask = stripeCount - 1;
+        this.slots = new AtomicLongArray(stripeCount * slotCount);
+
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        this.advancedEpoch = new AtomicLong(0);
+    }
+
     @Override
     public boolean tryAcquire() {
         return tryAcquire(1);
@@ -77,69 +119,144 @@ public class SlidingWindowRateLimiter implements RateLimiter {
 
     @Override
     public boolean tryAcquire(int permits) {
-        synchronized (lock) {
-            long now = System.currentTimeMillis();
-            cleanExpiredSlots(now);
-
-            // 计算当前窗口内的总请求数
-            int total = 0;
-            for (AtomicInteger slot : slots) {
-                total += slot.get();
-            }
+        if (tryAcquireOrWait(permits) == 0) {
+            recorder.onGranted(permits);
+            return true;
+        }
+        recorder.onDenied(permits);
+        return false;
+    }
 
-            // 判断是否超过限制
-            if (total + permits <= limit) {
-                // 获取当前时间槽的索引
-                int currentSlot = getCurrentSlotIndex(now);
-                slots[currentSlot].addAndGet(permits);
-                return true;
-            }
-            return false;
+    /**
+     * 异步获取许可：窗口已满时等到下一个时间槽（最早有槽滑出的时刻）再试，不 park 线程
+     */
+    @Override
+    public CompletionStage<Boolean> acquireAsync(int permits, long timeoutMs) {
+        return AsyncPermits.acquire(this::tryAcquireOrWait, permits, timeoutMs, recorder);
+    }
+
+    /**
+     * @return 0 表示获取成功，否则为距下一个时间槽的纳秒数
+     */
+    private long tryAcquireOrWait(int permits) {
+        if (permits <= 0) {
+            return 0;
+        }
+        if (permits > limit) {
+            return Long.MAX_VALUE;
+        }
+
+        long epoch = advance();
+
+        // 先占用再检查，超出时回滚（并发逼近上限时可能短暂误拒，但不会超发）
+        if (windowTotal.addAndGet(permits) > limit) {
+            windowTotal.addAndGet(-permits);
+            long elapsed = clock.getAsLong() - origin;
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(1, slotSizeMs - elapsed % slotSizeMs));
         }
+
+        record(epoch, permits);
+        return 0;
     }
 
     /**
-     * 清理过期的时间槽
+     * 把许可记到当前纪元的槽上
      */
-    private void cleanExpiredSlots(long now) {
-        long elapsed = now - windowStart;
+    private void record(long epoch, int permits) {
+        int index = stripe() * slotCount + (int) (epoch % slotCount);
+        while (true) {
+            long word = slots.get(index);
+            long slotEpoch = word >>> 32;
 
-        if (elapsed >= slotSizeMs) {
-            int slotsToClean = (int) (elapsed / slotSizeMs);
-            slotsToClean = Math.min(slotsToClean, slotCount);
+            if (slotEpoch > epoch || (slotEpoch == epoch && (word & SETTLED) != 0)) {
+                // 本纪元在记录之前已经过期结算，刚占用的许可随之释放
+                windowTotal.addAndGet(-permits);
+                return;
+            }
 
-            // 滑动窗口
-            windowStart += (long) slotsToClean * slotSizeMs;
+            long next;
+            long expired = 0;
+            if (slotEpoch == epoch) {
+                next = word + permits;
+            } else {
+                // 懒重置：旧纪元尚未结算的计数由本次写入负责扣除
+                if ((word & SETTLED) == 0) {
+                    expired = word & COUNT_MASK;
+                }
+                next = (epoch << 32) | permits;
+            }
 
-            // 清理过期槽（简化实现：直接重置）
-            for (int i = 0; i < slotsToClean; i++) {
-                int idx = i % slotCount;
-                slots[idx].set(0);
+            if (slots.compareAndSet(index, word, next)) {
+                if (expired > 0) {
+                    windowTotal.addAndGet(-expired);
+                }
+                return;
             }
         }
     }
 
     /**
-     * 获取当前时间槽索引
+     * 推进窗口：把已滑出窗口的纪元结算掉
+     * 只有推进纪元成功的那个线程执行结算，其余线程直接使用缓存的总数
+     *
+     * @return 当前纪元
      */
-    private int getCurrentSlotIndex(long now) {
-        return (int) ((now - windowStart) / slotSizeMs) % slotCount;
+    private long advance() {
+        long epoch = epochOf(clock.getAsLong());
+        long advanced = advancedEpoch.get();
+        if (epoch <= advanced || !advancedEpoch.compareAndSet(advanced, epoch)) {
+            return epoch;
+        }
+
+        // 纪元 (advanced - slotCount, epoch - slotCount] 滑出窗口；跨度超过一轮时每个槽只需结算一次
+        long from = Math.max(advanced - slotCount + 1, epoch - 2L * slotCount + 1);
+        for (long expiring = Math.max(0, from); expiring <= epoch - slotCount; expiring++) {
+            settle(expiring);
+        }
+        return epoch;
     }
 
     /**
-     * 获取当前窗口内的请求数
+     * 结算一个过期纪元在所有分条上的计数
      */
-    public int getCurrentCount() {
-        synchronized (lock) {
-            cleanExpiredSlots(System.currentTimeMillis());
-            int total = 0;
-            for (AtomicInteger slot : slots) {
-                total += slot.get();
+    private void settle(long expiring) {
+        int slot = (int) (expiring % slotCount);
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            int index = stripe * slotCount + slot;
+            while (true) {
+                long word = slots.get(index);
+                long slotEpoch = word >>> 32;
+                if (slotEpoch > expiring || (word & SETTLED) != 0 && slotEpoch == expiring) {
+                    break;
+                }
+                long count = (word & SETTLED) == 0 ? word & COUNT_MASK : 0;
+                if (slots.compareAndSet(index, word, (expiring << 32) | SETTLED)) {
+                    if (count > 0) {
+                        windowTotal.addAndGet(-count);
+                    }
+                    break;
+                }
             }
-            return total;
         }
     }
 
+    private long epochOf(long now) {
+        return Math.max(0, now - origin) / slotSizeMs;
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & stripeMask;
+    }
+
+    /**
+     * 获取当前窗口内的请求数
+     */
+    public int getCurrentCount() {
+        advance();
+        return (int) Math.max(0, windowTotal.get());
+    }
+
     /**
      * 获取限流阈值
      */
@@ -156,4 +273,9 @@ public class SlidingWindowRateLimiter implements RateLimiter {
     public RateLimiterStats getStats() {
         return new RateLimiterStats(getName(), limit, limit - getCurrentCount(), limit);
     }
+
+    @Override
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
 }
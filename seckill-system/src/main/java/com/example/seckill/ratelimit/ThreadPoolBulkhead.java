@@ -0,0 +1,145 @@
+package com.example.seckill.ratelimit;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 线程池舱壁
+ *
+ * 每个舱壁独占一个小线程池（maxConcurrent 个线程 + queueCapacity 的有界队列）：
+ * - 线程和队列都满时立即拒绝（不使用 CallerRunsPolicy，调用线程不会被拖进慢依赖）
+ * - 任务开始执行时检查排队时间，超过 maxWaitMs 直接放弃（调用方多半已经等不及了）
+ * - 调用方最多等待 timeoutMs，超时中断任务并抛出 BulkheadTimeoutException，依赖卡死时 Tomcat 线程也能脱身
+ *
+ * 注意任务在舱壁线程上执行，调用线程的 ThreadLocal（事务、请求上下文等）不会传递过去。
+ */
+public class ThreadPoolBulkhead implements Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder permitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitTimeouts = new LongAdder();
+
+    private LongConsumer waitRecorder = nanos -> {
+    };
+
+    /**
+     * 创建线程池舱壁
+     *
+     * @param maxConcurrent 线程数
+     * @param queueCapacity 等待队列容量，0 表示不排队
+     * @param maxWaitMs     最长排队时间，0 表示不限制
+     * @param timeoutMs     调用方最长等待时间（含排队），0 表示不限制
+     */
+    public ThreadPoolBulkhead(String name, int maxConcurrent, int queueCapacity, long maxWaitMs, long timeoutMs) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        this.timeoutMs = Math.max(0, timeoutMs);
+
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L, TimeUnit.SECONDS, queue,
+                r -> {
+                    Thread t = new Thread(r, "bulkhead-" + name + "-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        // 空闲舱壁不占线程
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public <T> T execute(CircuitBreaker.ProtectedAction<T> action) throws Exception {
+        long enqueuedAt = System.nanoTime();
+        FutureTask<T> task = new FutureTask<>(() -> {
+            long waited = System.nanoTime() - enqueuedAt;
+            waitRecorder.accept(waited);
+            if (maxWaitNanos > 0 && waited > maxWaitNanos) {
+                rejected.increment();
+                waitTimeouts.increment();
+                throw new BulkheadFullException(name, "舱壁 [" + name + "] 排队超时");
+            }
+            return action.execute();
+        });
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new BulkheadFullException(name, "舱壁 [" + name + "] 已满");
+        }
+        permitted.increment();
+
+        try {
+            return timeoutMs > 0 ? task.get(timeoutMs, TimeUnit.MILLISECONDS) : task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            waitTimeouts.increment();
+            throw new BulkheadTimeoutException(name, "舱壁 [" + name + "] 调用超时 (" + timeoutMs + "ms)");
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * 舱壁使用的线程池（注册到 ThreadPoolMonitor）
+     */
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.THREAD_POOL;
+    }
+
+    @Override
+    public BulkheadStats getStats() {
+        return new BulkheadStats(name, Type.THREAD_POOL, maxConcurrent, executor.getActiveCount(),
+                executor.getQueue().size(), permitted.sum(), rejected.sum(), waitTimeouts.sum());
+    }
+
+    @Override
+    public void setWaitRecorder(LongConsumer waitRecorder) {
+        this.waitRecorder = waitRecorder;
+    }
+}
@@ -1,20 +1,34 @@
 package com.example.seckill.ratelimit;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 /**
  * 令牌桶限流器
- * 
+ *
  * 核心思想：
  * 1. 以固定速率向桶中添加令牌
  * 2. 请求需要获取令牌才能被处理
  * 3. 桶有容量限制，满了之后新令牌被丢弃
  * 4. 允许一定程度的突发流量
- * 
+ *
+ * 无锁实现：
+ * 令牌数和上次填充时间合并为一个状态 —— 桶"恰好为空"的虚拟时刻 emptyAt（纳秒）。
+ * 当前令牌数 = min(capacity, (now - emptyAt) / 每令牌纳秒数)，
+ * 取走 n 个令牌就是把 emptyAt 向后推 n 个令牌的时长，一次 CAS 完成"填充 + 扣减"。
+ * 不足一个令牌的时间不会像整数计数那样被丢弃。
+ *
  * 适用场景：需要允许突发流量的 API 限流
  */
 public class TokenBucketRateLimiter implements RateLimiter {
 
+    /**
+     * 阻塞获取时单次 park 的最长时间，避免速率极低时一次睡太久
+     */
+    private static final long MAX_PARK_NANOS = 100_000_000L;
+
     /**
      * 桶容量（允许的最大突发量）
      */
@@ -26,31 +40,48 @@ public class TokenBucketRateLimiter implements RateLimiter {
     private final double refillRate;
 
     /**
-     * 当前令牌数
+     * 生成一个令牌需要的纳秒数
+     */
+    private final double nanosPerToken;
+
+    /**
+     * 从空桶到满桶需要的纳秒数
      */
-    private final AtomicLong tokens;
+    private final long fullNanos;
 
     /**
-     * 上次填充时间（纳秒）
+     * 桶中令牌为 0 的虚拟时刻（纳秒）
      */
-    private volatile long lastRefillNanoTime;
+    private final AtomicLong emptyAt;
 
     /**
-     * 同步锁
+     * 纳秒时钟
      */
-    private final Object lock = new Object();
+    private final LongSupplier nanoClock;
+
+    private Recorder recorder = Recorder.NOOP;
 
     /**
      * 创建令牌桶限流器
-     * 
+     *
      * @param capacity   桶容量
      * @param refillRate 每秒生成的令牌数
      */
     public TokenBucketRateLimiter(long capacity, double refillRate) {
+        this(capacity, refillRate, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(long capacity, double refillRate, LongSupplier nanoClock) {
+        if (capacity <= 0 || refillRate <= 0) {
+            throw new IllegalArgumentException("capacity 和 refillRate 必须大于 0");
+        }
         this.capacity = capacity;
         this.refillRate = refillRate;
-        this.tokens = new AtomicLong(capacity);
-        this.lastRefillNanoTime = System.nanoTime();
+        this.nanosPerToken = 1_000_000_000.0 / refillRate;
+        this.fullNanos = saturatedNanos(capacity);
+        this.nanoClock = nanoClock;
+        // 初始满桶
+        this.emptyAt = new AtomicLong(nanoClock.getAsLong() - fullNanos);
     }
 
     /**
@@ -66,15 +97,12 @@ public class TokenBucketRateLimiter implements RateLimiter {
      */
     @Override
     public boolean tryAcquire(int permits) {
-        synchronized (lock) {
-            refill();
-            long currentTokens = tokens.get();
-            if (currentTokens >= permits) {
-                tokens.addAndGet(-permits);
-                return true;
-            }
-            return false;
+        if (tryAcquireOrWait(permits) == 0) {
+            recorder.onGranted(permits);
+            return true;
         }
+        recorder.onDenied(permits);
+        return false;
     }
 
     /**
@@ -86,36 +114,61 @@ public class TokenBucketRateLimiter implements RateLimiter {
 
     /**
      * 阻塞等待获取指定数量的令牌
+     * 令牌不足时按缺口计算等待时间并 park，醒来后重新竞争
      */
     public void acquire(int permits) throws InterruptedException {
+        if (permits > capacity) {
+            throw new IllegalArgumentException("permits 超过桶容量: " + permits + " > " + capacity);
+        }
+        long start = nanoClock.getAsLong();
         while (true) {
-            synchronized (lock) {
-                refill();
-                long currentTokens = tokens.get();
-                if (currentTokens >= permits) {
-                    tokens.addAndGet(-permits);
-                    return;
-                }
-                // 计算需要等待的时间
-                double tokensNeeded = permits - currentTokens;
-                long waitMs = (long) Math.ceil(tokensNeeded / refillRate * 1000);
-                lock.wait(Math.max(1, waitMs));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
             }
+            long waitNanos = tryAcquireOrWait(permits);
+            if (waitNanos == 0) {
+                recorder.onGranted(permits);
+                recorder.onWait(nanoClock.getAsLong() - start);
+                return;
+            }
+            LockSupport.parkNanos(this, Math.min(waitNanos, MAX_PARK_NANOS));
         }
     }
 
     /**
-     * 填充令牌
+     * 异步获取令牌：按缺口时长在共享定时器上重试，不 park 线程
+     */
+    @Override
+    public CompletionStage<Boolean> acquireAsync(int permits, long timeoutMs) {
+        return AsyncPermits.acquire(this::tryAcquireOrWait, permits, timeoutMs, recorder);
+    }
+
+    /**
+     * 一次 CAS 完成填充和扣减
+     *
+     * @return 0 表示获取成功，否则为令牌足够前还需等待的纳秒数
      */
-    private void refill() {
-        long now = System.nanoTime();
-        double elapsedSeconds = (now - lastRefillNanoTime) / 1_000_000_000.0;
-        long tokensToAdd = (long) (elapsedSeconds * refillRate);
+    long tryAcquireOrWait(int permits) {
+        if (permits <= 0) {
+            return 0;
+        }
+        if (permits > capacity) {
+            return Long.MAX_VALUE;
+        }
 
-        if (tokensToAdd > 0) {
-            long newTokens = Math.min(capacity, tokens.get() + tokensToAdd);
-            tokens.set(newTokens);
-            lastRefillNanoTime = now;
+        long cost = saturatedNanos(permits);
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = emptyAt.get();
+            // 满桶后不再累积：emptyAt 最早只能是 now - fullNanos
+            long base = Math.max(current, now - fullNanos);
+            long next = base + cost;
+            if (next - now > 0) {
+                return next - now;
+            }
+            if (emptyAt.compareAndSet(current, next)) {
+                return 0;
+            }
         }
     }
 
@@ -123,10 +176,11 @@ public class TokenBucketRateLimiter implements RateLimiter {
      * 获取当前令牌数
      */
     public long getAvailableTokens() {
-        synchronized (lock) {
-            refill();
-            return tokens.get();
+        long elapsed = nanoClock.getAsLong() - emptyAt.get();
+        if (elapsed >= fullNanos) {
+            return capacity;
         }
+        return elapsed <= 0 ? 0 : (long) (elapsed / nanosPerToken);
     }
 
     /**
@@ -152,4 +206,17 @@ public class TokenBucketRateLimiter implements RateLimiter {
     public RateLimiterStats getStats() {
         return new RateLimiterStats(getName(), capacity, getAvailableTokens(), refillRate);
     }
+
+    @Override
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 令牌数换算为纳秒（向上取整，避免多发令牌）
+     */
+    private long saturatedNanos(long tokens) {
+        double nanos = Math.ceil(tokens * nanosPerToken);
+        return nanos >= Long.MAX_VALUE / 4 ? Long.MAX_VALUE / 4 : (long) nanos;
+    }
 }
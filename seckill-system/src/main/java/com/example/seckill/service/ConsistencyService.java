@@ -80,28 +80,8 @@ public class ConsistencyService {
 
         String key = CONSISTENCY_CACHE_PREFIX + productId;
 
-        // 使用多级缓存读取
-        String json = cacheService.get(key, k -> {
-            Product product = productMapper.selectById(productId);
-            if (product != null) {
-                try {
-                    return objectMapper.writeValueAsString(product);
-                } catch (JsonProcessingException e) {
-                    log.error("序列化失败", e);
-                }
-            }
-            return null;
-        });
-
-        if (json != null) {
-            try {
-                return objectMapper.readValue(json, Product.class);
-            } catch (JsonProcessingException e) {
-                log.error("反序列化失败", e);
-            }
-        }
-
-        return null;
+        // 使用多级缓存读取（L1 直接保存 Product 对象，命中时不再反序列化）
+        return cacheService.get(key, Product.class, k -> productMapper.selectById(productId));
     }
 
     // ========== 读己之写一致性 (Read Your Writes) ==========
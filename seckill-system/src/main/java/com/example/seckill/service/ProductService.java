@@ -5,6 +5,8 @@ import com.example.seckill.common.SeckillException;
 import com.example.seckill.entity.Product;
 import com.example.seckill.mapper.ProductMapper;
 import com.example.seckill.monitor.CacheService;
+import com.example.seckill.ratelimit.Bulkhead;
+import com.example.seckill.ratelimit.ResiliencePolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -52,7 +54,13 @@ public class ProductService {
 
     /**
      * 分页查询
+     *
+     * 翻页越深 COUNT + LIMIT 越慢，放在独立的线程池舱壁中执行，最多占用 16 个连接；
+     * 2 秒没有返回时 Tomcat 线程先脱身，超时计入熔断统计，数据库持续变慢时熔断
      */
+    @ResiliencePolicy(name = "product-page", maxConcurrent = 16, bulkhead = Bulkhead.Type.THREAD_POOL,
+            queueCapacity = 64, maxWaitMs = 500, timeoutMs = 2000, circuitBreaker = true,
+            message = "商品列表查询繁忙，请稍后再试")
     public Page<Product> findPage(int pageNum, int pageSize) {
         return productMapper.selectPage(new Page<>(pageNum, pageSize), null);
     }
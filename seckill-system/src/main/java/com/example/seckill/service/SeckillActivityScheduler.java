@@ -0,0 +1,353 @@
+package com.example.seckill.service;
+
+import com.example.seckill.dedup.PurchaseDedupStore;
+import com.example.seckill.entity.SeckillGoods;
+import com.example.seckill.mapper.SeckillGoodsMapper;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀活动定时调度
+ *
+ * SeckillGoods 有 startTime/endTime，但启动预热只加载一次，doSeckill 也不检查时间窗口。
+ * 调度器维护内存中的活动时间表，并用时间轮 (HashedWheelTimer) 驱动每个活动的生命周期：
+ *
+ * 1. 预热：startTime 前 prewarmLead 写入 Redis 库存、清空判重结构、清除本地售罄标记、预加载 Lua SHA
+ * 2. 窗口检查：doSeckill 先查内存时间表，未开始/已结束的请求不访问 Redis 直接拒绝
+ * 3. 结束：endTime 时把本节点租约中未售出的库存归还 Redis
+ * 4. 清理：endTime 后 teardownDelay 删除库存和判重等热点 key（结果 key 保留供查询）
+ *
+ * 只有时间窗口变化才重新安排。库存在秒杀过程中不断扣减，不能作为变化依据；
+ * 管理端修改库存由 SeckillService.updateSeckillGoods 自行同步 Redis 和售罄标记。
+ *
+ * 数千个活动共用一个时间轮线程，到期任务交给工作线程执行，不会互相阻塞；
+ * 定期从数据库刷新活动列表，其他节点修改的活动时间也能同步。
+ */
+@Component
+public class SeckillActivityScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SeckillActivityScheduler.class);
+
+    /**
+     * 活动时间窗口状态
+     */
+    public enum WindowState {
+        OPEN, NOT_STARTED, ENDED, UNKNOWN
+    }
+
+    private final SeckillGoodsMapper goodsMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final PurchaseDedupStore dedupStore;
+    private final SoldOutBroadcaster soldOutBroadcaster;
+    private final StockLeaseManager stockLeaseManager;
+    private final List<DefaultRedisScript<?>> scripts;
+
+    private final boolean enabled;
+    private final long prewarmLeadMs;
+    private final long teardownDelayMs;
+    private final long refreshIntervalMs;
+
+    private final HashedWheelTimer timer;
+    private final ExecutorService worker;
+
+    // 商品ID -> 活动时间窗口
+    private final Map<Long, Activity> activities = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("rawtypes")
+    public SeckillActivityScheduler(SeckillGoodsMapper goodsMapper,
+            StringRedisTemplate redisTemplate,
+            PurchaseDedupStore dedupStore,
+            SoldOutBroadcaster soldOutBroadcaster,
+            StockLeaseManager stockLeaseManager,
+            @Qualifier("seckillScript") DefaultRedisScript<Long> seckillScript,
+            DefaultRedisScript<List> seckillBatchScript,
+            @Value("${seckill.activity.enabled:false}") boolean enabled,
+            @Value("${seckill.activity.prewarm-lead-ms:60000}") long prewarmLeadMs,
+            @Value("${seckill.activity.teardown-delay-ms:600000}") long teardownDelayMs,
+            @Value("${seckill.activity.refresh-interval-ms:60000}") long refreshIntervalMs,
+            @Value("${seckill.activity.wheel-tick-ms:100}") long wheelTickMs,
+            @Value("${seckill.activity.wheel-size:512}") int wheelSize) {
+        this.goodsMapper = goodsMapper;
+        this.redisTemplate = redisTemplate;
+        this.dedupStore = dedupStore;
+        this.soldOutBroadcaster = soldOutBroadcaster;
+        this.stockLeaseManager = stockLeaseManager;
+        this.scripts = List.of(seckillScript, seckillBatchScript);
+        this.enabled = enabled;
+        this.prewarmLeadMs = prewarmLeadMs;
+        this.teardownDelayMs = teardownDelayMs;
+        this.refreshIntervalMs = refreshIntervalMs;
+
+        this.timer = new HashedWheelTimer(r -> {
+            Thread t = new Thread(r, "seckill-activity-wheel");
+            t.setDaemon(true);
+            return t;
+        }, wheelTickMs, TimeUnit.MILLISECONDS, wheelSize);
+
+        AtomicInteger index = new AtomicInteger();
+        this.worker = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "seckill-activity-worker-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 检查活动时间窗口（纯内存，不访问 Redis）
+     * 未登记的商品返回 UNKNOWN，由调用方按原逻辑处理
+     */
+    public WindowState checkWindow(Long goodsId) {
+        if (!enabled) {
+            return WindowState.UNKNOWN;
+        }
+        Activity activity = activities.get(goodsId);
+        if (activity == null) {
+            return WindowState.UNKNOWN;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < activity.startMillis) {
+            return WindowState.NOT_STARTED;
+        }
+        if (now >= activity.endMillis) {
+            return WindowState.ENDED;
+        }
+        return WindowState.OPEN;
+    }
+
+    /**
+     * 加载所有进行中的活动，并启动定期刷新
+     */
+    public void loadAll() {
+        refresh();
+        scheduleRefresh();
+        log.info("秒杀活动调度已启动: 活动 {} 个, prewarmLead={}ms, teardownDelay={}ms",
+                activities.size(), prewarmLeadMs, teardownDelayMs);
+    }
+
+    /**
+     * 登记（或更新）活动，按时间安排预热、结束和清理
+     * 时间窗口没有变化时只更新预热用的库存，不重复安排
+     */
+    public void register(SeckillGoods goods) {
+        if (!enabled || goods == null || goods.getId() == null) {
+            return;
+        }
+
+        long start = toMillis(goods.getStartTime(), Long.MIN_VALUE);
+        long end = toMillis(goods.getEndTime(), Long.MAX_VALUE);
+        int stock = goods.getStockCount() == null ? 0 : goods.getStockCount();
+
+        Activity previous = activities.get(goods.getId());
+        if (previous != null && previous.startMillis == start && previous.endMillis == end) {
+            previous.stock = stock;
+            return;
+        }
+
+        Activity activity = new Activity(goods.getId(), start, end, stock);
+        activities.put(goods.getId(), activity);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < end) {
+            // 预热时间已到（包括活动进行中重启）时立即预热
+            activity.prewarm = timer.newTimeout(t -> worker.execute(() -> prewarm(activity)),
+                    delayUntil(start == Long.MIN_VALUE ? now : start - prewarmLeadMs, now), TimeUnit.MILLISECONDS);
+        }
+        if (end != Long.MAX_VALUE) {
+            activity.close = timer.newTimeout(t -> worker.execute(() -> close(activity)),
+                    delayUntil(end, now), TimeUnit.MILLISECONDS);
+            activity.teardown = timer.newTimeout(t -> worker.execute(() -> teardown(activity)),
+                    delayUntil(end + teardownDelayMs, now), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 移除活动（商品删除时）
+     */
+    public void unregister(Long goodsId) {
+        Activity activity = activities.remove(goodsId);
+        if (activity != null) {
+            activity.cancel();
+        }
+    }
+
+    public int getActivityCount() {
+        return activities.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+        worker.shutdownNow();
+    }
+
+    /**
+     * 预热：库存、判重结构、本地售罄标记、Lua SHA
+     */
+    private void prewarm(Activity activity) {
+        if (activities.get(activity.goodsId) != activity) {
+            return; // 已被更新或移除
+        }
+
+        try {
+            String stockKey = "seckill:stock:" + activity.goodsId;
+            if (System.currentTimeMillis() < activity.startMillis) {
+                // 活动尚未开始：以数据库库存为准，清空上一轮的判重记录
+                redisTemplate.opsForValue().set(stockKey, String.valueOf(activity.stock));
+                dedupStore.clear(activity.goodsId);
+                soldOutBroadcaster.clearLocal(activity.goodsId);
+            } else {
+                // 活动进行中（节点重启或时间调整）：不覆盖其他节点正在扣减的库存，也不清除售罄标记
+                redisTemplate.opsForValue().setIfAbsent(stockKey, String.valueOf(activity.stock));
+            }
+
+            // 预加载脚本，首个请求直接命中 EVALSHA
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (DefaultRedisScript<?> script : scripts) {
+                    connection.scriptingCommands().scriptLoad(
+                            script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+
+            log.info("秒杀活动预热完成: goodsId={}, stock={}", activity.goodsId, activity.stock);
+        } catch (Exception e) {
+            log.error("秒杀活动预热失败: goodsId={}", activity.goodsId, e);
+        }
+    }
+
+    /**
+     * 结束：本节点租约中未售出的库存归还 Redis（结束后的请求在本地拒绝，不会再续租）
+     */
+    private void close(Activity activity) {
+        if (activities.get(activity.goodsId) != activity) {
+            return;
+        }
+
+        try {
+            stockLeaseManager.release(activity.goodsId);
+        } catch (Exception e) {
+            log.error("秒杀活动归还租约失败: goodsId={}", activity.goodsId, e);
+        }
+    }
+
+    /**
+     * 清理：删除库存和判重 key
+     * 活动仍保留在时间表中，结束后的请求继续在本地拒绝
+     */
+    private void teardown(Activity activity) {
+        if (activities.get(activity.goodsId) != activity) {
+            return;
+        }
+
+        try {
+            // 结束时归还失败的租约再试一次
+            stockLeaseManager.release(activity.goodsId);
+            redisTemplate.unlink("seckill:stock:" + activity.goodsId);
+            dedupStore.clear(activity.goodsId);
+            soldOutBroadcaster.clearLocal(activity.goodsId);
+            log.info("秒杀活动已清理: goodsId={}", activity.goodsId);
+        } catch (Exception e) {
+            log.error("秒杀活动清理失败: goodsId={}", activity.goodsId, e);
+        }
+    }
+
+    /**
+     * 从数据库刷新活动列表，已下线的商品移出时间表
+     */
+    private void refresh() {
+        try {
+            Set<Long> ids = new HashSet<>();
+            for (SeckillGoods goods : goodsMapper.selectOngoingGoods()) {
+                register(goods);
+                ids.add(goods.getId());
+            }
+            for (Long goodsId : List.copyOf(activities.keySet())) {
+                if (!ids.contains(goodsId)) {
+                    unregister(goodsId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("刷新秒杀活动失败", e);
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (!enabled || refreshIntervalMs <= 0) {
+            return;
+        }
+        timer.newTimeout(t -> worker.execute(() -> {
+            refresh();
+            scheduleRefresh();
+        }), refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private long delayUntil(long target, long now) {
+        return Math.max(0, target - now);
+    }
+
+    private long toMillis(LocalDateTime time, long defaultValue) {
+        return time == null ? defaultValue : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 单个活动的时间窗口
+     */
+    private static final class Activity {
+        private final Long goodsId;
+        private final long startMillis;
+        private final long endMillis;
+        private volatile int stock;
+        private volatile Timeout prewarm;
+        private volatile Timeout close;
+        private volatile Timeout teardown;
+
+        private Activity(Long goodsId, long startMillis, long endMillis, int stock) {
+            this.goodsId = goodsId;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.stock = stock;
+        }
+
+        private void cancel() {
+            if (prewarm != null) {
+                prewarm.cancel();
+            }
+            if (close != null) {
+                close.cancel();
+            }
+            if (teardown != null) {
+                teardown.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.seckill.service;
+
+import com.example.seckill.dedup.PurchaseDedupStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * 秒杀 Lua 微批处理器
+ *
+ * 秒杀高峰时每个请求单独执行一次 Lua 脚本，Redis 往返延迟 (RTT) 成为单节点吞吐上限。
+ * 微批处理器把一个时间窗口内的并发请求按商品分组，每组只执行一次 seckill_batch.lua：
+ *
+ * 1. 取到第一个请求后，最多再等待 window 时间收集后续请求
+ * 2. 凑满 maxBatchSize 时立即发送，不再等待
+ * 3. 按 goodsId 分组，每组一次 EVALSHA，返回与用户一一对应的 1/0/-1
+ *
+ * 派发线程执行上一批时新到达的请求会继续堆积，负载越高批次越大，
+ * 低负载时单个请求最多只多等待一个窗口。
+ *
+ * 等待超时的请求会被取消：还没执行的不再发给 Redis；已在执行中、抢到库存的，
+ * 由派发线程回补库存并移除购买记录，不会出现用户拿到失败、库存却已扣掉的情况。
+ */
+public class SeckillBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SeckillBatcher.class);
+
+    private final StringRedisTemplate redisTemplate;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> batchScript;
+    private final PurchaseDedupStore dedupStore;
+    private final LongConsumer restockListener;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<SeckillRequest> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * 创建微批处理器
+     *
+     * @param redisTemplate Redis 模板
+     * @param batchScript   批量秒杀脚本 (lua/seckill_batch.lua)
+     * @param dedupStore      已购买用户存储
+     * @param restockListener 回补超时请求的库存后调用（广播 RESTOCK）
+     * @param windowMicros    攒批窗口（微秒）
+     * @param maxBatchSize    单批最大请求数
+     */
+    @SuppressWarnings("rawtypes")
+    public SeckillBatcher(StringRedisTemplate redisTemplate, DefaultRedisScript<List> batchScript,
+            PurchaseDedupStore dedupStore, LongConsumer restockListener, long windowMicros, int maxBatchSize) {
+        this.redisTemplate = redisTemplate;
+        this.batchScript = batchScript;
+        this.dedupStore = dedupStore;
+        this.restockListener = restockListener;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+
+        this.dispatcher = new Thread(this::dispatchLoop, "seckill-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+
+        log.info("秒杀微批处理器启动: window={}μs, maxBatchSize={}", windowMicros, this.maxBatchSize);
+    }
+
+    /**
+     * 提交秒杀请求并等待本用户的结果
+     *
+     * @return 1 成功，0 库存不足，-1 重复购买；null 表示执行失败或超时
+     */
+    public Long submit(Long userId, Long goodsId, long timeoutMs) {
+        if (!running) {
+            return null;
+        }
+
+        // 提前计算成员值，非法 userId 直接抛给调用方，不影响同批其他请求
+        SeckillRequest request = new SeckillRequest(userId, goodsId, dedupStore.member(userId));
+        queue.offer(request);
+
+        try {
+            return request.future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return abandon(request);
+        } catch (ExecutionException e) {
+            log.error("批量 Lua 脚本执行失败: userId={}, goodsId={}", userId, goodsId, e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            log.error("等待批量秒杀结果超时: userId={}, goodsId={}", userId, goodsId);
+            return abandon(request);
+        }
+    }
+
+    /**
+     * 放弃等待：取消请求，派发线程会跳过它或回补它抢到的库存
+     *
+     * @return 取消前已经有结果时返回该结果，否则 null
+     */
+    private Long abandon(SeckillRequest request) {
+        if (request.future.cancel(false) || request.future.isCompletedExceptionally()) {
+            return null;
+        }
+        // 取消前刚好完成：按实际结果返回，已扣减的库存和购买记录保持一致
+        return request.future.join();
+    }
+
+    /**
+     * 停止派发线程，未处理的请求直接失败
+     */
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+
+        List<SeckillRequest> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        IllegalStateException closed = new IllegalStateException("秒杀微批处理器已关闭");
+        pending.forEach(r -> r.future.completeExceptionally(closed));
+
+        log.info("秒杀微批处理器已关闭，丢弃排队请求 {} 个", pending.size());
+    }
+
+    private void dispatchLoop() {
+        List<SeckillRequest> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                // 阻塞等待第一个请求
+                batch.add(queue.take());
+
+                // 在窗口内继续收集，凑满即发
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    SeckillRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                executeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("秒杀微批派发异常", e);
+                batch.forEach(r -> r.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按商品分组，每组执行一次批量脚本
+     */
+    private void executeBatch(List<SeckillRequest> batch) {
+        Map<Long, List<SeckillRequest>> byGoods = new LinkedHashMap<>();
+        for (SeckillRequest request : batch) {
+            // 等待方已超时取消的请求不再执行
+            if (!request.future.isDone()) {
+                byGoods.computeIfAbsent(request.goodsId, k -> new ArrayList<>()).add(request);
+            }
+        }
+
+        for (Map.Entry<Long, List<SeckillRequest>> entry : byGoods.entrySet()) {
+            Long goodsId = entry.getKey();
+            List<SeckillRequest> group = entry.getValue();
+
+            try {
+                // KEYS: 库存 key + 每个用户的已购买 key；ARGV: 判重方式 + 每个用户的成员值
+                List<String> keys = new ArrayList<>(group.size() + 1);
+                String[] args = new String[group.size() + 1];
+                keys.add("seckill:stock:" + goodsId);
+                args[0] = dedupStore.mode();
+                for (int i = 0; i < group.size(); i++) {
+                    SeckillRequest request = group.get(i);
+                    keys.add(dedupStore.key(goodsId, request.userId));
+                    args[i + 1] = request.member;
+                }
+
+                List<?> results = redisTemplate.execute(batchScript, keys, (Object[]) args);
+
+                if (results == null || results.size() != group.size()) {
+                    throw new IllegalStateException("批量脚本返回结果数量不匹配: expected="
+                            + group.size() + ", actual=" + (results == null ? null : results.size()));
+                }
+
+                for (int i = 0; i < group.size(); i++) {
+                    SeckillRequest request = group.get(i);
+                    long result = ((Number) results.get(i)).longValue();
+                    // 执行期间等待方已超时取消：抢到的库存没有人下单，回补
+                    if (!request.future.complete(result) && result == 1) {
+                        compensate(goodsId, request);
+                    }
+                }
+
+                log.debug("批量秒杀完成: goodsId={}, batchSize={}", goodsId, group.size());
+            } catch (Exception e) {
+                group.forEach(r -> r.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * 回补已取消请求抢到的库存，移除购买记录，用户重试时不会被判为重复购买
+     */
+    private void compensate(Long goodsId, SeckillRequest request) {
+        try {
+            redisTemplate.opsForValue().increment("seckill:stock:" + goodsId);
+            dedupStore.remove(goodsId, request.userId);
+            restockListener.accept(goodsId);
+            log.warn("等待方已超时，回补库存: userId={}, goodsId={}", request.userId, goodsId);
+        } catch (Exception e) {
+            log.error("回补超时请求的库存失败: userId={}, goodsId={}", request.userId, goodsId, e);
+        }
+    }
+
+    /**
+     * 排队中的秒杀请求
+     */
+    private static final class SeckillRequest {
+        private final Long userId;
+        private final Long goodsId;
+        private final String member;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private SeckillRequest(Long userId, Long goodsId, String member) {
+            this.userId = userId;
+            this.goodsId = goodsId;
+            this.member = member;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.seckill.service;
+
+import com.example.seckill.common.Result;
+import com.example.seckill.monitor.ThreadPoolMonitor;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 秒杀结果长轮询通知
+ *
+ * 客户端轮询 getSeckillResult 时每次都要 GET 结果 + 查已购买记录 + 可能查订单，轮询流量甚至超过下单流量。
+ * 长轮询模式下请求挂起为 DeferredResult，不占用 Servlet 线程：
+ *
+ * 1. 消费者写入 seckill:result:{userId}:{goodsId} 后，向频道 seckill:result:notify 发布该 key
+ * 2. Pub/Sub 广播到所有节点，持有该连接的节点在 resolver 线程池中查询一次结果并完成请求
+ *    （监听线程只负责派发，不访问 Redis / 数据库）
+ * 3. 超时仍未收到通知（或 resolver 线程池已满）时，回退到原有的查询逻辑返回当前状态（排队中 / 未参与）
+ *
+ * 等待数超过上限时不再挂起，直接走查询逻辑。
+ */
+@Component
+public class SeckillResultNotifier implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SeckillResultNotifier.class);
+
+    public static final String CHANNEL = "seckill:result:notify";
+
+    private final StringRedisTemplate redisTemplate;
+    private final long defaultTimeoutMs;
+    private final long maxTimeoutMs;
+    private final int maxWaiters;
+
+    // 结果 key -> 等待中的请求
+    private final Map<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger(0);
+
+    // 收到通知后查询结果的线程池
+    private final ThreadPoolExecutor resolveExecutor;
+
+    public SeckillResultNotifier(StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            ThreadPoolMonitor threadPoolMonitor,
+            @Value("${seckill.result.long-poll.timeout-ms:10000}") long defaultTimeoutMs,
+            @Value("${seckill.result.long-poll.max-timeout-ms:30000}") long maxTimeoutMs,
+            @Value("${seckill.result.long-poll.max-waiters:10000}") int maxWaiters,
+            @Value("${seckill.result.long-poll.resolve-threads:4}") int resolveThreads) {
+        this.redisTemplate = redisTemplate;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+        this.maxWaiters = maxWaiters;
+
+        AtomicInteger index = new AtomicInteger();
+        this.resolveExecutor = new ThreadPoolExecutor(resolveThreads, resolveThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxWaiters)), r -> {
+                    Thread t = new Thread(r, "seckill-result-resolver-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.resolveExecutor.allowCoreThreadTimeOut(true);
+        threadPoolMonitor.registerThreadPool("seckill-result-resolver", resolveExecutor);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 挂起等待秒杀结果
+     *
+     * @param timeoutMs 等待超时，null 使用默认值
+     * @param resolver  查询当前结果（收到通知或超时时调用）
+     */
+    public DeferredResult<Result<Object>> await(Long userId, Long goodsId, Long timeoutMs,
+            Supplier<Result<Object>> resolver) {
+        long timeout = timeoutMs == null ? defaultTimeoutMs : Math.max(0, Math.min(timeoutMs, maxTimeoutMs));
+        DeferredResult<Result<Object>> deferred = new DeferredResult<>(timeout);
+
+        if (timeout == 0 || waiterCount.get() >= maxWaiters) {
+            deferred.setResult(resolver.get());
+            return deferred;
+        }
+
+        String resultKey = resultKey(userId, goodsId);
+        Waiter waiter = new Waiter(deferred, resolver);
+        // 在 compute 内加入：与 removeWaiter 删除空集合互斥，不会加到已被移出 map 的集合上
+        waiters.compute(resultKey, (k, set) -> {
+            Set<Waiter> pending = set == null ? ConcurrentHashMap.newKeySet() : set;
+            pending.add(waiter);
+            waiterCount.incrementAndGet();
+            return pending;
+        });
+
+        deferred.onTimeout(() -> waiter.complete());
+        deferred.onError(e -> waiter.complete());
+        deferred.onCompletion(() -> removeWaiter(resultKey, waiter));
+
+        // 注册前结果可能已经写入，注册后再检查一次，避免错过通知
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(resultKey))) {
+            waiter.complete();
+        }
+        return deferred;
+    }
+
+    /**
+     * 通知结果已写入（单条）
+     */
+    public void publish(Long userId, Long goodsId) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, resultKey(userId, goodsId));
+        } catch (Exception e) {
+            // 通知失败时等待方超时后回退到查询
+            log.warn("秒杀结果通知发送失败: userId={}, goodsId={}", userId, goodsId, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String resultKey = new String(message.getBody(), StandardCharsets.UTF_8);
+        Set<Waiter> pending = waiters.get(resultKey);
+        if (pending == null) {
+            return;
+        }
+        for (Waiter waiter : pending) {
+            try {
+                resolveExecutor.execute(waiter::complete);
+            } catch (RejectedExecutionException e) {
+                // 线程池已满：等待方超时后回退到查询
+                log.debug("秒杀结果查询排队已满: {}", resultKey);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resolveExecutor.shutdownNow();
+    }
+
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    public static String resultKey(Long userId, Long goodsId) {
+        return "seckill:result:" + userId + ":" + goodsId;
+    }
+
+    private void removeWaiter(String resultKey, Waiter waiter) {
+        waiters.computeIfPresent(resultKey, (k, set) -> {
+            if (set.remove(waiter)) {
+                waiterCount.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 一个挂起的请求
+     */
+    private static final class Waiter {
+        private final DeferredResult<Result<Object>> deferred;
+        private final Supplier<Result<Object>> resolver;
+
+        private Waiter(DeferredResult<Result<Object>> deferred, Supplier<Result<Object>> resolver) {
+            this.deferred = deferred;
+            this.resolver = resolver;
+        }
+
+        private void complete() {
+            if (deferred.isSetOrExpired()) {
+                return;
+            }
+            try {
+                deferred.setResult(resolver.get());
+            } catch (Exception e) {
+                log.error("查询秒杀结果失败", e);
+                deferred.setResult(Result.error("系统繁忙，请稍后重试"));
+            }
+        }
+    }
+}
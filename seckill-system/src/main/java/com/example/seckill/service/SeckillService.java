@@ -2,13 +2,16 @@ package com.example.seckill.service;
 
 import com.example.seckill.common.Result;
 import com.example.seckill.common.SeckillException;
+import com.example.seckill.dedup.PurchaseDedupStore;
 import com.example.seckill.entity.SeckillGoods;
 import com.example.seckill.entity.SeckillOrder;
 import com.example.seckill.mapper.SeckillGoodsMapper;
 import com.example.seckill.mapper.SeckillOrderMapper;
 import com.example.seckill.mq.SeckillMessageProducer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -17,8 +20,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 秒杀服务
@@ -32,24 +33,56 @@ public class SeckillService {
     private final SeckillOrderMapper orderMapper;
     private final StringRedisTemplate redisTemplate;
     private final SeckillMessageProducer messageProducer;
+    private final StockLeaseManager stockLeaseManager;
+    private final SoldOutBroadcaster soldOutBroadcaster;
+    private final PurchaseDedupStore dedupStore;
+    private final SeckillActivityScheduler activityScheduler;
     private final DefaultRedisScript<Long> seckillScript;
 
-    // 本地内存标记：商品是否售罄（减少 Redis 访问）
-    private final Map<Long, Boolean> localSoldOutMap = new ConcurrentHashMap<>();
+    // Lua 微批处理器（未开启时为 null，走单次调用）
+    private final SeckillBatcher batcher;
+    private final long batchTimeoutMs;
 
     public SeckillService(SeckillGoodsMapper goodsMapper,
             SeckillOrderMapper orderMapper,
             StringRedisTemplate redisTemplate,
-            SeckillMessageProducer messageProducer) {
+            SeckillMessageProducer messageProducer,
+            StockLeaseManager stockLeaseManager,
+            SoldOutBroadcaster soldOutBroadcaster,
+            PurchaseDedupStore dedupStore,
+            SeckillActivityScheduler activityScheduler,
+            @SuppressWarnings("rawtypes") DefaultRedisScript<List> seckillBatchScript,
+            @Value("${seckill.batch.enabled:false}") boolean batchEnabled,
+            @Value("${seckill.batch.window-micros:300}") long batchWindowMicros,
+            @Value("${seckill.batch.max-size:100}") int batchMaxSize,
+            @Value("${seckill.batch.timeout-ms:3000}") long batchTimeoutMs) {
         this.goodsMapper = goodsMapper;
         this.orderMapper = orderMapper;
         this.redisTemplate = redisTemplate;
         this.messageProducer = messageProducer;
+        this.stockLeaseManager = stockLeaseManager;
+        this.soldOutBroadcaster = soldOutBroadcaster;
+        this.dedupStore = dedupStore;
+        this.activityScheduler = activityScheduler;
 
         // 初始化 Lua 脚本
         this.seckillScript = new DefaultRedisScript<>();
         this.seckillScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/seckill.lua")));
         this.seckillScript.setResultType(Long.class);
+
+        // 初始化微批处理器
+        this.batcher = batchEnabled
+                ? new SeckillBatcher(redisTemplate, seckillBatchScript, dedupStore,
+                        soldOutBroadcaster::markRestocked, batchWindowMicros, batchMaxSize)
+                : null;
+        this.batchTimeoutMs = batchTimeoutMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
     }
 
     /**
@@ -62,20 +95,26 @@ public class SeckillService {
     public Result<String> doSeckill(Long userId, Long goodsId) {
         log.info("用户 {} 开始秒杀商品 {}", userId, goodsId);
 
-        // 1. 本地内存标记检查（减少 Redis 访问）
-        if (Boolean.TRUE.equals(localSoldOutMap.get(goodsId))) {
+        // 0. 活动时间窗口检查（纯内存，未开始/已结束不访问 Redis）
+        switch (activityScheduler.checkWindow(goodsId)) {
+            case NOT_STARTED -> {
+                return Result.fail("秒杀尚未开始");
+            }
+            case ENDED -> {
+                return Result.fail("秒杀已结束");
+            }
+            default -> {
+            }
+        }
+
+        // 1. 本地内存标记检查（减少 Redis 访问，售罄状态由集群广播同步）
+        if (soldOutBroadcaster.isSoldOut(goodsId)) {
             log.warn("商品 {} 本地标记已售罄", goodsId);
             return Result.fail("商品已售罄");
         }
 
         // 2. 执行 Lua 脚本：原子操作检查库存 + 扣减库存 + 记录购买
-        String stockKey = "seckill:stock:" + goodsId;
-        String boughtKey = "seckill:bought:" + goodsId;
-
-        Long result = redisTemplate.execute(
-                seckillScript,
-                Arrays.asList(stockKey, boughtKey),
-                userId.toString());
+        Long result = executeSeckillScript(userId, goodsId);
 
         if (result == null) {
             log.error("Lua 脚本执行失败");
@@ -83,8 +122,8 @@ public class SeckillService {
         }
 
         if (result == 0) {
-            // 库存不足，设置本地标记
-            localSoldOutMap.put(goodsId, true);
+            // 库存不足，设置本地标记并广播给其他节点
+            soldOutBroadcaster.markSoldOut(goodsId);
             log.warn("商品 {} 库存不足", goodsId);
             return Result.fail("商品已售罄");
         }
@@ -108,6 +147,59 @@ public class SeckillService {
         return Result.success("秒杀成功，正在排队处理您的订单", null);
     }
 
+    /**
+     * 执行秒杀脚本
+     * 开启库存租约时在本地扣减库存；开启微批时与同一窗口内的其他请求合并为一次 Redis 调用
+     */
+    private Long executeSeckillScript(Long userId, Long goodsId) {
+        if (stockLeaseManager.isEnabled()) {
+            return executeWithLease(userId, goodsId);
+        }
+
+        if (batcher != null) {
+            return batcher.submit(userId, goodsId, batchTimeoutMs);
+        }
+
+        String stockKey = "seckill:stock:" + goodsId;
+        String boughtKey = dedupStore.key(goodsId, userId);
+
+        return redisTemplate.execute(
+                seckillScript,
+                Arrays.asList(stockKey, boughtKey),
+                dedupStore.member(userId),
+                dedupStore.mode());
+    }
+
+    /**
+     * 租约模式秒杀
+     * 库存在本地租约中扣减，只有去重需要访问 Redis（SADD/SETBIT 原子判重，跨节点正确）
+     */
+    private Long executeWithLease(Long userId, Long goodsId) {
+        // 1. 本地扣减库存
+        if (!stockLeaseManager.tryAcquire(goodsId)) {
+            return 0L;
+        }
+
+        // 2. 记录购买，已存在则为重复购买
+        Boolean added;
+        try {
+            added = dedupStore.addIfAbsent(goodsId, userId);
+        } catch (Exception e) {
+            stockLeaseManager.giveBack(goodsId);
+            throw e;
+        }
+
+        if (added == null) {
+            stockLeaseManager.giveBack(goodsId);
+            return null;
+        }
+        if (!added) {
+            stockLeaseManager.giveBack(goodsId);
+            return -1L;
+        }
+        return 1L;
+    }
+
     /**
      * 查询秒杀结果
      */
@@ -127,9 +219,7 @@ public class SeckillService {
         }
 
         // 2. 检查是否在排队中
-        String boughtKey = "seckill:bought:" + goodsId;
-        Boolean isMember = redisTemplate.opsForSet().isMember(boughtKey, userId.toString());
-        if (Boolean.TRUE.equals(isMember)) {
+        if (dedupStore.contains(goodsId, userId)) {
             return Result.success("排队中，请稍后查询", null);
         }
 
@@ -166,8 +256,8 @@ public class SeckillService {
      * 重置秒杀（测试用）
      */
     public void resetSeckill(Long goodsId) {
-        // 清除本地标记
-        localSoldOutMap.remove(goodsId);
+        // 作废旧库存的租约
+        stockLeaseManager.discard(goodsId);
 
         // 查询商品
         SeckillGoods goods = goodsMapper.selectById(goodsId);
@@ -180,8 +270,10 @@ public class SeckillService {
         redisTemplate.opsForValue().set(stockKey, String.valueOf(goods.getStockCount()));
 
         // 清除已购买记录
-        String boughtKey = "seckill:bought:" + goodsId;
-        redisTemplate.delete(boughtKey);
+        dedupStore.clear(goodsId);
+
+        // 清除所有节点的售罄标记和租约
+        soldOutBroadcaster.markReset(goodsId);
 
         log.info("秒杀已重置: goodsId={}", goodsId);
     }
@@ -191,10 +283,16 @@ public class SeckillService {
      */
     private void rollbackRedis(Long userId, Long goodsId) {
         String stockKey = "seckill:stock:" + goodsId;
-        String boughtKey = "seckill:bought:" + goodsId;
 
-        redisTemplate.opsForValue().increment(stockKey);
-        redisTemplate.opsForSet().remove(boughtKey, userId.toString());
+        if (stockLeaseManager.isEnabled()) {
+            stockLeaseManager.giveBack(goodsId);
+        } else {
+            redisTemplate.opsForValue().increment(stockKey);
+        }
+        dedupStore.remove(goodsId, userId);
+
+        // 库存已回补，其他节点可能已标记售罄
+        soldOutBroadcaster.markRestocked(goodsId);
     }
 
     // ========== 管理接口 ==========
@@ -210,6 +308,9 @@ public class SeckillService {
         String stockKey = "seckill:stock:" + goods.getId();
         redisTemplate.opsForValue().set(stockKey, String.valueOf(goods.getStockCount()));
 
+        // 登记活动时间窗口，按开始时间预热
+        activityScheduler.register(goods);
+
         log.info("创建秒杀商品成功: id={}, name={}", goods.getId(), goods.getGoodsName());
         return goods;
     }
@@ -220,17 +321,21 @@ public class SeckillService {
     public SeckillGoods updateSeckillGoods(SeckillGoods goods) {
         goodsMapper.updateById(goods);
 
-        // 同步库存到 Redis
+        // 同步库存到 Redis，所有节点清除售罄标记（库存变化时同时作废租约）
         if (goods.getStockCount() != null) {
             String stockKey = "seckill:stock:" + goods.getId();
             redisTemplate.opsForValue().set(stockKey, String.valueOf(goods.getStockCount()));
+            soldOutBroadcaster.markReset(goods.getId());
+        } else {
+            soldOutBroadcaster.markRestocked(goods.getId());
         }
 
-        // 清除售罄标记
-        localSoldOutMap.remove(goods.getId());
+        // 活动时间可能变化，重新安排预热和清理
+        SeckillGoods updated = goodsMapper.selectById(goods.getId());
+        activityScheduler.register(updated);
 
         log.info("更新秒杀商品成功: id={}", goods.getId());
-        return goodsMapper.selectById(goods.getId());
+        return updated;
     }
 
     /**
@@ -238,15 +343,15 @@ public class SeckillService {
      */
     public void deleteSeckillGoods(Long goodsId) {
         goodsMapper.deleteById(goodsId);
+        activityScheduler.unregister(goodsId);
 
         // 清除 Redis 数据
         String stockKey = "seckill:stock:" + goodsId;
-        String boughtKey = "seckill:bought:" + goodsId;
         redisTemplate.delete(stockKey);
-        redisTemplate.delete(boughtKey);
+        dedupStore.clear(goodsId);
 
-        // 清除本地标记
-        localSoldOutMap.remove(goodsId);
+        // 清除所有节点的售罄标记和租约
+        soldOutBroadcaster.markReset(goodsId);
 
         log.info("删除秒杀商品成功: id={}", goodsId);
     }
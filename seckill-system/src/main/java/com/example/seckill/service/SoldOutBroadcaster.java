@@ -0,0 +1,220 @@
+package com.example.seckill.service;
+
+import com.example.seckill.entity.SeckillGoods;
+import com.example.seckill.mapper.SeckillGoodsMapper;
+import com.example.seckill.monitor.ThreadPoolMonitor;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 售罄标记集群广播
+ *
+ * 本地售罄标记只在收到 Lua 返回 0 的节点上生效，其他节点要各自撞到 0 才会停止访问 Redis。
+ * 通过 Redis Pub/Sub 广播状态变化，所有节点在毫秒级内同步本地标记：
+ *
+ * - SOLD_OUT: 某节点发现售罄，其他节点置位本地标记
+ * - RESTOCK:  库存回补（订单失败、回滚），清除本地标记
+ * - RESET:    管理端重置/修改库存，清除标记并作废本地库存租约
+ *
+ * 节点启动和断线重连（重新订阅）时从 Redis 重新同步一次，弥补期间丢失的消息。
+ * 订阅回调运行在共享的 redis-listener 线程上，同步要查库和 MGET，交给单独的线程执行。
+ */
+@Component
+public class SoldOutBroadcaster implements MessageListener, SubscriptionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SoldOutBroadcaster.class);
+
+    public static final String CHANNEL = "seckill:soldout";
+
+    private static final String SOLD_OUT = "SOLD_OUT";
+    private static final String RESTOCK = "RESTOCK";
+    private static final String RESET = "RESET";
+
+    private final StringRedisTemplate redisTemplate;
+    private final SeckillGoodsMapper goodsMapper;
+    private final StockLeaseManager stockLeaseManager;
+
+    // 本地内存标记：商品是否售罄（减少 Redis 访问）
+    private final Map<Long, Boolean> soldOutFlags = new ConcurrentHashMap<>();
+
+    // 重新同步：单线程，已有一次排队时丢弃重复的请求（排队的那次会读到最新状态）
+    private final ThreadPoolExecutor resyncExecutor;
+
+    public SoldOutBroadcaster(StringRedisTemplate redisTemplate,
+            SeckillGoodsMapper goodsMapper,
+            StockLeaseManager stockLeaseManager,
+            RedisMessageListenerContainer listenerContainer,
+            ThreadPoolMonitor threadPoolMonitor) {
+        this.redisTemplate = redisTemplate;
+        this.goodsMapper = goodsMapper;
+        this.stockLeaseManager = stockLeaseManager;
+        // 租约归还的库存可能让其他节点已置位的售罄标记失效
+        stockLeaseManager.setRestockListener(this::markRestocked);
+
+        this.resyncExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), r -> {
+                    Thread t = new Thread(r, "soldout-resync");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        this.resyncExecutor.allowCoreThreadTimeOut(true);
+        threadPoolMonitor.registerThreadPool("soldout-resync", resyncExecutor);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 本地标记是否售罄
+     */
+    public boolean isSoldOut(Long goodsId) {
+        return Boolean.TRUE.equals(soldOutFlags.get(goodsId));
+    }
+
+    /**
+     * 标记售罄并广播（仅在状态变化时广播）
+     */
+    public void markSoldOut(Long goodsId) {
+        if (soldOutFlags.put(goodsId, Boolean.TRUE) == null) {
+            publish(SOLD_OUT, goodsId);
+        }
+    }
+
+    /**
+     * 库存回补：清除售罄标记并广播
+     */
+    public void markRestocked(Long goodsId) {
+        soldOutFlags.remove(goodsId);
+        publish(RESTOCK, goodsId);
+    }
+
+    /**
+     * 库存重置：清除售罄标记、作废本地租约并广播
+     */
+    public void markReset(Long goodsId) {
+        soldOutFlags.remove(goodsId);
+        stockLeaseManager.discard(goodsId);
+        publish(RESET, goodsId);
+    }
+
+    /**
+     * 仅清除本节点的售罄标记和租约（活动预热/清理时各节点各自执行，不广播）
+     */
+    public void clearLocal(Long goodsId) {
+        soldOutFlags.remove(goodsId);
+        stockLeaseManager.discard(goodsId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf(':');
+        if (sep <= 0) {
+            log.warn("无法识别的售罄广播: {}", body);
+            return;
+        }
+
+        String type = body.substring(0, sep);
+        Long goodsId;
+        try {
+            goodsId = Long.valueOf(body.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的售罄广播: {}", body);
+            return;
+        }
+
+        switch (type) {
+            case SOLD_OUT -> {
+                // 本节点还有租约库存时继续售卖，用完后自己会再次标记
+                if (stockLeaseManager.getLocalRemaining(goodsId) == 0) {
+                    soldOutFlags.put(goodsId, Boolean.TRUE);
+                }
+            }
+            case RESTOCK -> soldOutFlags.remove(goodsId);
+            case RESET -> {
+                soldOutFlags.remove(goodsId);
+                stockLeaseManager.discard(goodsId);
+            }
+            default -> log.warn("无法识别的售罄广播: {}", body);
+        }
+        log.debug("收到售罄广播: {}", body);
+    }
+
+    /**
+     * 订阅成功（启动或断线重连后）时异步重新同步，不阻塞 redis-listener 线程
+     */
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        log.info("售罄广播频道已订阅，重新同步本地标记");
+        resyncExecutor.execute(this::resync);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resyncExecutor.shutdownNow();
+    }
+
+    /**
+     * 以 Redis 库存为准重建本地售罄标记
+     */
+    public void resync() {
+        try {
+            List<SeckillGoods> goodsList = goodsMapper.selectOngoingGoods();
+            if (goodsList.isEmpty()) {
+                soldOutFlags.clear();
+                return;
+            }
+
+            List<String> stockKeys = new ArrayList<>(goodsList.size());
+            for (SeckillGoods goods : goodsList) {
+                stockKeys.add("seckill:stock:" + goods.getId());
+            }
+            List<String> stocks = redisTemplate.opsForValue().multiGet(stockKeys);
+            if (stocks == null) {
+                return;
+            }
+
+            int soldOut = 0;
+            for (int i = 0; i < goodsList.size(); i++) {
+                Long goodsId = goodsList.get(i).getId();
+                String stock = stocks.get(i);
+                boolean empty = stock != null && Long.parseLong(stock) <= 0
+                        && stockLeaseManager.getLocalRemaining(goodsId) == 0;
+                if (empty) {
+                    soldOutFlags.put(goodsId, Boolean.TRUE);
+                    soldOut++;
+                } else {
+                    soldOutFlags.remove(goodsId);
+                }
+            }
+            log.info("售罄标记同步完成: 商品 {} 个, 售罄 {} 个", goodsList.size(), soldOut);
+        } catch (Exception e) {
+            log.error("售罄标记同步失败", e);
+        }
+    }
+
+    private void publish(String type, Long goodsId) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, type + ":" + goodsId);
+        } catch (Exception e) {
+            // 广播失败不影响本节点，其他节点仍可通过 Lua 返回 0 自行发现
+            log.warn("售罄广播发送失败: type={}, goodsId={}", type, goodsId, e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.seckill.service;
 
+import com.example.seckill.dedup.PurchaseDedupStore;
 import com.example.seckill.entity.SeckillGoods;
 import com.example.seckill.mapper.SeckillGoodsMapper;
 import org.slf4j.Logger;
@@ -21,10 +22,18 @@ public class StockInitializer implements CommandLineRunner {
 
     private final SeckillGoodsMapper goodsMapper;
     private final StringRedisTemplate redisTemplate;
+    private final SoldOutBroadcaster soldOutBroadcaster;
+    private final PurchaseDedupStore dedupStore;
+    private final SeckillActivityScheduler activityScheduler;
 
-    public StockInitializer(SeckillGoodsMapper goodsMapper, StringRedisTemplate redisTemplate) {
+    public StockInitializer(SeckillGoodsMapper goodsMapper, StringRedisTemplate redisTemplate,
+            SoldOutBroadcaster soldOutBroadcaster, PurchaseDedupStore dedupStore,
+            SeckillActivityScheduler activityScheduler) {
         this.goodsMapper = goodsMapper;
         this.redisTemplate = redisTemplate;
+        this.soldOutBroadcaster = soldOutBroadcaster;
+        this.dedupStore = dedupStore;
+        this.activityScheduler = activityScheduler;
     }
 
     @Override
@@ -32,24 +41,34 @@ public class StockInitializer implements CommandLineRunner {
         log.info("========== 开始预热秒杀库存 ==========");
 
         try {
+            if (activityScheduler.isEnabled()) {
+                // 由活动调度器按各自的开始时间预热，进行中的活动立即预热（不覆盖已有库存）
+                activityScheduler.loadAll();
+                soldOutBroadcaster.resync();
+                log.info("========== 已交由活动调度器预热，共 {} 个活动 ==========",
+                        activityScheduler.getActivityCount());
+                return;
+            }
+
             // 查询所有进行中的秒杀商品
             List<SeckillGoods> goodsList = goodsMapper.selectOngoingGoods();
 
             for (SeckillGoods goods : goodsList) {
                 // 库存 key
                 String stockKey = "seckill:stock:" + goods.getId();
-                // 已购买用户集合 key
-                String boughtKey = "seckill:bought:" + goods.getId();
 
                 // 设置库存
                 redisTemplate.opsForValue().set(stockKey, String.valueOf(goods.getStockCount()));
 
-                // 清空已购买集合（如果是重启的话）
-                redisTemplate.delete(boughtKey);
+                // 清空已购买记录（如果是重启的话）
+                dedupStore.clear(goods.getId());
 
                 log.info("预热商品 [{}]: 库存={}", goods.getGoodsName(), goods.getStockCount());
             }
 
+            // 以预热后的库存重建售罄标记
+            soldOutBroadcaster.resync();
+
             log.info("========== 库存预热完成，共 {} 个商品 ==========", goodsList.size());
         } catch (Exception e) {
             log.error("库存预热失败", e);
@@ -0,0 +1,303 @@
+package com.example.seckill.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * 本地库存租约管理
+ *
+ * 所有节点共用一个 seckill:stock:{goodsId} 热点 key，每个请求都要访问它。
+ * 租约模式下节点按块 (blockSize) 从 Redis 领取库存到本地无锁计数器：
+ *
+ * 1. 请求在本地计数器上 CAS 扣减，命中时不访问库存 key
+ * 2. 本地耗尽时才回 Redis 续租，续租为 0 即视为售罄
+ * 3. 活动结束（SeckillActivityScheduler）、租约闲置超过 idleReleaseMs 或节点关闭时，把未用完的库存归还 Redis；
+ *    商品重置时作废租约。归还后通知 restockListener（SoldOutBroadcaster 广播 RESTOCK），
+ *    已按售罄拦截请求的节点重新放行
+ *
+ * 注意：其他节点手中的租约可能让本节点先看到售罄，块越小偏差越小。
+ * 重复购买仍由 Redis 的已购买集合判断，保证跨节点正确。
+ */
+@Component
+public class StockLeaseManager {
+
+    private static final Logger log = LoggerFactory.getLogger(StockLeaseManager.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final DefaultRedisScript<Long> stockLeaseScript;
+    private final boolean enabled;
+    private final int blockSize;
+    private final long idleReleaseMs;
+
+    // 商品ID -> 本地租约
+    private final Map<Long, StockLease> leases = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+    private final Thread sweeper;
+
+    // 库存归还 Redis 后的回调（由 SoldOutBroadcaster 在创建时设置）
+    private volatile LongConsumer restockListener = goodsId -> {
+    };
+
+    public StockLeaseManager(StringRedisTemplate redisTemplate,
+            @Qualifier("stockLeaseScript") DefaultRedisScript<Long> stockLeaseScript,
+            @Value("${seckill.stock-lease.enabled:false}") boolean enabled,
+            @Value("${seckill.stock-lease.block-size:50}") int blockSize,
+            @Value("${seckill.stock-lease.idle-release-ms:30000}") long idleReleaseMs) {
+        this.redisTemplate = redisTemplate;
+        this.stockLeaseScript = stockLeaseScript;
+        this.enabled = enabled;
+        this.blockSize = Math.max(1, blockSize);
+        this.idleReleaseMs = idleReleaseMs;
+
+        if (enabled && idleReleaseMs > 0) {
+            this.sweeper = new Thread(this::sweepLoop, "stock-lease-sweeper");
+            this.sweeper.setDaemon(true);
+            this.sweeper.start();
+        } else {
+            this.sweeper = null;
+        }
+        if (enabled) {
+            log.info("本地库存租约已开启: blockSize={}, idleReleaseMs={}", this.blockSize, idleReleaseMs);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setRestockListener(LongConsumer restockListener) {
+        this.restockListener = restockListener;
+    }
+
+    /**
+     * 扣减一件库存
+     * 优先使用本地租约，耗尽时向 Redis 续租
+     *
+     * @return true 扣减成功，false 库存不足
+     */
+    public boolean tryAcquire(Long goodsId) {
+        while (!closed) {
+            StockLease lease = leases.computeIfAbsent(goodsId, StockLease::new);
+
+            if (lease.tryDecrement()) {
+                lease.touch();
+                return true;
+            }
+            if (lease.released) {
+                // 租约已被归还或作废，换新的租约重试
+                continue;
+            }
+            if (!refill(lease)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 退回一件库存到本地租约（重复购买、消息发送失败时）
+     */
+    public void giveBack(Long goodsId) {
+        StockLease lease = leases.get(goodsId);
+        if (lease != null) {
+            synchronized (lease) {
+                if (!lease.released) {
+                    lease.remaining.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        // 租约已不存在，直接归还 Redis
+        redisTemplate.opsForValue().increment(stockKey(goodsId));
+        notifyRestocked(goodsId);
+    }
+
+    /**
+     * 本地租约剩余数量
+     */
+    public int getLocalRemaining(Long goodsId) {
+        StockLease lease = leases.get(goodsId);
+        return lease == null ? 0 : Math.max(0, lease.remaining.get());
+    }
+
+    /**
+     * 归还本地未使用的库存到 Redis（活动结束时）
+     */
+    public void release(Long goodsId) {
+        StockLease lease = leases.remove(goodsId);
+        if (lease != null) {
+            returnUnused(lease);
+        }
+    }
+
+    private void returnUnused(StockLease lease) {
+        int unused = lease.close();
+        if (unused > 0) {
+            redisTemplate.opsForValue().increment(stockKey(lease.goodsId), unused);
+            log.info("归还库存租约: goodsId={}, unused={}", lease.goodsId, unused);
+            notifyRestocked(lease.goodsId);
+        }
+    }
+
+    private void notifyRestocked(Long goodsId) {
+        try {
+            restockListener.accept(goodsId);
+        } catch (Exception e) {
+            log.warn("库存归还通知失败: goodsId={}", goodsId, e);
+        }
+    }
+
+    /**
+     * 定期归还闲置的租约：活动结束或流量转移到其他节点后，本节点手中的库存不再被占住
+     */
+    private void sweepLoop() {
+        long intervalMs = Math.max(1000, idleReleaseMs / 2);
+        while (!closed) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            for (StockLease lease : leases.values()) {
+                if (now - lease.lastUsedMillis < idleReleaseMs) {
+                    continue;
+                }
+                try {
+                    // 只移除扫描到的这份租约，并发创建的新租约不受影响
+                    if (leases.remove(lease.goodsId, lease)) {
+                        returnUnused(lease);
+                    }
+                } catch (Exception e) {
+                    log.error("归还闲置库存租约失败: goodsId={}", lease.goodsId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 作废本地租约，不归还（库存被重置或商品被删除时）
+     */
+    public void discard(Long goodsId) {
+        StockLease lease = leases.remove(goodsId);
+        if (lease != null) {
+            int dropped = lease.close();
+            log.info("作废库存租约: goodsId={}, dropped={}", goodsId, dropped);
+        }
+    }
+
+    /**
+     * 节点关闭时归还所有租约
+     */
+    @PreDestroy
+    public void releaseAll() {
+        closed = true;
+        if (sweeper != null) {
+            sweeper.interrupt();
+        }
+        for (Long goodsId : leases.keySet()) {
+            try {
+                release(goodsId);
+            } catch (Exception e) {
+                log.error("归还库存租约失败: goodsId={}", goodsId, e);
+            }
+        }
+    }
+
+    /**
+     * 向 Redis 续租
+     * 只有本地耗尽时才会进入，同一商品同时只有一个线程访问 Redis
+     *
+     * @return true 本地租约有可用库存
+     */
+    private boolean refill(StockLease lease) {
+        synchronized (lease) {
+            if (lease.released) {
+                return true; // 由调用方换新租约重试
+            }
+            if (lease.remaining.get() > 0) {
+                return true; // 其他线程已完成续租
+            }
+
+            Long granted = redisTemplate.execute(
+                    stockLeaseScript,
+                    Collections.singletonList(stockKey(lease.goodsId)),
+                    String.valueOf(blockSize));
+
+            if (granted == null || granted <= 0) {
+                return false;
+            }
+
+            lease.remaining.addAndGet(granted.intValue());
+            log.debug("库存续租: goodsId={}, granted={}", lease.goodsId, granted);
+            return true;
+        }
+    }
+
+    private String stockKey(Long goodsId) {
+        return "seckill:stock:" + goodsId;
+    }
+
+    /**
+     * 单个商品的本地租约
+     */
+    private static final class StockLease {
+        private final Long goodsId;
+        private final AtomicInteger remaining = new AtomicInteger(0);
+        private volatile boolean released = false;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private StockLease(Long goodsId) {
+            this.goodsId = goodsId;
+        }
+
+        /**
+         * 记录最近使用时间（同一毫秒内只写一次，减少热点租约上的缓存行争用）
+         */
+        private void touch() {
+            long now = System.currentTimeMillis();
+            if (now != lastUsedMillis) {
+                lastUsedMillis = now;
+            }
+        }
+
+        /**
+         * CAS 扣减，不加锁
+         */
+        private boolean tryDecrement() {
+            int current;
+            do {
+                current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * 关闭租约并取走剩余库存
+         */
+        private int close() {
+            synchronized (this) {
+                released = true;
+                return Math.max(0, remaining.getAndSet(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+-- 释放缓存加载租约（只删除自己持有的租约，避免误删过期后被其他节点抢到的租约）
+--
+-- KEYS[1]: 租约 key (ml:lease:{key})
+-- ARGV[1]: 持有者 token
+--
+-- 返回值：1 已释放，0 租约不属于自己或已过期
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,14 @@
+-- 清除泄漏的计数（消息发送失败或节点崩溃，计数没有减回来）
+-- 只在计数与调用方观察到的值相同时清零，期间有新消息发出则不清
+--
+-- KEYS[1]: 旧分区中未处理完的消息数 hash
+-- ARGV[1]: goodsId
+-- ARGV[2]: 观察到的计数
+--
+-- 返回值：1 已清零，0 计数已变化
+
+if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then
+    redis.call('HSET', KEYS[1], ARGV[1], 0)
+    return 1
+end
+return 0
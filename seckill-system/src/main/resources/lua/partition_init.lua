@@ -0,0 +1,12 @@
+-- 初始化分区纪元（首个启动的节点写入，已存在时不修改）
+--
+-- KEYS[1]: 纪元 hash (seckill:partition:epoch)
+-- ARGV[1]: 初始分区数
+--
+-- 返回值：1 本次写入，0 已存在
+
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'id', 1, 'count', ARGV[1], 'previous', ARGV[1], 'migrating', 0)
+return 1
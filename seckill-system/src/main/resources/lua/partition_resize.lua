@@ -0,0 +1,18 @@
+-- 开始新的分区纪元
+--
+-- KEYS[1]: 纪元 hash (seckill:partition:epoch)
+-- ARGV[1]: 新分区数
+--
+-- 返回值：新纪元编号；分区数没有变化时返回当前纪元；上一次调整尚未完成时返回 -1
+
+local epoch = redis.call('HMGET', KEYS[1], 'id', 'count', 'migrating')
+if epoch[3] == '1' then
+    return -1
+end
+if epoch[2] == ARGV[1] then
+    return tonumber(epoch[1])
+end
+
+local id = tonumber(epoch[1]) + 1
+redis.call('HSET', KEYS[1], 'id', id, 'count', ARGV[1], 'previous', epoch[2], 'migrating', 1)
+return id
@@ -0,0 +1,33 @@
+-- 迁移中换了分区的商品的路由
+-- 商品仍发往旧分区并计数，直到旧分区处理完纪元开始前的消息（已收到栅栏）、
+-- 且本纪元发往旧分区的消息全部处理完（计数归零），才切换到新分区；切换后不再回到旧分区
+--
+-- KEYS[1]: 纪元 hash (seckill:partition:epoch)
+-- KEYS[2]: 旧分区中未处理完的消息数 hash，field 为 goodsId
+-- KEYS[3]: 已切换到新分区的商品 set
+-- KEYS[4]: 已处理完栅栏的旧分区 set
+-- ARGV[1]: 纪元编号
+-- ARGV[2]: goodsId
+-- ARGV[3]: 旧分区号
+-- ARGV[4]: 迁移数据过期时间（秒）
+--
+-- 返回值：1 发往新分区，0 发往旧分区（已计数，处理完后减一），-1 纪元已变化
+
+local epoch = redis.call('HMGET', KEYS[1], 'id', 'migrating')
+if epoch[1] ~= ARGV[1] then
+    return -1
+end
+if epoch[2] ~= '1' or redis.call('SISMEMBER', KEYS[3], ARGV[2]) == 1 then
+    return 1
+end
+
+local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[2]) or '0')
+if pending <= 0 and redis.call('SISMEMBER', KEYS[4], ARGV[3]) == 1 then
+    redis.call('SADD', KEYS[3], ARGV[2])
+    redis.call('EXPIRE', KEYS[3], ARGV[4])
+    return 1
+end
+
+redis.call('HINCRBY', KEYS[2], ARGV[2], 1)
+redis.call('EXPIRE', KEYS[2], ARGV[4])
+return 0
@@ -0,0 +1,25 @@
+-- 结束迁移：所有旧分区都已处理完栅栏，且没有商品在旧分区还有未处理的消息
+--
+-- KEYS[1]: 纪元 hash (seckill:partition:epoch)
+-- KEYS[2]: 旧分区中未处理完的消息数 hash
+-- KEYS[3]: 已处理完栅栏的旧分区 set
+-- ARGV[1]: 纪元编号
+-- ARGV[2]: 旧分区数
+--
+-- 返回值：1 已结束，0 条件未满足或纪元已变化
+
+local epoch = redis.call('HMGET', KEYS[1], 'id', 'migrating')
+if epoch[1] ~= ARGV[1] or epoch[2] ~= '1' then
+    return 0
+end
+if redis.call('SCARD', KEYS[3]) < tonumber(ARGV[2]) then
+    return 0
+end
+for _, pending in ipairs(redis.call('HVALS', KEYS[2])) do
+    if tonumber(pending) > 0 then
+        return 0
+    end
+end
+
+redis.call('HSET', KEYS[1], 'migrating', 0)
+return 1
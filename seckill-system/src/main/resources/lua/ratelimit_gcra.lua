@@ -0,0 +1,32 @@
+-- 分布式令牌桶限流（GCRA 通用信元速率算法）
+-- 只保存一个值：理论到达时间 TAT，时间取 Redis 服务器时钟，避免节点间时钟偏差
+--
+-- KEYS[1]: 限流 key (ratelimit:{name}:gcra)
+-- ARGV[1]: 发放间隔（微秒/令牌）
+-- ARGV[2]: 桶容量（允许的突发令牌数）
+-- ARGV[3]: 本次申请的令牌数（节点按批预取，可能部分发放）
+--
+-- 返回值：{发放数, 距下一个令牌可用的等待时间（微秒）}
+
+local interval = tonumber(ARGV[1])
+local burst = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+    tat = now
+end
+
+-- 当前可用令牌数 = (now + 容量时长 - TAT) / 间隔
+local available = math.floor((now + burst * interval - tat) / interval)
+local granted = math.min(requested, available)
+if granted <= 0 then
+    return {0, tat - (burst - 1) * interval - now}
+end
+
+tat = tat + granted * interval
+redis.call('SET', KEYS[1], string.format('%.0f', tat), 'PX', math.ceil((tat - now) / 1000) + 1000)
+return {granted, 0}
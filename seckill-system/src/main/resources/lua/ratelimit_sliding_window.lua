@@ -0,0 +1,53 @@
+-- 分布式滑动窗口限流（滑动窗口计数器）
+-- 只保存当前窗口和上一窗口的计数，按上一窗口剩余的时间比例加权估算，O(1) 内存
+--
+-- KEYS[1]: 限流 key (ratelimit:{name}:sw)，Hash: idx / cur / prev
+-- ARGV[1]: 窗口内允许的请求数
+-- ARGV[2]: 窗口长度（毫秒）
+-- ARGV[3]: 本次申请的许可数（节点按批预取，可能部分发放）
+--
+-- 返回值：{发放数, 建议的重试等待时间（微秒）}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local nowMs = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local idx = math.floor(nowMs / window)
+local elapsed = nowMs - idx * window
+
+local data = redis.call('HMGET', KEYS[1], 'idx', 'cur', 'prev')
+local storedIdx = tonumber(data[1]) or idx
+local cur = tonumber(data[2]) or 0
+local prev = tonumber(data[3]) or 0
+
+-- 窗口滚动
+if storedIdx == idx - 1 then
+    prev = cur
+    cur = 0
+elseif storedIdx < idx - 1 then
+    prev = 0
+    cur = 0
+end
+
+local estimated = prev * (window - elapsed) / window + cur
+local granted = math.min(requested, math.floor(limit - estimated))
+if granted < 0 then
+    granted = 0
+end
+
+cur = cur + granted
+redis.call('HSET', KEYS[1], 'idx', idx, 'cur', cur, 'prev', prev)
+redis.call('PEXPIRE', KEYS[1], window * 2)
+
+if granted > 0 then
+    return {granted, 0}
+end
+
+-- 上一窗口的权重随时间线性下降，估算何时腾出一个许可；最迟到下一个窗口
+local waitMs = window - elapsed
+if prev > 0 then
+    waitMs = math.min(waitMs, math.ceil((estimated - limit + 1) * window / prev))
+end
+return {0, math.max(1, waitMs) * 1000}
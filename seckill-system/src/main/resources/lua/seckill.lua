@@ -2,14 +2,17 @@
 -- 原子操作：检查库存 + 检查重复购买 + 扣减库存 + 记录购买
 --
 -- KEYS[1]: 库存 key (seckill:stock:{goodsId})
--- KEYS[2]: 已购买用户集合 key (seckill:bought:{goodsId})
--- ARGV[1]: 用户ID
+-- KEYS[2]: 已购买用户 key（由 PurchaseDedupStore 决定：SET / 位图 / 分片 SET）
+-- ARGV[1]: 用户ID（位图模式下为位偏移量）
+-- ARGV[2]: 判重方式 'set' | 'bit'（缺省为 'set'）
 --
 -- 返回值：
 --   1: 成功
 --   0: 库存不足
 --  -1: 重复购买
 
+local mode = ARGV[2] or 'set'
+
 -- 检查库存
 local stock = tonumber(redis.call('GET', KEYS[1]))
 if stock == nil or stock <= 0 then
@@ -17,7 +20,12 @@ if stock == nil or stock <= 0 then
 end
 
 -- 检查是否已购买
-local bought = redis.call('SISMEMBER', KEYS[2], ARGV[1])
+local bought
+if mode == 'bit' then
+    bought = redis.call('GETBIT', KEYS[2], ARGV[1])
+else
+    bought = redis.call('SISMEMBER', KEYS[2], ARGV[1])
+end
 if bought == 1 then
     return -1  -- 重复购买
 end
@@ -26,6 +34,10 @@ end
 redis.call('DECR', KEYS[1])
 
 -- 记录已购买
-redis.call('SADD', KEYS[2], ARGV[1])
+if mode == 'bit' then
+    redis.call('SETBIT', KEYS[2], ARGV[1], 1)
+else
+    redis.call('SADD', KEYS[2], ARGV[1])
+end
 
 return 1  -- 成功
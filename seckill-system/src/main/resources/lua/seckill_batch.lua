@@ -0,0 +1,57 @@
+-- 批量秒杀 Lua 脚本
+-- 一次调用处理同一商品的 N 个用户，逐个执行与 seckill.lua 相同的判断
+--
+-- KEYS[1]: 库存 key (seckill:stock:{goodsId})
+-- KEYS[i+1]: 第 i 个用户的已购买 key（由 PurchaseDedupStore 决定，分片模式下各不相同）
+-- ARGV[1]: 判重方式 'set' | 'bit'
+-- ARGV[i+1]: 第 i 个用户ID（位图模式下为位偏移量）
+--
+-- 返回值：长度为 N 的数组，第 i 个元素对应第 i 个用户
+--   1: 成功
+--   0: 库存不足
+--  -1: 重复购买
+
+local mode = ARGV[1]
+
+local stock = tonumber(redis.call('GET', KEYS[1]))
+if stock == nil then
+    stock = 0
+end
+
+local results = {}
+local sold = 0
+
+for i = 1, #ARGV - 1 do
+    local key = KEYS[i + 1]
+    local member = ARGV[i + 1]
+
+    local bought
+    if stock - sold <= 0 then
+        bought = nil
+    elseif mode == 'bit' then
+        bought = redis.call('GETBIT', key, member)
+    else
+        bought = redis.call('SISMEMBER', key, member)
+    end
+
+    if bought == nil then
+        results[i] = 0  -- 库存不足
+    elseif bought == 1 then
+        results[i] = -1  -- 重复购买（同一批次内重复提交也会命中）
+    else
+        if mode == 'bit' then
+            redis.call('SETBIT', key, member, 1)
+        else
+            redis.call('SADD', key, member)
+        end
+        sold = sold + 1
+        results[i] = 1  -- 成功
+    end
+end
+
+-- 整批只扣减一次库存
+if sold > 0 then
+    redis.call('DECRBY', KEYS[1], sold)
+end
+
+return results
@@ -0,0 +1,17 @@
+-- 库存租约 Lua 脚本
+-- 节点一次性从 Redis 领取一段库存到本地计数器，减少对热点库存 key 的访问
+--
+-- KEYS[1]: 库存 key (seckill:stock:{goodsId})
+-- ARGV[1]: 申请的库存块大小
+--
+-- 返回值：实际领取的数量（库存不足时小于申请值，售罄时为 0）
+
+local stock = tonumber(redis.call('GET', KEYS[1]))
+if stock == nil or stock <= 0 then
+    return 0  -- 库存不足
+end
+
+local take = math.min(stock, tonumber(ARGV[1]))
+redis.call('DECRBY', KEYS[1], take)
+
+return take
@@ -0,0 +1,154 @@
+package com.example.seckill.benchmark;
+
+import com.example.seckill.cache.CacheValueCodec;
+import com.example.seckill.entity.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多级缓存编码对比：string 路径 vs typed 路径
+ *
+ * - string：值先序列化为 JSON 字符串，L1 / L2 都存字符串，每次 L1 命中都要反序列化
+ * - typed：L1 直接存对象，L2 使用 CacheValueCodec（Smile 二进制，超过阈值时 LZ4 压缩）
+ *
+ * 样本：普通商品（short），以及描述很长、会触发 LZ4 压缩的商品（long）。
+ * 每次操作的分配字节数看 GC profiler 的 gc.alloc.rate.norm，L2 字节数在 setup 时打印一次。
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.example.seckill.benchmark.CacheCodecBenchmark
+ * 或在 IDE 中直接运行 main（已开启 -prof gc）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private static final String KEY = "consistency:product:1001";
+
+    @Param({ "short", "long" })
+    public String description;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final CacheValueCodec codec = new CacheValueCodec(1024);
+
+    private Product product;
+    private long expireAtMs;
+    private byte[] stringL2;
+    private byte[] binaryL2;
+    private Cache<String, Object> stringL1;
+    private Cache<String, Object> typedL1;
+
+    @Setup
+    public void setup() {
+        product = sampleProduct("long".equals(description) ? "限时秒杀，".repeat(200) : "商品描述");
+        expireAtMs = System.currentTimeMillis() + 1_800_000;
+
+        String json = toJson(product);
+        stringL2 = json.getBytes(StandardCharsets.UTF_8);
+        binaryL2 = codec.encode(product, 5, expireAtMs);
+
+        stringL1 = Caffeine.newBuilder().maximumSize(16).build();
+        typedL1 = Caffeine.newBuilder().maximumSize(16).build();
+        stringL1.put(KEY, json);
+        typedL1.put(KEY, product);
+
+        System.out.printf("%n[%s] L2 字节数 string=%d, typed=%d (%.1f%%)%n", description,
+                stringL2.length, binaryL2.length, binaryL2.length * 100.0 / stringL2.length);
+    }
+
+    @Benchmark
+    public Product stringL1Hit() {
+        return fromJson((String) stringL1.getIfPresent(KEY));
+    }
+
+    @Benchmark
+    public byte[] stringL2Encode() {
+        return toJson(product).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Product stringL2Decode() {
+        return fromJson(new String(stringL2, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Product typedL1Hit() {
+        return Product.class.cast(typedL1.getIfPresent(KEY));
+    }
+
+    @Benchmark
+    public byte[] typedL2Encode() {
+        return codec.encode(product, 5, expireAtMs);
+    }
+
+    @Benchmark
+    public Product typedL2Decode() {
+        return codec.decode(binaryL2, Product.class).value();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    private String toJson(Product value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Product fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, Product.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Product sampleProduct(String description) {
+        Product product = new Product();
+        product.setId(1001L);
+        product.setCategoryId(12L);
+        product.setName("iPhone 15 Pro Max 256GB 原色钛金属");
+        product.setDescription(description);
+        product.setImageUrl("https://cdn.example.com/products/1001/main.jpg");
+        product.setPrice(new BigDecimal("9999.00"));
+        product.setStock(500);
+        product.setStatus(Product.STATUS_ON);
+        product.setVersion(3);
+        product.setCreatedAt(LocalDateTime.of(2024, 1, 1, 10, 0));
+        product.setUpdatedAt(LocalDateTime.of(2024, 1, 15, 18, 30));
+        return product;
+    }
+}
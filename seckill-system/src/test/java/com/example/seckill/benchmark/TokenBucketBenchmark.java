@@ -0,0 +1,108 @@
+package com.example.seckill.benchmark;
+
+import com.example.seckill.ratelimit.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶 tryAcquire 吞吐对比：synchronized 旧实现 vs CAS 无锁实现
+ *
+ * 速率设得足够高，使大部分调用走"获取成功"路径，测的是状态更新本身的争用开销。
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.example.seckill.benchmark.TokenBucketBenchmark
+ * 或在 IDE 中直接运行 main，依次测试 1 / 8 / 32 / 64 线程。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBucketBenchmark {
+
+    private static final long CAPACITY = 1_000_000;
+    private static final double RATE = 1_000_000_000;
+
+    private SynchronizedTokenBucket synchronizedBucket;
+    private TokenBucketRateLimiter lockFreeBucket;
+
+    @Setup
+    public void setup() {
+        synchronizedBucket = new SynchronizedTokenBucket(CAPACITY, RATE);
+        lockFreeBucket = new TokenBucketRateLimiter(CAPACITY, RATE);
+    }
+
+    @Benchmark
+    public boolean synchronizedTryAcquire() {
+        return synchronizedBucket.tryAcquire(1);
+    }
+
+    @Benchmark
+    public boolean lockFreeTryAcquire() {
+        return lockFreeBucket.tryAcquire(1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] { 1, 8, 32, 64 }) {
+            Options options = new OptionsBuilder()
+                    .include(TokenBucketBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * 旧实现（全局锁 + 填充后再扣减），作为对照组
+     */
+    static final class SynchronizedTokenBucket {
+        private final long capacity;
+        private final double refillRate;
+        private final AtomicLong tokens;
+        private volatile long lastRefillNanoTime;
+        private final Object lock = new Object();
+
+        SynchronizedTokenBucket(long capacity, double refillRate) {
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+            this.tokens = new AtomicLong(capacity);
+            this.lastRefillNanoTime = System.nanoTime();
+        }
+
+        boolean tryAcquire(int permits) {
+            synchronized (lock) {
+                refill();
+                if (tokens.get() >= permits) {
+                    tokens.addAndGet(-permits);
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double elapsedSeconds = (now - lastRefillNanoTime) / 1_000_000_000.0;
+            long tokensToAdd = (long) (elapsedSeconds * refillRate);
+            if (tokensToAdd > 0) {
+                tokens.set(Math.min(capacity, tokens.get() + tokensToAdd));
+                lastRefillNanoTime = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.seckill.cache;
+
+import com.example.seckill.entity.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多级缓存 L2 值编码测试
+ *
+ * 覆盖新格式的字符串 / 对象 / 压缩往返，以及没有 magic 的值、类型不符和损坏数据按未命中（null）处理。
+ * 默认压缩阈值 1024 字节。
+ */
+class CacheValueCodecTest {
+
+    private static final long DELTA_MS = 42;
+    private static final long EXPIRE_AT_MS = 1_700_000_000_000L;
+
+    // 布局中各字段的偏移
+    private static final int FLAGS_OFFSET = 2;
+    private static final int HEADER_SIZE = 15;
+    private static final int FLAG_LZ4 = 0x01;
+
+    private final CacheValueCodec codec = new CacheValueCodec(1024);
+
+    private static Product product(String description) {
+        Product product = new Product();
+        product.setId(1001L);
+        product.setCategoryId(12L);
+        product.setName("iPhone 15 Pro Max 256GB 原色钛金属");
+        product.setDescription(description);
+        product.setImageUrl("https://cdn.example.com/products/1001/main.jpg");
+        product.setPrice(new BigDecimal("9999.00"));
+        product.setStock(500);
+        product.setStatus(Product.STATUS_ON);
+        product.setVersion(3);
+        product.setCreatedAt(LocalDateTime.of(2024, 1, 1, 10, 0));
+        product.setUpdatedAt(LocalDateTime.of(2024, 1, 15, 18, 30));
+        return product;
+    }
+
+    private static void assertSameProduct(Product expected, Product actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getCategoryId(), actual.getCategoryId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getImageUrl(), actual.getImageUrl());
+        assertEquals(0, expected.getPrice().compareTo(actual.getPrice()));
+        assertEquals(expected.getStock(), actual.getStock());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+    }
+
+    private static boolean compressed(byte[] raw) {
+        return (raw[FLAGS_OFFSET] & FLAG_LZ4) != 0;
+    }
+
+    @Test
+    void stringRoundTripKeepsMetadata() {
+        byte[] raw = codec.encode("秒杀商品 {\"id\":1001}", DELTA_MS, EXPIRE_AT_MS);
+
+        CacheValueCodec.Envelope<String> envelope = codec.decode(raw, String.class);
+
+        assertNotNull(envelope);
+        assertEquals("秒杀商品 {\"id\":1001}", envelope.value());
+        assertEquals(DELTA_MS, envelope.deltaMs());
+        assertEquals(EXPIRE_AT_MS, envelope.expireAtMs());
+    }
+
+    @Test
+    void objectRoundTripUsesSmileWithoutCompression() {
+        Product product = product("商品描述");
+        byte[] raw = codec.encode(product, DELTA_MS, EXPIRE_AT_MS);
+
+        CacheValueCodec.Envelope<Product> envelope = codec.decode(raw, Product.class);
+
+        assertTrue(raw.length < 1024);
+        assertFalse(compressed(raw));
+        assertNotNull(envelope);
+        assertSameProduct(product, envelope.value());
+        assertEquals(DELTA_MS, envelope.deltaMs());
+        assertEquals(EXPIRE_AT_MS, envelope.expireAtMs());
+    }
+
+    @Test
+    void largeValuesAreCompressedAndRoundTrip() {
+        Product product = product("限时秒杀，".repeat(400));
+        String text = "限时秒杀，".repeat(400);
+
+        byte[] rawObject = codec.encode(product, DELTA_MS, EXPIRE_AT_MS);
+        byte[] rawString = codec.encode(text, DELTA_MS, EXPIRE_AT_MS);
+
+        assertTrue(compressed(rawObject));
+        assertTrue(compressed(rawString));
+        assertTrue(rawString.length < text.getBytes(StandardCharsets.UTF_8).length / 4);
+        assertSameProduct(product, codec.decode(rawObject, Product.class).value());
+        assertEquals(text, codec.decode(rawString, String.class).value());
+    }
+
+    @Test
+    void valuesWithoutMagicAreAMiss() {
+        byte[] plain = "{\"id\":1001,\"name\":\"旧格式\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] withMeta = ("\u0001" + DELTA_MS + ":" + EXPIRE_AT_MS + "\u0001value").getBytes(StandardCharsets.UTF_8);
+
+        assertNull(codec.decode(plain, String.class));
+        assertNull(codec.decode(plain, Product.class));
+        assertNull(codec.decode(withMeta, String.class));
+        assertNull(codec.decode(new byte[0], String.class));
+    }
+
+    @Test
+    void wrongTypeIsAMiss() {
+        byte[] string = codec.encode("value", DELTA_MS, EXPIRE_AT_MS);
+        byte[] object = codec.encode(product("商品描述"), DELTA_MS, EXPIRE_AT_MS);
+
+        assertNull(codec.decode(string, Product.class));
+        assertNull(codec.decode(object, String.class));
+    }
+
+    @Test
+    void truncatedValuesAreAMiss() {
+        byte[] object = codec.encode(product("商品描述"), DELTA_MS, EXPIRE_AT_MS);
+        byte[] large = codec.encode(product("限时秒杀，".repeat(400)), DELTA_MS, EXPIRE_AT_MS);
+        assertTrue(compressed(large));
+
+        // 头部不完整
+        assertNull(codec.decode(Arrays.copyOf(object, HEADER_SIZE - 1), Product.class));
+        // 压缩标志在但缺少原始长度
+        assertNull(codec.decode(Arrays.copyOf(large, HEADER_SIZE + 2), Product.class));
+        // 数据被截断
+        assertNull(codec.decode(Arrays.copyOf(object, object.length - 5), Product.class));
+        assertNull(codec.decode(Arrays.copyOf(large, large.length - 5), Product.class));
+    }
+
+    @Test
+    void corruptedRawLengthIsRejected() {
+        byte[] large = codec.encode(product("限时秒杀，".repeat(400)), DELTA_MS, EXPIRE_AT_MS);
+        assertTrue(compressed(large));
+
+        for (int rawLength : new int[] { -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 64 * 1024 * 1024, 10 }) {
+            byte[] corrupted = large.clone();
+            ByteBuffer.wrap(corrupted).putInt(HEADER_SIZE, rawLength);
+            assertNull(codec.decode(corrupted, Product.class), "rawLength=" + rawLength);
+        }
+    }
+
+    @Test
+    void corruptedPayloadAndNewerFormatAreAMiss() {
+        byte[] object = codec.encode(product("商品描述"), DELTA_MS, EXPIRE_AT_MS);
+
+        byte[] garbage = object.clone();
+        Arrays.fill(garbage, HEADER_SIZE, garbage.length, (byte) 0x7F);
+        assertNull(codec.decode(garbage, Product.class));
+
+        byte[] newerVersion = object.clone();
+        newerVersion[1] = 2;
+        assertNull(codec.decode(newerVersion, Product.class));
+
+        // 原数据未被修改，仍可正常解码
+        assertArrayEquals(object, codec.encode(product("商品描述"), DELTA_MS, EXPIRE_AT_MS));
+        assertNotNull(codec.decode(object, Product.class));
+    }
+}
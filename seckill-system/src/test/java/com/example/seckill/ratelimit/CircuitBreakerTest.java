@@ -0,0 +1,257 @@
+package com.example.seckill.ratelimit;
+
+import com.example.seckill.ratelimit.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 熔断器状态机测试
+ *
+ * 使用可控的纳秒时钟驱动熔断计时和时间窗口，结果与机器速度无关。
+ * 默认配置：最近 4 次调用、至少 4 次，失败率 50% 熔断，关闭慢调用检测；
+ * 熔断 1 秒，半开放行 2 个试探请求、最多等待 500ms。
+ */
+class CircuitBreakerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1000 * MS;
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+    private static CircuitBreaker.Config config() {
+        return CircuitBreaker.Config.custom()
+                .countBasedWindow(4)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallDurationMs(0)
+                .openTimeoutMs(1000)
+                .permittedCallsInHalfOpen(2)
+                .maxWaitInHalfOpenMs(500);
+    }
+
+    private CircuitBreaker breaker(CircuitBreaker.Config config) {
+        return new CircuitBreaker("test", config, clock::get);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean failure) {
+        long permission = breaker.acquirePermission();
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, permission);
+        if (failure) {
+            breaker.onFailure(permission, 0);
+        } else {
+            breaker.onSuccess(permission, 0);
+        }
+    }
+
+    private void tripAndWaitForHalfOpen(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+        clock.addAndGet(1000 * MS);
+    }
+
+    @Test
+    void countBasedWindowOpensOnlyAfterMinimumCalls() {
+        CircuitBreaker breaker = breaker(config());
+
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, true);
+        // 100% 失败但不足 minimumCalls
+        assertEquals(State.CLOSED, breaker.getState());
+
+        call(breaker, false);
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(75, breaker.getFailureRate(), 0.01);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(1, breaker.getRejectedRequests());
+        assertEquals(1, breaker.getTransitionCount(State.CLOSED, State.OPEN));
+    }
+
+    @Test
+    void countBasedWindowEvictsOldestCalls() {
+        CircuitBreaker breaker = breaker(config());
+
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, false);
+        call(breaker, false);
+        assertEquals(1, breaker.getFailureCount());
+
+        // 第 5 次调用挤掉最早的失败
+        call(breaker, false);
+        assertEquals(0, breaker.getFailureCount());
+        assertEquals(4, breaker.getSuccessCount());
+
+        call(breaker, true);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(breaker, true);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void slowCallsOpenTheBreaker() {
+        CircuitBreaker breaker = breaker(config()
+                .slowCallDurationMs(100)
+                .slowCallRateThreshold(50));
+
+        for (int i = 0; i < 3; i++) {
+            breaker.onSuccess(breaker.acquirePermission(), 99 * MS);
+        }
+        breaker.onSuccess(breaker.acquirePermission(), 100 * MS);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getSlowCallCount());
+
+        breaker.onSuccess(breaker.acquirePermission(), 500 * MS);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void timeBasedWindowDropsExpiredSeconds() {
+        CircuitBreaker breaker = breaker(config().timeBasedWindow(2));
+
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, true);
+        assertEquals(3, breaker.getFailureCount());
+
+        // 两秒后整个窗口滑出
+        clock.addAndGet(2 * SECOND);
+        assertEquals(0, breaker.getFailureCount());
+        assertEquals(0, breaker.getSuccessCount());
+
+        call(breaker, false);
+        call(breaker, false);
+        call(breaker, true);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // 下一秒仍在窗口内：4 次调用中 2 次失败
+        clock.addAndGet(SECOND);
+        call(breaker, true);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void timeBasedWindowSurvivesLongIdlePeriods() {
+        CircuitBreaker breaker = breaker(config().timeBasedWindow(2));
+
+        call(breaker, true);
+        call(breaker, true);
+
+        // 远超标签回绕周期（4096 秒）后，旧桶不会被误认成当前秒
+        clock.addAndGet(4096 * SECOND);
+        assertEquals(0, breaker.getFailureCount());
+
+        call(breaker, true);
+        call(breaker, false);
+        assertEquals(1, breaker.getFailureCount());
+        assertEquals(1, breaker.getSuccessCount());
+    }
+
+    @Test
+    void openTimeoutAdmitsLimitedProbes() {
+        CircuitBreaker breaker = breaker(config());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true);
+        }
+
+        clock.addAndGet(999 * MS);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(State.OPEN, breaker.getState());
+
+        clock.addAndGet(MS);
+        long first = breaker.acquirePermission();
+        long second = breaker.acquirePermission();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, first);
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, second);
+
+        // 名额用完后拒绝，每次拒绝只计一次
+        long rejectedBefore = breaker.getRejectedRequests();
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(rejectedBefore + 2, breaker.getRejectedRequests());
+
+        // 归还的名额可以再次放行
+        breaker.releasePermission(second);
+        long retried = breaker.acquirePermission();
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, retried);
+
+        breaker.onSuccess(first, 0);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(retried, 0);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureCount());
+        assertEquals(1, breaker.getTransitionCount(State.HALF_OPEN, State.CLOSED));
+    }
+
+    @Test
+    void failedProbesReopenTheBreaker() {
+        CircuitBreaker breaker = breaker(config());
+        tripAndWaitForHalfOpen(breaker);
+
+        call(breaker, false);
+        call(breaker, true);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTransitionCount(State.HALF_OPEN, State.OPEN));
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+    }
+
+    @Test
+    void halfOpenReopensWhenProbesNeverReport() {
+        CircuitBreaker breaker = breaker(config());
+        tripAndWaitForHalfOpen(breaker);
+
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+
+        clock.addAndGet(499 * MS);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        clock.addAndGet(MS);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTransitionCount(State.HALF_OPEN, State.OPEN));
+    }
+
+    @Test
+    void resultsFromEndedCyclesAreIgnored() {
+        CircuitBreaker breaker = breaker(config());
+
+        // CLOSED 期间放行、熔断后才返回的调用
+        long closedCall = breaker.acquirePermission();
+        tripAndWaitForHalfOpen(breaker);
+        long probe = breaker.acquirePermission();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // 不会被当成试探结果
+        breaker.onFailure(closedCall, 0);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // 试探超时后重新熔断，再进入下一轮半开
+        breaker.acquirePermission();
+        clock.addAndGet(500 * MS);
+        breaker.acquirePermission();
+        assertEquals(State.OPEN, breaker.getState());
+        clock.addAndGet(1000 * MS);
+        long nextProbe = breaker.acquirePermission();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // 上一轮的试探结果和名额都不影响这一轮
+        breaker.onFailure(probe, 0);
+        breaker.releasePermission(probe);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermission());
+
+        breaker.onSuccess(nextProbe, 0);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.seckill.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 滑动窗口限流器精度测试
+ *
+ * 使用可控时钟驱动时间，结果与机器速度无关。
+ * 默认配置：1000ms 窗口、10 个槽（每槽 100ms）。
+ */
+class SlidingWindowRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private SlidingWindowRateLimiter limiter(int limit, int stripes) {
+        return new SlidingWindowRateLimiter(limit, 1000, 10, stripes, clock::get);
+    }
+
+    private int acquireAll(SlidingWindowRateLimiter limiter, int attempts) {
+        int granted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (limiter.tryAcquire()) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+
+    @Test
+    void grantsExactlyLimitWithinOneWindow() {
+        SlidingWindowRateLimiter limiter = limiter(100, 4);
+
+        assertEquals(100, acquireAll(limiter, 150));
+        assertEquals(100, limiter.getCurrentCount());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void releasesOldestSlotAsWindowSlides() {
+        SlidingWindowRateLimiter limiter = limiter(100, 4);
+
+        // 第 0 个槽用掉 60，第 5 个槽用掉 40
+        assertEquals(60, acquireAll(limiter, 60));
+        clock.addAndGet(500);
+        assertEquals(40, acquireAll(limiter, 60));
+        assertFalse(limiter.tryAcquire());
+
+        // 第 0 个槽滑出窗口前仍然满额
+        clock.addAndGet(499);
+        assertFalse(limiter.tryAcquire());
+
+        // 滑出后只释放第 0 个槽的 60
+        clock.addAndGet(1);
+        assertEquals(40, limiter.getCurrentCount());
+        assertEquals(60, acquireAll(limiter, 100));
+    }
+
+    @Test
+    void resetsAfterFullWindowElapses() {
+        SlidingWindowRateLimiter limiter = limiter(50, 4);
+
+        assertEquals(50, acquireAll(limiter, 80));
+        clock.addAndGet(1000);
+        assertEquals(0, limiter.getCurrentCount());
+        assertEquals(50, acquireAll(limiter, 80));
+    }
+
+    @Test
+    void survivesLongIdleGapsWithLazilyResetSlots() {
+        SlidingWindowRateLimiter limiter = limiter(30, 4);
+
+        // 每个槽各留一些计数，然后跨越很多轮窗口
+        for (int i = 0; i < 10; i++) {
+            assertEquals(3, acquireAll(limiter, 3));
+            clock.addAndGet(100);
+        }
+        clock.addAndGet(123_456);
+
+        assertEquals(0, limiter.getCurrentCount());
+        assertEquals(30, acquireAll(limiter, 50));
+    }
+
+    @Test
+    void multiPermitRequestsAreAllOrNothing() {
+        SlidingWindowRateLimiter limiter = limiter(10, 4);
+
+        assertTrue(limiter.tryAcquire(7));
+        assertFalse(limiter.tryAcquire(4));
+        assertEquals(7, limiter.getCurrentCount());
+        assertTrue(limiter.tryAcquire(3));
+        assertFalse(limiter.tryAcquire(1));
+    }
+
+    @Test
+    void slidingAcrossEverySlotKeepsRateExact() {
+        SlidingWindowRateLimiter limiter = limiter(100, 4);
+
+        // 每个槽尝试 20 次，持续 5 个窗口：前半个窗口拿满额度，之后每个槽只能拿到滑出槽释放的额度
+        int granted = 0;
+        for (int slot = 0; slot < 50; slot++) {
+            granted += acquireAll(limiter, 20);
+            assertTrue(limiter.getCurrentCount() <= 100);
+            clock.addAndGet(100);
+        }
+        // 每个窗口恰好 100：槽 0-4 各 20，槽 5-9 为 0，周期性重复
+        assertEquals(5 * 100, granted);
+    }
+
+    @Test
+    void neverExceedsLimitUnderConcurrency() throws InterruptedException {
+        SlidingWindowRateLimiter limiter = limiter(1000, 8);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // 时钟静止：并发回滚可能短暂误拒，但剩余额度单线程补齐后总数恰好等于上限
+        assertTrue(granted.get() <= 1000);
+        assertEquals(granted.get(), limiter.getCurrentCount());
+        assertEquals(1000 - granted.get(), acquireAll(limiter, 1000));
+        assertEquals(1000, limiter.getCurrentCount());
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.seckill.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 无锁令牌桶测试
+ *
+ * 使用可控的纳秒时钟驱动时间，结果与机器速度无关。
+ * 默认配置：容量 100、每秒 100 个令牌（每 10ms 一个）。
+ */
+class TokenBucketRateLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private TokenBucketRateLimiter limiter(long capacity, double refillRate) {
+        return new TokenBucketRateLimiter(capacity, refillRate, clock::get);
+    }
+
+    private int acquireAll(TokenBucketRateLimiter limiter, int attempts) {
+        int granted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (limiter.tryAcquire()) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+
+    @Test
+    void startsFullAndGrantsExactlyCapacity() {
+        TokenBucketRateLimiter limiter = limiter(100, 100);
+
+        assertEquals(100, limiter.getAvailableTokens());
+        assertEquals(100, acquireAll(limiter, 150));
+        assertEquals(0, limiter.getAvailableTokens());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void refillsAtConfiguredRate() {
+        TokenBucketRateLimiter limiter = limiter(100, 100);
+        assertEquals(100, acquireAll(limiter, 100));
+
+        clock.addAndGet(50 * MS);
+        assertEquals(5, limiter.getAvailableTokens());
+        assertEquals(5, acquireAll(limiter, 10));
+
+        // 不足一个令牌的时间保留到下一次，不会被丢弃
+        clock.addAndGet(5 * MS);
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(5 * MS);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void idleTimeNeverAccumulatesBeyondCapacity() {
+        TokenBucketRateLimiter limiter = limiter(100, 100);
+        assertEquals(100, acquireAll(limiter, 100));
+
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+        assertEquals(100, limiter.getAvailableTokens());
+        assertEquals(100, acquireAll(limiter, 1000));
+    }
+
+    @Test
+    void reportsWaitUntilEnoughTokens() {
+        TokenBucketRateLimiter limiter = limiter(10, 100);
+        assertEquals(10, acquireAll(limiter, 10));
+
+        assertEquals(30 * MS, limiter.tryAcquireOrWait(3));
+        clock.addAndGet(30 * MS);
+        assertEquals(0, limiter.tryAcquireOrWait(3));
+    }
+
+    @Test
+    void multiPermitRequestsAreAllOrNothing() {
+        TokenBucketRateLimiter limiter = limiter(10, 100);
+
+        assertTrue(limiter.tryAcquire(7));
+        assertFalse(limiter.tryAcquire(4));
+        assertEquals(3, limiter.getAvailableTokens());
+        assertTrue(limiter.tryAcquire(3));
+        assertFalse(limiter.tryAcquire(1));
+
+        // 超过容量的请求永远无法满足
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertFalse(limiter.tryAcquire(11));
+        assertEquals(10, limiter.getAvailableTokens());
+    }
+
+    @Test
+    void neverOverGrantsUnderConcurrency() throws InterruptedException {
+        TokenBucketRateLimiter limiter = limiter(1000, 100);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // 时钟静止：CAS 失败只会重试，不会误拒也不会多发，恰好取完整桶
+        assertEquals(1000, granted.get());
+        assertEquals(0, limiter.getAvailableTokens());
+        assertFalse(limiter.tryAcquire());
+    }
+}